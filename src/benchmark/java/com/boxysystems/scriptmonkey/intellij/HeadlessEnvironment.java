@@ -0,0 +1,176 @@
+package com.boxysystems.scriptmonkey.intellij;
+
+import com.boxysystems.scriptmonkey.intellij.util.ScriptMonkeyFileUtil;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.ThrowableComputable;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Just enough of an IntelliJ application for the script machinery to run outside the IDE: an
+ * {@link Application} and a {@link Project} that answer the few calls Script Monkey makes, with the
+ * application component's scheduler, watchdog and engine pool started on a temporary home folder.
+ * <p/>
+ * The home folder gets the scripts of <code>main/resources/js</code> (or of the folder in the
+ * <code>scriptmonkey.js.dir</code> system property), so engines evaluate the real global scripts.
+ */
+public class HeadlessEnvironment {
+
+    private final Map<Class<?>, Object> components = new HashMap<Class<?>, Object>();
+    private final ExecutorService pooledThreads = Executors.newCachedThreadPool();
+    private final Disposable disposable = new Disposable() {
+        public void dispose() {
+        }
+    };
+    private final File homeFolder;
+    private final Application application;
+    private final Project project;
+    private final ScriptMonkeyApplicationComponent applicationComponent;
+
+    public HeadlessEnvironment() throws IOException {
+        homeFolder = File.createTempFile("scriptmonkey-benchmark", "");
+        if (!homeFolder.delete() || !homeFolder.mkdirs()) {
+            throw new IOException("Unable to create home folder '" + homeFolder + "'");
+        }
+        File jsSource = new File(System.getProperty("scriptmonkey.js.dir", "main/resources/js"));
+        if (jsSource.isDirectory()) {
+            ScriptMonkeyFileUtil.copyDir(jsSource, new File(homeFolder, Constants.JS_FOLDER_NAME));
+        }
+
+        application = stub(Application.class, new ApplicationHandler());
+        project = stub(Project.class, new ProjectHandler());
+        ApplicationManager.setApplication(application, disposable);
+
+        ScriptMonkeySettings settings = new ScriptMonkeySettings();
+        settings.setHomeFolder(homeFolder.getAbsolutePath());
+        components.put(ScriptMonkeySettings.class, settings);
+
+        applicationComponent = new ScriptMonkeyApplicationComponent();
+        components.put(ScriptMonkeyApplicationComponent.class, applicationComponent);
+        applicationComponent.setSettings(settings);
+        applicationComponent.initServices();
+    }
+
+    public Application getApplication() {
+        return application;
+    }
+
+    public Project getProject() {
+        return project;
+    }
+
+    public ScriptMonkeyApplicationComponent getApplicationComponent() {
+        return applicationComponent;
+    }
+
+    public File getHomeFolder() {
+        return homeFolder;
+    }
+
+    public void dispose() {
+        applicationComponent.disposeComponent();
+        pooledThreads.shutdownNow();
+        ScriptMonkeyFileUtil.delete(homeFolder);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(HeadlessEnvironment.class.getClassLoader(), new Class[]{type}, handler);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return (char) 0;
+        }
+        return null;
+    }
+
+    private abstract static class StubHandler implements InvocationHandler {
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("toString")) {
+                return getClass().getSimpleName();
+            }
+            return handle(method, args);
+        }
+
+        protected abstract Object handle(Method method, Object[] args) throws Throwable;
+    }
+
+    private class ApplicationHandler extends StubHandler {
+
+        @SuppressWarnings({"unchecked"})
+        protected Object handle(Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getComponent") && args.length == 1 && args[0] instanceof Class) {
+                return components.get(args[0]);
+            } else if (name.equals("runReadAction") || name.equals("runWriteAction")) {
+                if (args[0] instanceof Computable) {
+                    return ((Computable) args[0]).compute();
+                } else if (args[0] instanceof ThrowableComputable) {
+                    return ((ThrowableComputable) args[0]).compute();
+                }
+                ((Runnable) args[0]).run();
+                return null;
+            } else if (name.equals("executeOnPooledThread")) {
+                if (args[0] instanceof Callable) {
+                    return pooledThreads.submit((Callable) args[0]);
+                }
+                return pooledThreads.submit((Runnable) args[0]);
+            } else if (name.equals("invokeLater") || name.equals("invokeAndWait")) {
+                ((Runnable) args[0]).run();
+                return null;
+            } else if (name.equals("isHeadlessEnvironment") || name.equals("isReadAccessAllowed")) {
+                return Boolean.TRUE;
+            }
+            return defaultValue(method.getReturnType());
+        }
+    }
+
+    private class ProjectHandler extends StubHandler {
+
+        protected Object handle(Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getName")) {
+                return "benchmark";
+            } else if (name.equals("getBasePath") || name.equals("getPresentableUrl")) {
+                return homeFolder.getAbsolutePath();
+            } else if (name.equals("isOpen") || name.equals("isInitialized")) {
+                return Boolean.TRUE;
+            }
+            return defaultValue(method.getReturnType());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.boxysystems.scriptmonkey.intellij.benchmark;
+
+import com.boxysystems.scriptmonkey.intellij.ui.CommandShellDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending script output to the shell document, with and without a scrollback limit to trim to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommandShellDocumentBenchmark {
+
+    private static final String LINE = "The quick brown fox jumps over the lazy dog, again and again.\n";
+
+    @Param({"0", "10000"})
+    public int maxLines;
+
+    private CommandShellDocument document;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        document = new CommandShellDocument();
+        document.setScrollbackLimits(0, maxLines);
+    }
+
+    @Benchmark
+    public int appendLine() throws Exception {
+        document.insertString(document.getLength(), LINE, null);
+        return document.getLength();
+    }
+}
@@ -0,0 +1,110 @@
+package com.boxysystems.scriptmonkey.intellij.benchmark;
+
+import com.boxysystems.scriptmonkey.intellij.util.JarExploder;
+import com.boxysystems.scriptmonkey.intellij.util.ScriptMonkeyFileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Extracting the scripts jar with {@link JarExploder} and copying script folders with
+ * {@link ScriptMonkeyFileUtil#copyDir(File, File)}, on a synthetic tree of script sized files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileCopyBenchmark {
+
+    private static final int FOLDERS = 10;
+
+    @Param({"200"})
+    public int files;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private File workFolder;
+    private File sourceFolder;
+    private File jarFile;
+    private File target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workFolder = File.createTempFile("scriptmonkey-benchmark", "");
+        if (!workFolder.delete() || !workFolder.mkdirs()) {
+            throw new IOException("Unable to create work folder '" + workFolder + "'");
+        }
+        sourceFolder = new File(workFolder, "source");
+        jarFile = new File(workFolder, "scripts.jar");
+        ZipOutputStream jar = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            for (int i = 0; i < files; i++) {
+                String path = "folder" + (i % FOLDERS) + "/script" + i + ".js";
+                byte[] content = createScript(i);
+                jar.putNextEntry(new ZipEntry(path));
+                jar.write(content);
+                jar.closeEntry();
+                File file = new File(sourceFolder, path);
+                file.getParentFile().mkdirs();
+                OutputStream out = new FileOutputStream(file);
+                try {
+                    out.write(content);
+                } finally {
+                    out.close();
+                }
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ScriptMonkeyFileUtil.delete(workFolder);
+    }
+
+    @Setup(Level.Invocation)
+    public void createTarget() {
+        target = new File(workFolder, "target");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteTarget() {
+        ScriptMonkeyFileUtil.delete(target);
+    }
+
+    @Benchmark
+    public File explodeJar() throws IOException {
+        JarExploder.explodeJar(target, jarFile, threads);
+        return target;
+    }
+
+    @Benchmark
+    public File copyDir() throws IOException {
+        ScriptMonkeyFileUtil.copyDir(sourceFolder, target);
+        return target;
+    }
+
+    private static byte[] createScript(int index) throws IOException {
+        StringBuilder script = new StringBuilder();
+        for (int line = 0; line < 50 + index % 200; line++) {
+            script.append("function f").append(line).append("() { return ").append(line).append(" * ").append(index).append("; }\n");
+        }
+        return script.toString().getBytes("UTF-8");
+    }
+}
@@ -0,0 +1,52 @@
+package com.boxysystems.scriptmonkey.intellij.benchmark;
+
+import com.boxysystems.scriptmonkey.intellij.HeadlessEnvironment;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptEnginePool;
+import com.boxysystems.scriptmonkey.intellij.ui.ScriptCommandProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting a {@link ScriptCommandProcessor} ready to run scripts: acquiring its JavaScript and
+ * Groovy engines, either idle ones from the pool or fresh ones that evaluate the global scripts first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScriptEngineBenchmark {
+
+    @Param({"true", "false"})
+    public boolean pooled;
+
+    private HeadlessEnvironment environment;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        environment = new HeadlessEnvironment();
+        ScriptEnginePool enginePool = environment.getApplicationComponent().getEnginePool();
+        enginePool.configure(pooled ? ScriptEnginePool.DEFAULT_SIZE : 0, ScriptEnginePool.DEFAULT_IDLE_TIMEOUT);
+        enginePool.warmUp(ScriptEnginePool.JAVASCRIPT, ScriptEnginePool.GROOVY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.dispose();
+    }
+
+    @Benchmark
+    public ScriptCommandProcessor createProcessor() {
+        ScriptCommandProcessor processor = new ScriptCommandProcessor(environment.getApplication());
+        processor.releaseEngines();
+        return processor;
+    }
+}
@@ -0,0 +1,75 @@
+package com.boxysystems.scriptmonkey.intellij.benchmark;
+
+import com.boxysystems.scriptmonkey.intellij.HeadlessEnvironment;
+import com.boxysystems.scriptmonkey.intellij.engine.CompiledScriptCache;
+import com.boxysystems.scriptmonkey.intellij.ui.ScriptCommandProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.script.ScriptEngine;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluating a small script by parsing it every time, against evaluating the compiled script from the
+ * pool's {@link CompiledScriptCache}, and a full shell command round trip through
+ * {@link ScriptCommandProcessor#executeCommand(String, String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScriptEvalBenchmark {
+
+    private static final String JS_SCRIPT =
+            "var total = 0; for (var i = 0; i < 100; i++) { total += i % 7; } total;";
+    private static final String GROOVY_SCRIPT =
+            "def total = 0; for (int i = 0; i < 100; i++) { total += i % 7 }; total";
+
+    @Param({"js", "groovy"})
+    public String language;
+
+    private HeadlessEnvironment environment;
+    private ScriptCommandProcessor processor;
+    private ScriptEngine engine;
+    private CompiledScriptCache compiledScriptCache;
+    private String script;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        environment = new HeadlessEnvironment();
+        processor = new ScriptCommandProcessor(environment.getApplication());
+        processor.addGlobalVariable("project", environment.getProject());
+        processor.processCommandLine();
+        engine = processor.getEngine(language);
+        compiledScriptCache = environment.getApplicationComponent().getEnginePool().getCompiledScriptCache();
+        script = language.equals("js") ? JS_SCRIPT : GROOVY_SCRIPT;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processor.releaseEngines();
+        environment.dispose();
+    }
+
+    @Benchmark
+    public Object eval() throws Exception {
+        return engine.eval(script);
+    }
+
+    @Benchmark
+    public Object compiledEval() throws Exception {
+        return compiledScriptCache.eval(engine, null, script);
+    }
+
+    @Benchmark
+    public Object executeCommand() {
+        return processor.executeCommand(script, language);
+    }
+}
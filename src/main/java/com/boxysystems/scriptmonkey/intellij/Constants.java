@@ -25,6 +25,12 @@ public interface Constants {
 
   public static final File CONFIG_FOLDER = new File(PathManager.getConfigPath(), "ScriptMonkey"); 
 
+  public static final File REPL_SERVER_FILE = new File(CONFIG_FOLDER, "repl-server.properties");
+
   public static final String JS_FOLDER_NAME = "js";
 
+  public static final String GLOBAL_SCRIPTS_FOLDER_NAME = "global";
+
+  public static final String LIB_FOLDER_NAME = "lib";
+
 }
@@ -0,0 +1,110 @@
+package com.boxysystems.scriptmonkey.intellij;
+
+import com.boxysystems.scriptmonkey.intellij.ui.PluginScript;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dependency graph of the plugin scripts that run for the same run mode.
+ * <p/>
+ * A script waits for the scripts it declares in {@link PluginScript#getDependsOn()}. Scripts that
+ * aren't marked as parallel safe also wait for the previous script in the list that isn't parallel
+ * safe either, so plugin scripts configured before these attributes existed still run one after another.
+ * Scripts that are part of a dependency cycle can't be ordered and are reported by {@link #getCyclicScripts()}.
+ */
+public class PluginScriptGraph {
+
+    private final List<PluginScript> scripts;
+    private final Map<PluginScript, List<PluginScript>> prerequisites = new IdentityHashMap<PluginScript, List<PluginScript>>();
+    private final Map<PluginScript, List<PluginScript>> dependents = new IdentityHashMap<PluginScript, List<PluginScript>>();
+    private final List<PluginScript> cyclicScripts = new ArrayList<PluginScript>();
+
+    public PluginScriptGraph(List<PluginScript> scripts) {
+        this.scripts = new ArrayList<PluginScript>(scripts);
+        for (PluginScript script : this.scripts) {
+            prerequisites.put(script, new ArrayList<PluginScript>());
+            dependents.put(script, new ArrayList<PluginScript>());
+        }
+        PluginScript previousSequential = null;
+        for (PluginScript script : this.scripts) {
+            for (PluginScript other : this.scripts) {
+                if (other != script && (script.dependsOn(other) || (!script.isParallelSafe() && other == previousSequential))) {
+                    prerequisites.get(script).add(other);
+                    dependents.get(other).add(script);
+                }
+            }
+            if (!script.isParallelSafe()) {
+                previousSequential = script;
+            }
+        }
+        findCycles();
+    }
+
+    public List<PluginScript> getScripts() {
+        return Collections.unmodifiableList(scripts);
+    }
+
+    public List<PluginScript> getPrerequisites(PluginScript script) {
+        return Collections.unmodifiableList(prerequisites.get(script));
+    }
+
+    public List<PluginScript> getDependents(PluginScript script) {
+        return Collections.unmodifiableList(dependents.get(script));
+    }
+
+    /**
+     * @return true if the script explicitly depends on the prerequisite, rather than just
+     *         having to run after it because neither of them is parallel safe
+     */
+    public boolean isDeclaredDependency(PluginScript script, PluginScript prerequisite) {
+        return script.dependsOn(prerequisite);
+    }
+
+    /**
+     * @return scripts that are part of, or depend on, a dependency cycle
+     */
+    public List<PluginScript> getCyclicScripts() {
+        return Collections.unmodifiableList(cyclicScripts);
+    }
+
+    public boolean isCyclic(PluginScript script) {
+        for (PluginScript cyclicScript : cyclicScripts) {
+            if (cyclicScript == script) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void findCycles() {
+        Map<PluginScript, Integer> pending = new IdentityHashMap<PluginScript, Integer>();
+        LinkedList<PluginScript> ready = new LinkedList<PluginScript>();
+        for (PluginScript script : scripts) {
+            pending.put(script, prerequisites.get(script).size());
+            if (prerequisites.get(script).isEmpty()) {
+                ready.add(script);
+            }
+        }
+        while (!ready.isEmpty()) {
+            PluginScript script = ready.removeFirst();
+            pending.remove(script);
+            for (PluginScript dependent : dependents.get(script)) {
+                int remaining = pending.get(dependent) - 1;
+                pending.put(dependent, remaining);
+                if (remaining == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        for (PluginScript script : scripts) {
+            if (pending.containsKey(script)) {
+                cyclicScripts.add(script);
+            }
+        }
+    }
+}
@@ -9,7 +9,13 @@ import com.intellij.openapi.project.Project;
 import org.apache.log4j.Logger;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class PluginScriptRunner {
 
@@ -39,51 +45,201 @@ public class PluginScriptRunner {
     public void runPluginScripts(ScriptMonkeyApplicationComponent applicationComponent, PluginScript.RUN_MODE runMode, boolean synchronous) {
         ScriptMonkeySettings settings = applicationComponent.getSettings();
         if (settings != null) {
-            List<PluginScript> pluginScripts = settings.getPluginScripts();
-            for (final PluginScript pluginScript : pluginScripts) {
+            List<PluginScript> scriptsToRun = new ArrayList<PluginScript>();
+            for (PluginScript pluginScript : settings.getPluginScripts()) {
                 if (pluginScript.isEnabled() && runMode.equals(pluginScript.getRunMode()) && ScriptMonkeyFileUtil.exists(pluginScript.getFilePath())) {
-                    logger.info("Running plugin script '" + pluginScript.getFilePath() + "' on runMode = " + runMode);
-                    ScriptCommandProcessor commandProcessor;
-                    final File scriptFile = new File(pluginScript.getFilePath());
+                    scriptsToRun.add(pluginScript);
+                }
+            }
+            if (scriptsToRun.isEmpty()) {
+                return;
+            }
+            PluginScriptsRun run = new PluginScriptsRun(runMode, new PluginScriptGraph(scriptsToRun));
+            run.start();
+            if (synchronous) {
+                run.await(settings.getPluginScriptsTimeout());
+            }
+        }
+    }
+
+    /**
+     * Runs one triggered plugin script, with the trigger as its <code>trigger</code> global.
+     *
+     * @param whenDone run once the script completed, successfully or not, or was cancelled before it started
+     * @return the running script, or null if it couldn't be started
+     */
+    public Future<?> runTriggeredScript(final PluginScript pluginScript, ScriptTrigger trigger, final Runnable whenDone) {
+        final File scriptFile = new File(pluginScript.getFilePath());
+        logger.info("Running plugin script '" + pluginScript.getFilePath() + "' on " + trigger);
+        try {
+            final ScriptCommandProcessor commandProcessor = createCommandProcessor();
+            commandProcessor.setBudget(pluginScript.createBudget());
+            commandProcessor.addGlobalVariable("trigger", trigger);
+            return commandProcessor.processScriptFile(scriptFile, new ScriptProcessorCallback() {
+                public void success(Object result) {
+                    try {
+                        commandProcessor.releaseEngines();
+                    } finally {
+                        whenDone.run();
+                    }
+                }
+
+                public void failure(Throwable throwable) {
                     try {
-                        if (project != null) {
-                            commandProcessor = new ScriptCommandProcessor(ApplicationManager.getApplication(), project, plugin);
-                        } else {
-                            commandProcessor = new ScriptCommandProcessor(ApplicationManager.getApplication());
-                        }
-
-                        if (synchronous) {
-                            commandProcessor.processScriptFileSynchronously(scriptFile, new ScriptProcessorCallbackImpl(pluginScript, scriptFile));
-                        } else {
-                            commandProcessor.processScriptFile(scriptFile, new ScriptProcessorCallbackImpl(pluginScript, scriptFile));
-                        }
-                    } catch (Exception e) {
-                        logger.error("Error running script file = " + scriptFile, e);
+                        logger.error("Error running script file = " + scriptFile, throwable);
+                        commandProcessor.releaseEngines();
+                    } finally {
+                        whenDone.run();
+                    }
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Error running script file = " + scriptFile, e);
+            whenDone.run();
+            return null;
+        }
+    }
+
+    private ScriptCommandProcessor createCommandProcessor() {
+        if (project != null) {
+            return new ScriptCommandProcessor(ApplicationManager.getApplication(), project, plugin);
+        }
+        return new ScriptCommandProcessor(ApplicationManager.getApplication());
+    }
+
+    /**
+     * Runs the plugin scripts of one run mode. A script is submitted as soon as all of its prerequisites
+     * are done, so independent scripts run concurrently on the shared script runner threads.
+     */
+    private class PluginScriptsRun {
+        private final PluginScript.RUN_MODE runMode;
+        private final PluginScriptGraph graph;
+        private final CountDownLatch remaining;
+        private final Map<PluginScript, Integer> pendingPrerequisites = new IdentityHashMap<PluginScript, Integer>();
+        private final Map<PluginScript, Boolean> failedPrerequisites = new IdentityHashMap<PluginScript, Boolean>();
+        private final Map<PluginScript, Future<?>> futures = new IdentityHashMap<PluginScript, Future<?>>();
+        private boolean cancelled = false;
+
+        PluginScriptsRun(PluginScript.RUN_MODE runMode, PluginScriptGraph graph) {
+            this.runMode = runMode;
+            this.graph = graph;
+            this.remaining = new CountDownLatch(graph.getScripts().size());
+            for (PluginScript pluginScript : graph.getScripts()) {
+                pendingPrerequisites.put(pluginScript, graph.getPrerequisites(pluginScript).size());
+            }
+        }
+
+        void start() {
+            List<PluginScript> ready = new ArrayList<PluginScript>();
+            for (PluginScript pluginScript : graph.getScripts()) {
+                if (graph.isCyclic(pluginScript)) {
+                    logger.error("Not running plugin script '" + pluginScript.getFilePath() + "' on runMode = " + runMode + ", its dependencies form a cycle");
+                    remaining.countDown();
+                } else if (graph.getPrerequisites(pluginScript).isEmpty()) {
+                    ready.add(pluginScript);
+                }
+            }
+            for (PluginScript pluginScript : ready) {
+                submit(pluginScript);
+            }
+        }
+
+        /**
+         * Waits for all the scripts to complete. Scripts that haven't started by the deadline are cancelled,
+         * which fails their callbacks, so their engines still go back to the pool.
+         *
+         * @param timeout seconds to wait for the whole run
+         */
+        void await(int timeout) {
+            try {
+                if (remaining.await(timeout, TimeUnit.SECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                logger.error("Interrupted while waiting for plugin scripts on runMode = " + runMode, e);
+            }
+            synchronized (this) {
+                cancelled = true;
+                for (Future<?> future : futures.values()) {
+                    future.cancel(false);
+                }
+            }
+            logger.warn("Plugin scripts on runMode = " + runMode + " are still running after " + timeout + " seconds, not waiting for them any longer");
+        }
+
+        private void submit(PluginScript pluginScript) {
+            File scriptFile = new File(pluginScript.getFilePath());
+            synchronized (this) {
+                if (cancelled) {
+                    remaining.countDown();
+                    return;
+                }
+            }
+            logger.info("Running plugin script '" + pluginScript.getFilePath() + "' on runMode = " + runMode);
+            try {
+                ScriptCommandProcessor commandProcessor = createCommandProcessor();
+                commandProcessor.setBudget(pluginScript.createBudget());
+                ScriptProcessorCallbackImpl callback = new ScriptProcessorCallbackImpl(pluginScript, scriptFile, commandProcessor, this);
+                Future<?> future = commandProcessor.processScriptFile(scriptFile, callback);
+                synchronized (this) {
+                    futures.put(pluginScript, future);
+                }
+            } catch (Exception e) {
+                logger.error("Error running script file = " + scriptFile, e);
+                completed(pluginScript, false);
+            }
+        }
+
+        private void completed(PluginScript pluginScript, boolean success) {
+            List<PluginScript> ready = new ArrayList<PluginScript>();
+            List<PluginScript> skipped = new ArrayList<PluginScript>();
+            synchronized (this) {
+                futures.remove(pluginScript);
+                for (PluginScript dependent : graph.getDependents(pluginScript)) {
+                    if (!success && graph.isDeclaredDependency(dependent, pluginScript)) {
+                        failedPrerequisites.put(dependent, Boolean.TRUE);
+                    }
+                    int pending = pendingPrerequisites.get(dependent) - 1;
+                    pendingPrerequisites.put(dependent, pending);
+                    if (pending == 0) {
+                        (failedPrerequisites.containsKey(dependent) ? skipped : ready).add(dependent);
                     }
                 }
             }
+            remaining.countDown();
+            for (PluginScript dependent : skipped) {
+                logger.warn("Not running plugin script '" + dependent.getFilePath() + "' on runMode = " + runMode + ", a script it depends on has failed");
+                completed(dependent, false);
+            }
+            for (PluginScript dependent : ready) {
+                submit(dependent);
+            }
         }
     }
 
     private class ScriptProcessorCallbackImpl implements ScriptProcessorCallback {
         private PluginScript pluginScript;
         private File pluginScriptFile;
+        private ScriptCommandProcessor commandProcessor;
+        private PluginScriptsRun run;
 
-        ScriptProcessorCallbackImpl(PluginScript pluginScript, File pluginScriptFile) {
+        ScriptProcessorCallbackImpl(PluginScript pluginScript, File pluginScriptFile, ScriptCommandProcessor commandProcessor, PluginScriptsRun run) {
             this.pluginScript = pluginScript;
             this.pluginScriptFile = pluginScriptFile;
+            this.commandProcessor = commandProcessor;
+            this.run = run;
         }
 
-        public void success() {
+        public void success(Object result) {
             logger.info("Completed running plugin script '" + pluginScript.getFilePath() + "'");
+            commandProcessor.releaseEngines();
+            run.completed(pluginScript, true);
         }
 
         public void failure(Throwable throwable) {
             logger.error("Error running script file = " + pluginScriptFile, throwable);
-        }
-
-        public void cancel() {
-            logger.warn("Scripting execution stopped!");
+            commandProcessor.releaseEngines();
+            run.completed(pluginScript, false);
         }
 
     }
@@ -0,0 +1,274 @@
+package com.boxysystems.scriptmonkey.intellij;
+
+import com.boxysystems.scriptmonkey.intellij.engine.Debouncer;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptExecutionScheduler;
+import com.boxysystems.scriptmonkey.intellij.ui.PluginScript;
+import com.boxysystems.scriptmonkey.intellij.util.GlobMatcher;
+import com.boxysystems.scriptmonkey.intellij.util.ScriptMonkeyFileUtil;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.SelectionEvent;
+import com.intellij.openapi.editor.event.SelectionListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.messages.MessageBusConnection;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the plugin scripts with a {@link PluginScript.RUN_MODE#isTriggered() triggered} run mode when files
+ * of the project are saved or change, when the selection of an editor of the project changes, or
+ * periodically.
+ * <p/>
+ * Every trigger goes through one {@link Debouncer} on the application's script scheduler, so a burst of
+ * events, such as a git checkout touching thousands of files, runs each script once with all the files
+ * of the burst in its <code>trigger</code> global. A script is never run again while it is still running;
+ * events coming in meanwhile make it run once more afterwards.
+ * <p/>
+ * Only files under the project folder count, and globs are matched against paths relative to it. Saves are
+ * picked up from the file system changes the IDE makes when it writes a document, so a script triggered by a
+ * save reads what was saved.
+ */
+public class PluginScriptTriggers implements Disposable {
+
+    private static final Logger logger = Logger.getLogger(PluginScriptTriggers.class);
+
+    private final Project project;
+    private final PluginScriptRunner pluginScriptRunner;
+    private final ScriptExecutionScheduler scheduler;
+    private final Debouncer<PluginScript, String> debouncer;
+
+    private volatile Map<PluginScript, GlobMatcher> triggeredScripts = Collections.emptyMap();
+    private final List<ScheduledFuture<?>> timers = new ArrayList<ScheduledFuture<?>>();
+    private final Map<PluginScript, Run> runs = new HashMap<PluginScript, Run>();
+    private MessageBusConnection messageBusConnection;
+    private volatile boolean disposed = false;
+
+    public PluginScriptTriggers(Project project, PluginScriptRunner pluginScriptRunner, ScriptExecutionScheduler scheduler) {
+        this.project = project;
+        this.pluginScriptRunner = pluginScriptRunner;
+        this.scheduler = scheduler;
+        this.debouncer = new Debouncer<PluginScript, String>(scheduler, new Debouncer.Action<PluginScript, String>() {
+            public void fire(PluginScript pluginScript, List<String> files, int dropped) {
+                run(pluginScript, files, dropped);
+            }
+        });
+    }
+
+    /**
+     * Starts listening to the events of the project, for the triggered plugin scripts of the settings.
+     */
+    public void start(ScriptMonkeySettings settings) {
+        messageBusConnection = project.getMessageBus().connect();
+        messageBusConnection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener.Adapter() {
+            public void after(List<? extends VFileEvent> events) {
+                boolean vfsChanges = hasScripts(PluginScript.RUN_MODE.VFS_CHANGE);
+                boolean saves = hasScripts(PluginScript.RUN_MODE.FILE_SAVED);
+                for (VFileEvent event : events) {
+                    if (vfsChanges) {
+                        dispatch(PluginScript.RUN_MODE.VFS_CHANGE, event.getPath());
+                    }
+                    if (saves && event instanceof VFileContentChangeEvent && event.isFromSave()) {
+                        dispatch(PluginScript.RUN_MODE.FILE_SAVED, event.getPath());
+                    }
+                }
+            }
+        });
+        EditorFactory.getInstance().getEventMulticaster().addSelectionListener(new SelectionListener() {
+            public void selectionChanged(SelectionEvent event) {
+                Editor editor = event.getEditor();
+                if (editor.getProject() != project || !hasScripts(PluginScript.RUN_MODE.SELECTION_CHANGE)) {
+                    return;
+                }
+                VirtualFile file = FileDocumentManager.getInstance().getFile(editor.getDocument());
+                if (file != null) {
+                    dispatch(PluginScript.RUN_MODE.SELECTION_CHANGE, file.getPath());
+                }
+            }
+        }, this);
+        reload(settings);
+    }
+
+    /**
+     * Picks up the triggered plugin scripts of the settings, for example after they were edited.
+     */
+    public synchronized void reload(ScriptMonkeySettings settings) {
+        if (disposed) {
+            return;
+        }
+        for (ScheduledFuture<?> timer : timers) {
+            timer.cancel(false);
+        }
+        timers.clear();
+        Map<PluginScript, GlobMatcher> scripts = new HashMap<PluginScript, GlobMatcher>();
+        for (PluginScript pluginScript : settings.getPluginScripts()) {
+            if (!pluginScript.isEnabled() || !pluginScript.getRunMode().isTriggered()
+                    || !ScriptMonkeyFileUtil.exists(pluginScript.getFilePath())) {
+                continue;
+            }
+            final PluginScript script = (PluginScript) pluginScript.clone();
+            if (script.getRunMode() == PluginScript.RUN_MODE.TIMER) {
+                if (script.getTimerPeriod() == 0) {
+                    logger.warn("Not scheduling plugin script '" + script.getFilePath() + "', its trigger isn't a period in seconds");
+                    continue;
+                }
+                timers.add(scheduler.scheduleAtFixedRate(new Runnable() {
+                    public void run() {
+                        debouncer.trigger(script, null, 0);
+                    }
+                }, script.getTimerPeriod(), TimeUnit.SECONDS));
+            }
+            scripts.put(script, new GlobMatcher(script.getTrigger()));
+        }
+        triggeredScripts = scripts;
+    }
+
+    public void dispose() {
+        synchronized (this) {
+            disposed = true;
+            for (ScheduledFuture<?> timer : timers) {
+                timer.cancel(false);
+            }
+            timers.clear();
+            triggeredScripts = Collections.emptyMap();
+        }
+        if (messageBusConnection != null) {
+            messageBusConnection.disconnect();
+        }
+        debouncer.cancel();
+    }
+
+    private boolean hasScripts(PluginScript.RUN_MODE runMode) {
+        for (PluginScript pluginScript : triggeredScripts.keySet()) {
+            if (pluginScript.getRunMode() == runMode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void dispatch(PluginScript.RUN_MODE runMode, String path) {
+        String projectPath = toProjectPath(path);
+        if (projectPath == null) {
+            return;
+        }
+        for (Map.Entry<PluginScript, GlobMatcher> entry : triggeredScripts.entrySet()) {
+            PluginScript pluginScript = entry.getKey();
+            if (pluginScript.getRunMode() == runMode && entry.getValue().matches(projectPath)) {
+                debouncer.trigger(pluginScript, projectPath, pluginScript.getDebounce());
+            }
+        }
+    }
+
+    /**
+     * @return the path relative to the project folder, or null if it isn't inside it
+     */
+    private String toProjectPath(String path) {
+        String basePath = project.getBasePath();
+        if (path == null || basePath == null) {
+            return null;
+        }
+        if (!path.startsWith(basePath + "/")) {
+            return null;
+        }
+        return path.substring(basePath.length() + 1);
+    }
+
+    private void run(PluginScript pluginScript, List<String> files, int dropped) {
+        Run run;
+        synchronized (runs) {
+            if (disposed || !triggeredScripts.containsKey(pluginScript)) {
+                return;
+            }
+            Run running = runs.get(pluginScript);
+            if (running != null) {
+                running.addPending(files, dropped);
+                if (!running.isAbandoned()) {
+                    return;
+                }
+                logger.warn("Plugin script '" + pluginScript.getFilePath() + "' ended without completing, running it again");
+                files = new ArrayList<String>(running.pendingFiles);
+                dropped = running.pendingDropped;
+            }
+            run = new Run();
+            runs.put(pluginScript, run);
+        }
+        start(pluginScript, run, files, dropped);
+    }
+
+    private void start(final PluginScript pluginScript, final Run run, List<String> files, int dropped) {
+        ScriptTrigger trigger = new ScriptTrigger(pluginScript.getRunMode(), files, dropped);
+        run.future = pluginScriptRunner.runTriggeredScript(pluginScript, trigger, new Runnable() {
+            public void run() {
+                completed(pluginScript, run);
+            }
+        });
+    }
+
+    private void completed(PluginScript pluginScript, Run run) {
+        Run next;
+        synchronized (runs) {
+            if (runs.get(pluginScript) != run) {
+                return;
+            }
+            runs.remove(pluginScript);
+            if (!run.hasPending() || disposed) {
+                return;
+            }
+            next = new Run();
+            runs.put(pluginScript, next);
+        }
+        start(pluginScript, next, new ArrayList<String>(run.pendingFiles), run.pendingDropped);
+    }
+
+    /**
+     * A running script, with the events that came in while it ran.
+     */
+    private static class Run {
+        private final Set<String> pendingFiles = new LinkedHashSet<String>();
+        private int pendingDropped = 0;
+        private boolean pending = false;
+        private volatile Future<?> future;
+
+        /**
+         * @return whether the script is done, or was cancelled, without its completion having been called,
+         *         for example because the scheduler dropped it before it started
+         */
+        private boolean isAbandoned() {
+            Future<?> future = this.future;
+            return future != null && future.isDone();
+        }
+
+        private void addPending(List<String> files, int dropped) {
+            pending = true;
+            for (String file : files) {
+                if (pendingFiles.size() < Debouncer.MAX_EVENTS) {
+                    pendingFiles.add(file);
+                } else if (!pendingFiles.contains(file)) {
+                    pendingDropped++;
+                }
+            }
+            pendingDropped += dropped;
+        }
+
+        private boolean hasPending() {
+            return pending;
+        }
+    }
+}
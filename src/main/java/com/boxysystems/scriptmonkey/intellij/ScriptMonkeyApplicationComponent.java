@@ -1,6 +1,12 @@
 package com.boxysystems.scriptmonkey.intellij;
 
 import com.boxysystems.scriptmonkey.intellij.action.CopyScriptsOnStartupAction;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptEnginePool;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptExecutionScheduler;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptMetrics;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptReplServer;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptTimerService;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptWatchdog;
 import com.boxysystems.scriptmonkey.intellij.icons.Icons;
 import com.boxysystems.scriptmonkey.intellij.ui.PluginScript;
 import com.boxysystems.scriptmonkey.intellij.ui.ScriptMonkeyConfigurationForm;
@@ -19,6 +25,12 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Properties;
 
 public class ScriptMonkeyApplicationComponent implements ApplicationComponent, Configurable {
 
@@ -31,6 +43,12 @@ public class ScriptMonkeyApplicationComponent implements ApplicationComponent, C
 
   private File settingsFile = null;
   private CopyScriptsOnStartupAction copyScriptsAction;
+  private ScriptEnginePool enginePool;
+  private ScriptExecutionScheduler scheduler;
+  private ScriptWatchdog watchdog;
+  private final ScriptMetrics metrics = new ScriptMetrics();
+  private ScriptTimerService timerService;
+  private ScriptReplServer replServer;
 
   public ScriptMonkeyApplicationComponent() {
   }
@@ -49,9 +67,11 @@ public class ScriptMonkeyApplicationComponent implements ApplicationComponent, C
     public void initComponent() {
       System.out.println("########  ScriptMonkeyApplicationComponent.initComponent");
     initSettings();
+    initServices();
     copyScriptsAction = new CopyScriptsOnStartupAction();
     copyScriptsAction.copyScripts(new File(settings.getHomeFolder()));
     pluginScriptRunner.runPluginScripts(this, PluginScript.RUN_MODE.INTELLIJ_STARTUP,false);
+    configureReplServer();
   }
 
   private void initSettings() {
@@ -59,6 +79,82 @@ public class ScriptMonkeyApplicationComponent implements ApplicationComponent, C
       settings =  ScriptMonkeySettings.getInstance();
   }
 
+  /**
+   * Starts the scheduler, the watchdog and the engine pool. Doesn't need the plugin to be installed,
+   * which lets benchmarks run the script machinery headless.
+   */
+  void initServices() {
+    scheduler = new ScriptExecutionScheduler(settings.getScriptRunnerThreads());
+    watchdog = new ScriptWatchdog();
+    settings.configure(watchdog);
+    initEnginePool();
+    timerService = new ScriptTimerService("application", ApplicationManager.getApplication(), scheduler, enginePool);
+  }
+
+  private void initEnginePool() {
+    enginePool = new ScriptEnginePool("application", getClass().getClassLoader());
+    enginePool.setGlobalVariable("application", ApplicationManager.getApplication());
+    enginePool.setGlobalVariable("stats", metrics);
+    settings.configure(enginePool);
+    enginePool.scheduleIdleEviction(scheduler);
+    ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+      public void run() {
+        enginePool.warmUp(ScriptEnginePool.JAVASCRIPT, ScriptEnginePool.GROOVY);
+      }
+    });
+  }
+
+  /**
+   * Starts or stops the REPL server as the settings say. Tools find its port and the token to send first in
+   * {@link Constants#REPL_SERVER_FILE}, which only the user can read.
+   */
+  private void configureReplServer() {
+    int port = settings.getReplServerPort();
+    if (replServer != null && (!settings.isReplServerEnabled() || (port != 0 && port != replServer.getPort()))) {
+      replServer.stop();
+      replServer = null;
+      Constants.REPL_SERVER_FILE.delete();
+    }
+    if (replServer == null && settings.isReplServerEnabled()) {
+      String token = new BigInteger(130, new SecureRandom()).toString(32);
+      ScriptReplServer server = new ScriptReplServer(new ScriptMonkeyReplSessions(), scheduler, token);
+      try {
+        server.start(port);
+        writeReplServerFile(server.getPort(), token);
+        replServer = server;
+      } catch (IOException e) {
+        server.stop();
+        logger.error("Could not start the REPL server on port " + port, e);
+      }
+    }
+  }
+
+  private void writeReplServerFile(int port, String token) throws IOException {
+    if (setupConfigDir() == null) {
+      throw new IOException("cannot create " + Constants.CONFIG_FOLDER);
+    }
+    File file = Constants.REPL_SERVER_FILE;
+    if (file.exists() && !file.delete()) {
+      throw new IOException("cannot replace " + file);
+    }
+    if (!file.createNewFile()) {
+      throw new IOException("cannot create " + file);
+    }
+    file.setReadable(false, false);
+    file.setWritable(false, false);
+    file.setReadable(true, true);
+    file.setWritable(true, true);
+    Properties properties = new Properties();
+    properties.setProperty("port", String.valueOf(port));
+    properties.setProperty("token", token);
+    OutputStream out = new FileOutputStream(file);
+    try {
+      properties.store(out, "Script Monkey REPL server");
+    } finally {
+      out.close();
+    }
+  }
+
   private File setupConfigDir() {
     if (!Constants.CONFIG_FOLDER.exists() && !Constants.CONFIG_FOLDER.mkdir()) {
       return null;
@@ -68,6 +164,14 @@ public class ScriptMonkeyApplicationComponent implements ApplicationComponent, C
 
   public void disposeComponent() {
     pluginScriptRunner.runPluginScripts(this, PluginScript.RUN_MODE.INTELLIJ_SHUTDOWN,true);
+    if (replServer != null) {
+      replServer.stop();
+      Constants.REPL_SERVER_FILE.delete();
+    }
+    timerService.shutdown();
+    enginePool.dispose();
+    watchdog.shutdown();
+    scheduler.shutdown();
   }
 
   @Nls
@@ -103,14 +207,20 @@ public class ScriptMonkeyApplicationComponent implements ApplicationComponent, C
   public void apply() throws ConfigurationException {
     if (form != null && settings != null) {
       form.getData(settings);
+      settings.configure(enginePool);
+      settings.configure(watchdog);
+      scheduler.setThreads(settings.getScriptRunnerThreads());
+      configureReplServer();
       Project[] projects = ProjectManager.getInstance().getOpenProjects();
       for (Project project : projects)
       {
           ScriptMonkeyPlugin plugin = ScriptMonkeyPlugin.getInstance(project);
+          settings.configure(plugin.getEnginePool());
           for (ScriptShellPanel scriptShellPanel : plugin.getCommandShellPanels())
           {
               scriptShellPanel.applySettings(settings);
           }
+          ScriptMonkeyProjectComponent.getInstance(project).reloadTriggers(settings);
       }
       //SerializationUtil.toXml(settingsFile.getAbsolutePath(), settings);
     }
@@ -134,6 +244,26 @@ public class ScriptMonkeyApplicationComponent implements ApplicationComponent, C
     return settings;
   }
 
+  public ScriptEnginePool getEnginePool() {
+    return enginePool;
+  }
+
+  public ScriptExecutionScheduler getScheduler() {
+    return scheduler;
+  }
+
+  public ScriptWatchdog getWatchdog() {
+    return watchdog;
+  }
+
+  public ScriptMetrics getMetrics() {
+    return metrics;
+  }
+
+  public ScriptTimerService getTimerService() {
+    return timerService;
+  }
+
   public CopyScriptsOnStartupAction getCopyScriptsAction() {
     return copyScriptsAction;
   }
@@ -1,11 +1,22 @@
 package com.boxysystems.scriptmonkey.intellij;
 
 import com.boxysystems.scriptmonkey.intellij.action.ClearEditorAction;
+import com.boxysystems.scriptmonkey.intellij.action.CloseShellSessionAction;
+import com.boxysystems.scriptmonkey.intellij.action.ForkShellSessionAction;
+import com.boxysystems.scriptmonkey.intellij.action.NewShellSessionAction;
 import com.boxysystems.scriptmonkey.intellij.action.OpenHelpAction;
 import com.boxysystems.scriptmonkey.intellij.action.ShowScriptMonkeyConfigurationAction;
+import com.boxysystems.scriptmonkey.intellij.action.StopCommandAction;
+import com.boxysystems.scriptmonkey.intellij.engine.CachingClassLoader;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptEnginePool;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptTimerService;
 import com.boxysystems.scriptmonkey.intellij.ui.ScriptCommandProcessor;
 import com.boxysystems.scriptmonkey.intellij.ui.ScriptMonkeyToolWindow;
 import com.boxysystems.scriptmonkey.intellij.ui.ScriptShellPanel;
+import com.boxysystems.scriptmonkey.intellij.ui.ScriptStatsPanel;
+import com.boxysystems.scriptmonkey.intellij.ui.ScriptTimersPanel;
+import com.boxysystems.scriptmonkey.intellij.ui.ShellSession;
+import com.intellij.ProjectTopics;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManager;
 import com.intellij.openapi.actionSystem.AnAction;
@@ -13,13 +24,24 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.extensions.PluginId;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootAdapter;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.libraries.Library;
+import com.intellij.openapi.roots.libraries.LibraryTable;
+import com.intellij.util.messages.MessageBusConnection;
 import org.jetbrains.annotations.NotNull;
 
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by IntelliJ IDEA.
@@ -33,14 +55,44 @@ public class ScriptMonkeyPlugin implements ProjectComponent {
 
     private ScriptMonkeyToolWindow toolWindow = null;
 
+    private ScriptStatsPanel statsPanel = null;
+
+    private ScriptTimersPanel timersPanel = null;
+
     private IdeaPluginDescriptor pluginDescriptor;
 
-    private Map<String, ScriptShellPanel> commandShellPanels  = new HashMap<String, ScriptShellPanel>();
+    private final List<ShellSession> shellSessions = new CopyOnWriteArrayList<ShellSession>();
+
+    private final Map<String, Integer> shellSessionCounts = new HashMap<String, Integer>();
+
+    private ScriptEnginePool enginePool;
+
+    private ScriptTimerService timerService;
+
+    private volatile ScriptMonkeyPluginClassLoader classLoader;
+
+    private final AtomicBoolean classLoaderUpdateScheduled = new AtomicBoolean();
+
+    private MessageBusConnection messageBusConnection;
 
 
     public ScriptMonkeyPlugin(Project project) throws MalformedURLException {
         this.project = project;
         initPluginDescriptor();
+        initEnginePool();
+    }
+
+    private void initEnginePool() {
+        classLoader = new ScriptMonkeyPluginClassLoader(project, getClass().getClassLoader());
+        enginePool = new ScriptEnginePool("project '" + project.getName() + "'", classLoader);
+        enginePool.setGlobalVariable("application", ApplicationManager.getApplication());
+        enginePool.setGlobalVariable("project", project);
+        enginePool.setGlobalVariable("plugin", this);
+        ScriptMonkeyApplicationComponent applicationComponent = ScriptMonkeyApplicationComponent.getInstance();
+        enginePool.setGlobalVariable("stats", applicationComponent.getMetrics());
+        applicationComponent.getSettings().configure(enginePool);
+        enginePool.scheduleIdleEviction(applicationComponent.getScheduler());
+        timerService = new ScriptTimerService("project '" + project.getName() + "'", project, applicationComponent.getScheduler(), enginePool);
     }
 
     private void initPluginDescriptor() {
@@ -48,40 +100,195 @@ public class ScriptMonkeyPlugin implements ProjectComponent {
     }
 
     public void projectOpened() {
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            public void run() {
+                updateClassLoader();
+                enginePool.warmUp(ScriptEnginePool.JAVASCRIPT, ScriptEnginePool.GROOVY);
+            }
+        });
+        listenToLibraryChanges();
+
         toolWindow = new ScriptMonkeyToolWindow(project);
-        ScriptCommandProcessor commandProcessor = new ScriptCommandProcessor(ApplicationManager.getApplication(), project, this);
 
-        ClearEditorAction clearEditorAction = new ClearEditorAction();
-        ShowScriptMonkeyConfigurationAction showConfigurationAction = new ShowScriptMonkeyConfigurationAction();
-        OpenHelpAction openHelpAction = new OpenHelpAction();
+        openShellSession("js", null);
+        openShellSession("groovy", null);
 
-        AnAction commandShellActions[] = {clearEditorAction, showConfigurationAction, openHelpAction};
+        statsPanel = new ScriptStatsPanel(ScriptMonkeyApplicationComponent.getInstance().getMetrics());
+        toolWindow.addContentPanel("Script Monkey Stats", statsPanel);
 
-        createCommandShell(commandProcessor, clearEditorAction, commandShellActions, "js");
-        createCommandShell(commandProcessor, clearEditorAction, commandShellActions, "groovy");
+        timersPanel = new ScriptTimersPanel(timerService, ScriptMonkeyApplicationComponent.getInstance().getTimerService());
+        toolWindow.addContentPanel("Script Monkey Timers", timersPanel);
 
     }
 
-    private void createCommandShell(ScriptCommandProcessor commandProcessor, ClearEditorAction clearEditorAction, AnAction[] commandShellActions, String language)
+    /**
+     * Opens a command shell session in a tab of its own. Each session has its own processor, engine and
+     * command thread, so sessions don't wait for each other.
+     *
+     * @param language the extension of the session's language, "js" or "groovy"
+     * @param forkOf   the session whose plain variables the new one starts out with, or null to start afresh
+     */
+    public ShellSession openShellSession(String language, ShellSession forkOf)
     {
+        ScriptCommandProcessor commandProcessor = new ScriptCommandProcessor(ApplicationManager.getApplication(), project, this, language);
+        List<String> notForked = Collections.emptyList();
+        if (forkOf != null) {
+            notForked = commandProcessor.copyVariablesFrom(forkOf.getCommandProcessor());
+        }
+
+        ClearEditorAction clearEditorAction = new ClearEditorAction();
+        StopCommandAction stopCommandAction = new StopCommandAction();
+        ForkShellSessionAction forkAction = new ForkShellSessionAction();
+        CloseShellSessionAction closeAction = new CloseShellSessionAction();
+        AnAction commandShellActions[] = {clearEditorAction, stopCommandAction, new NewShellSessionAction(language), forkAction, closeAction,
+                new ShowScriptMonkeyConfigurationAction(), new OpenHelpAction()};
+
         ScriptShellPanel commandShellPanel = new ScriptShellPanel(commandProcessor, language,  commandShellActions);
         commandShellPanel.applySettings(ScriptMonkeyApplicationComponent.getInstance().getSettings());
         clearEditorAction.setScriptShellPanel(commandShellPanel);
+        stopCommandAction.setScriptShellPanel(commandShellPanel);
+        if (!notForked.isEmpty()) {
+            commandShellPanel.println("Not copied from " + forkOf.getName() + ", only plain values are: " + notForked);
+        }
         commandProcessor.processCommandLine();
-        commandProcessor.addGlobalVariable("window", commandShellPanel);
-        commandShellPanels.put(language, commandShellPanel);
-        toolWindow.addContentPanel(language.toUpperCase()+" Shell", commandShellPanel);
+        commandProcessor.addGlobalVariable(language, "window", commandShellPanel);
+
+        ShellSession session = new ShellSession(nextShellSessionName(language), language, commandProcessor, commandShellPanel);
+        forkAction.setShellSession(session);
+        closeAction.setShellSession(session);
+        session.setContent(toolWindow.addContentPanel(session.getName(), commandShellPanel));
+        shellSessions.add(session);
+        return session;
+    }
+
+    public void selectShellSession(ShellSession session) {
+        toolWindow.getContentManager().setSelectedContent(session.getContent());
+        session.getPanel().requestFocus();
+    }
+
+    public void closeShellSession(ShellSession session) {
+        if (shellSessions.remove(session)) {
+            toolWindow.getContentManager().removeContent(session.getContent(), true);
+            session.dispose();
+        }
+    }
+
+    /**
+     * @return the open sessions of a language, oldest first
+     */
+    public List<ShellSession> getShellSessions(String language) {
+        List<ShellSession> sessions = new ArrayList<ShellSession>();
+        for (ShellSession session : shellSessions) {
+            if (session.getLanguage().equals(language)) {
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
+    private String nextShellSessionName(String language) {
+        synchronized (shellSessionCounts) {
+            Integer count = shellSessionCounts.get(language);
+            count = count != null ? count + 1 : 1;
+            shellSessionCounts.put(language, count);
+            return language.toUpperCase() + " Shell" + (count > 1 ? " #" + count : "");
+        }
+    }
+
+    private void listenToLibraryChanges() {
+        messageBusConnection = project.getMessageBus().connect();
+        messageBusConnection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootAdapter() {
+            public void rootsChanged(ModuleRootEvent event) {
+                scheduleClassLoaderUpdate();
+            }
+        });
+        LibraryTable.Listener libraryListener = new LibraryTable.Listener() {
+            public void afterLibraryAdded(Library library) {
+                scheduleClassLoaderUpdate();
+            }
+
+            public void afterLibraryRenamed(Library library) {
+            }
+
+            public void beforeLibraryRemoved(Library library) {
+            }
+
+            public void afterLibraryRemoved(Library library) {
+                scheduleClassLoaderUpdate();
+            }
+        };
+        for (LibraryTable libraryTable : ScriptMonkeyPluginClassLoader.getLibraryTables(project)) {
+            libraryTable.addListener(libraryListener, project);
+        }
+    }
+
+    private void scheduleClassLoaderUpdate() {
+        if (classLoaderUpdateScheduled.compareAndSet(false, true)) {
+            ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+                public void run() {
+                    classLoaderUpdateScheduled.set(false);
+                    updateClassLoader();
+                }
+            });
+        }
+    }
+
+    /**
+     * Brings the script class loader in line with the project's libraries. New libraries are added to the
+     * current class loader; when a library went away, a fresh class loader replaces it in the engine pool.
+     */
+    private synchronized void updateClassLoader() {
+        if (project.isDisposed()) {
+            return;
+        }
+        Set<URL> libraryUrls = classLoader.collectLibraryUrls();
+        if (classLoader.updateLibraryUrls(libraryUrls)) {
+            CachingClassLoader.getShared(classLoader).invalidate();
+        } else {
+            ScriptMonkeyPluginClassLoader rebuilt = new ScriptMonkeyPluginClassLoader(project, getClass().getClassLoader());
+            rebuilt.updateLibraryUrls(libraryUrls);
+            classLoader = rebuilt;
+            enginePool.setClassLoader(rebuilt);
+        }
+    }
+
+    public ScriptMonkeyPluginClassLoader getClassLoader() {
+        return classLoader;
     }
 
     public Project getProject() {
         return project;
     }
 
+    public ScriptEnginePool getEnginePool() {
+        return enginePool;
+    }
+
+    /**
+     * @return the timers of the project's scripts, cancelled when the project closes
+     */
+    public ScriptTimerService getTimerService() {
+        return timerService;
+    }
+
     public ScriptMonkeyToolWindow getToolWindow() {
         return toolWindow;
     }
 
     public void projectClosed() {
+        if (messageBusConnection != null) {
+            messageBusConnection.disconnect();
+        }
+        if (statsPanel != null) {
+            statsPanel.dispose();
+        }
+        if (timersPanel != null) {
+            timersPanel.dispose();
+        }
+        for (ShellSession session : shellSessions) {
+            session.dispose();
+        }
+        shellSessions.clear();
         if (toolWindow != null) {
             toolWindow.unregisterToolWindow();
         }
@@ -92,7 +299,7 @@ public class ScriptMonkeyPlugin implements ProjectComponent {
     }
 
     public void disposeComponent() {
-        // empty
+        enginePool.dispose();
     }
 
     @NotNull
@@ -108,17 +315,24 @@ public class ScriptMonkeyPlugin implements ProjectComponent {
         return "Name:" + pluginDescriptor.getName() + ",Version:" + pluginDescriptor.getVersion() + ",Vendor:" + pluginDescriptor.getVendor();
     }
 
+    /**
+     * @return the panel of the oldest open shell session of the language
+     */
     public ScriptShellPanel getCommandShellPanel(String language) {
-        ScriptShellPanel scriptShellPanel = commandShellPanels.get(language);
-        if(scriptShellPanel == null)
+        List<ShellSession> sessions = getShellSessions(language);
+        if(sessions.isEmpty())
         {
             throw new IllegalArgumentException("no command shell for language: "+language);
         }
-        return scriptShellPanel;
+        return sessions.get(0).getPanel();
     }
 
     public Collection<ScriptShellPanel> getCommandShellPanels()
     {
-        return commandShellPanels.values();
+        List<ScriptShellPanel> panels = new ArrayList<ScriptShellPanel>();
+        for (ShellSession session : shellSessions) {
+            panels.add(session.getPanel());
+        }
+        return panels;
     }
 }
@@ -1,15 +1,18 @@
 package com.boxysystems.scriptmonkey.intellij;
 
 import com.intellij.ide.plugins.cl.PluginClassLoader;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.ModifiableRootModel;
+import com.intellij.openapi.roots.LibraryOrderEntry;
 import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.OrderEntry;
 import com.intellij.openapi.roots.OrderRootType;
 import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.roots.libraries.LibraryTable;
 import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.lang.UrlClassLoader;
 import org.apache.log4j.Logger;
@@ -28,62 +31,84 @@ import java.util.*;
 public class ScriptMonkeyPluginClassLoader extends UrlClassLoader {
 
   private static final Logger logger = Logger.getLogger(ScriptMonkeyPluginClassLoader.class);
-  private ScriptMonkeyPlugin plugin;
+  private Project project;
+  private final Set<URL> libraryUrls = new HashSet<URL>();
 
-  public ScriptMonkeyPluginClassLoader(ScriptMonkeyPlugin plugin) {
-    super(((PluginClassLoader) plugin.getClass().getClassLoader()).getUrls(), plugin.getClass().getClassLoader());
-    this.plugin = plugin;
+  public ScriptMonkeyPluginClassLoader(Project project, ClassLoader pluginClassLoader) {
+    super(getPluginUrls(pluginClassLoader), pluginClassLoader);
+    this.project = project;
   }
 
-  public ScriptMonkeyPluginClassLoader getAugmentedClassLoader() {
-    try {
-      Library[] globalLibraries = getGlobalLibraries();
-      addLibrariesToClassLoader(globalLibraries);
-      Library[] projectLibraries = getProjectLibraries(plugin.getProject());
-      addLibrariesToClassLoader(projectLibraries);
-      Library[] moduleLibraries = getModuleLibraries(plugin.getProject());
-      addLibrariesToClassLoader(moduleLibraries);
-      return this;
-    } catch (Exception e) {
-      logger.error("Error augmenting classloader " + e);
+  private static List<URL> getPluginUrls(ClassLoader pluginClassLoader) {
+    if (pluginClassLoader instanceof PluginClassLoader) {
+      return ((PluginClassLoader) pluginClassLoader).getUrls();
     }
-    return null;
+    return new ArrayList<URL>();
   }
 
-  private void addLibrariesToClassLoader(Library[] libraries) throws MalformedURLException {
-    for (Library library : libraries) {
-      VirtualFile[] files = library.getFiles(OrderRootType.CLASSES);
-      for (VirtualFile file : files) {
-        URL url = new File(file.getPresentableUrl()).toURI().toURL();
-        if (!this.getUrls().contains(url)) {
-          this.addURL(url);
+  /**
+   * Collects the class roots of the global and project libraries and of the libraries the modules
+   * depend on. Reads the project model, so it is meant to be called from a background thread.
+   */
+  public Set<URL> collectLibraryUrls() {
+    return ApplicationManager.getApplication().runReadAction(new Computable<Set<URL>>() {
+      public Set<URL> compute() {
+        Set<URL> urls = new LinkedHashSet<URL>();
+        try {
+          LibraryTablesRegistrar registrar = LibraryTablesRegistrar.getInstance();
+          addLibraryUrls(urls, registrar.getLibraryTable().getLibraries());
+          if (!project.isDisposed()) {
+            addLibraryUrls(urls, registrar.getLibraryTable(project).getLibraries());
+            for (Module module : ModuleManager.getInstance(project).getModules()) {
+              for (OrderEntry orderEntry : ModuleRootManager.getInstance(module).getOrderEntries()) {
+                if (orderEntry instanceof LibraryOrderEntry) {
+                  addUrls(urls, ((LibraryOrderEntry) orderEntry).getRootFiles(OrderRootType.CLASSES));
+                }
+              }
+            }
+          }
+        } catch (MalformedURLException e) {
+          logger.error("Error collecting library urls", e);
         }
+        return urls;
+      }
+    });
+  }
+
+  /**
+   * Adds the library urls this class loader doesn't know yet.
+   *
+   * @return false if a library url added earlier is gone, in which case a new class loader
+   *         should be built since urls can't be taken out of a class loader
+   */
+  public synchronized boolean updateLibraryUrls(Set<URL> urls) {
+    int added = 0;
+    for (URL url : urls) {
+      if (libraryUrls.add(url)) {
+        addURL(url);
+        added++;
       }
     }
+    if (added > 0) {
+      logger.info("Added " + added + " library url(s) to the script class loader of project '" + project.getName() + "'");
+    }
+    return urls.containsAll(libraryUrls);
   }
 
-  private Library[] getProjectLibraries(Project project) {
+  public static LibraryTable[] getLibraryTables(Project project) {
     LibraryTablesRegistrar registrar = LibraryTablesRegistrar.getInstance();
-    LibraryTable libraryTable = registrar.getLibraryTable(project);
-    return libraryTable.getLibraries();
+    return new LibraryTable[]{registrar.getLibraryTable(), registrar.getLibraryTable(project)};
   }
 
-  private Library[] getGlobalLibraries() {
-    LibraryTablesRegistrar registrar = LibraryTablesRegistrar.getInstance();
-    LibraryTable libraryTable = registrar.getLibraryTable();
-    return libraryTable.getLibraries();
+  private static void addLibraryUrls(Set<URL> urls, Library[] libraries) throws MalformedURLException {
+    for (Library library : libraries) {
+      addUrls(urls, library.getFiles(OrderRootType.CLASSES));
+    }
   }
 
-  private Library[] getModuleLibraries(Project project) {
-    ModuleManager moduleManager = ModuleManager.getInstance(project);
-    Module[] modules = moduleManager.getModules();
-    List<Library> moduleLibraries = new ArrayList<Library>();
-    for (Module module : modules) {
-      ModuleRootManager rootManager = ModuleRootManager.getInstance(module);
-      ModifiableRootModel rootModel = rootManager.getModifiableModel();
-      LibraryTable libraryTable = rootModel.getModuleLibraryTable();
-      Collections.addAll(moduleLibraries, libraryTable.getLibraries());
+  private static void addUrls(Set<URL> urls, VirtualFile[] files) throws MalformedURLException {
+    for (VirtualFile file : files) {
+      urls.add(new File(file.getPresentableUrl()).toURI().toURL());
     }
-    return moduleLibraries.toArray(new Library[moduleLibraries.size()]);
   }
 }
@@ -3,6 +3,7 @@ package com.boxysystems.scriptmonkey.intellij;
 import com.boxysystems.scriptmonkey.intellij.ui.PluginScript;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
@@ -16,6 +17,7 @@ public class ScriptMonkeyProjectComponent implements ProjectComponent {
 
   private PluginScriptRunner pluginScriptRunner = null;
   private Project project;
+  private PluginScriptTriggers pluginScriptTriggers = null;
 
   public ScriptMonkeyProjectComponent(Project project) {
     this.project = project;
@@ -24,10 +26,31 @@ public class ScriptMonkeyProjectComponent implements ProjectComponent {
 
   public void projectOpened() {
     pluginScriptRunner.runPluginScripts(PluginScript.RUN_MODE.PROJECT_OPEN);
+    ScriptMonkeyApplicationComponent applicationComponent = ScriptMonkeyApplicationComponent.getInstance();
+    pluginScriptTriggers = new PluginScriptTriggers(project, pluginScriptRunner, applicationComponent.getScheduler());
+    pluginScriptTriggers.start(applicationComponent.getSettings());
   }
 
   public void projectClosed() {
+    if (pluginScriptTriggers != null) {
+      Disposer.dispose(pluginScriptTriggers);
+      pluginScriptTriggers = null;
+    }
     pluginScriptRunner.runPluginScriptsSynchronously(PluginScript.RUN_MODE.PROJECT_CLOSE);
+    ScriptMonkeyPlugin.getInstance(project).getTimerService().shutdown();
+  }
+
+  /**
+   * Makes the triggered plugin scripts follow edited settings.
+   */
+  public void reloadTriggers(ScriptMonkeySettings settings) {
+    if (pluginScriptTriggers != null) {
+      pluginScriptTriggers.reload(settings);
+    }
+  }
+
+  public static ScriptMonkeyProjectComponent getInstance(Project project) {
+    return project.getComponent(ScriptMonkeyProjectComponent.class);
   }
 
   @NonNls
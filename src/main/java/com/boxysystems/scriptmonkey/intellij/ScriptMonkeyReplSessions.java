@@ -0,0 +1,63 @@
+package com.boxysystems.scriptmonkey.intellij;
+
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptReplServer;
+import com.boxysystems.scriptmonkey.intellij.ui.ScriptCommandProcessor;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+
+import javax.script.ScriptContext;
+import java.io.Writer;
+
+/**
+ * Opens the sessions of the {@link ScriptReplServer}: a command processor of its own for each, with the
+ * same globals as the command shells of the application or of a project.
+ */
+public class ScriptMonkeyReplSessions implements ScriptReplServer.SessionFactory {
+
+    public ScriptReplServer.Session open(final String language, String projectName, final Writer output) {
+        final ScriptCommandProcessor commandProcessor;
+        if (projectName == null) {
+            commandProcessor = new ScriptCommandProcessor(ApplicationManager.getApplication());
+        } else {
+            Project project = findProject(projectName);
+            commandProcessor = new ScriptCommandProcessor(ApplicationManager.getApplication(), project,
+                    ScriptMonkeyPlugin.getInstance(project), language);
+        }
+        try {
+            commandProcessor.getEngine(language);
+        } catch (IllegalArgumentException e) {
+            commandProcessor.releaseEngines();
+            throw e;
+        }
+        commandProcessor.processCommandLine();
+        commandProcessor.setBudget(ScriptMonkeyApplicationComponent.getInstance().getSettings().createConsoleBudget());
+
+        return new ScriptReplServer.Session() {
+            public Object evaluate(String command) throws Exception {
+                // set every time, the engine is a new one after a script was stopped
+                ScriptContext context = commandProcessor.getEngine(language).getContext();
+                context.setWriter(output);
+                context.setErrorWriter(output);
+                return commandProcessor.evaluateCommand(command, language);
+            }
+
+            public void stop() {
+                commandProcessor.stopScripts();
+            }
+
+            public void close() {
+                commandProcessor.releaseEngines();
+            }
+        };
+    }
+
+    private static Project findProject(String name) {
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            if (project.getName().equals(name)) {
+                return project;
+            }
+        }
+        throw new IllegalArgumentException("no open project named '" + name + "'");
+    }
+}
@@ -1,5 +1,11 @@
 package com.boxysystems.scriptmonkey.intellij;
 
+import com.boxysystems.scriptmonkey.intellij.engine.CompiledScriptCache;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptBudget;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptEnginePool;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptExecutionScheduler;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptWatchdog;
+import com.boxysystems.scriptmonkey.intellij.ui.ConsoleOutputBuffer;
 import com.boxysystems.scriptmonkey.intellij.ui.PluginScript;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.*;
@@ -9,6 +15,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
+import java.io.File;
 import java.io.Serializable;
 import java.util.*;
 import java.util.List;
@@ -31,6 +38,22 @@ public class ScriptMonkeySettings implements ApplicationComponent, PersistentSta
     private List<PluginScript> pluginScripts = new ArrayList<PluginScript>();
     private Color commandShellBackgroundColor = Color.WHITE;
     private Color commandShellForegroundColor = Color.BLACK;
+    private int enginePoolSize = ScriptEnginePool.DEFAULT_SIZE;
+    private int enginePoolIdleTimeout = (int) (ScriptEnginePool.DEFAULT_IDLE_TIMEOUT / 1000);
+    private int compiledScriptCacheSize = CompiledScriptCache.DEFAULT_CAPACITY;
+    private int scriptRunnerThreads = ScriptExecutionScheduler.DEFAULT_THREADS;
+    private int pluginScriptsTimeout = 60;
+    private int consoleFlushInterval = ConsoleOutputBuffer.DEFAULT_FLUSH_INTERVAL;
+    private int consoleBackpressureLimit = ConsoleOutputBuffer.DEFAULT_BACKPRESSURE_LIMIT;
+    private int consoleMaxChars = 4 * 1024 * 1024;
+    private int consoleMaxLines = 100000;
+    private boolean consoleSaveTrimmedOutput = false;
+    private boolean consoleLogToFile = false;
+    private int consoleTimeLimit = 0;
+    private int consoleCpuLimit = 0;
+    private int scriptStopGracePeriod = (int) ScriptWatchdog.DEFAULT_GRACE_PERIOD;
+    private boolean replServerEnabled = false;
+    private int replServerPort = 0;
 
     public ScriptMonkeySettings() {
     }
@@ -67,6 +90,191 @@ public class ScriptMonkeySettings implements ApplicationComponent, PersistentSta
         this.commandShellForegroundColor = commandShellForegroundColor;
     }
 
+    public int getEnginePoolSize() {
+        return enginePoolSize;
+    }
+
+    public void setEnginePoolSize(int enginePoolSize) {
+        this.enginePoolSize = enginePoolSize;
+    }
+
+    /**
+     * @return seconds an idle pooled script engine is kept before it gets evicted
+     */
+    public int getEnginePoolIdleTimeout() {
+        return enginePoolIdleTimeout;
+    }
+
+    public void setEnginePoolIdleTimeout(int enginePoolIdleTimeout) {
+        this.enginePoolIdleTimeout = enginePoolIdleTimeout;
+    }
+
+    public int getCompiledScriptCacheSize() {
+        return compiledScriptCacheSize;
+    }
+
+    public void setCompiledScriptCacheSize(int compiledScriptCacheSize) {
+        this.compiledScriptCacheSize = compiledScriptCacheSize;
+    }
+
+    public int getScriptRunnerThreads() {
+        return scriptRunnerThreads;
+    }
+
+    public void setScriptRunnerThreads(int scriptRunnerThreads) {
+        this.scriptRunnerThreads = scriptRunnerThreads;
+    }
+
+    /**
+     * @return seconds to wait for all the plugin scripts of a run mode that runs synchronously,
+     *         like project close or IntelliJ shutdown
+     */
+    public int getPluginScriptsTimeout() {
+        return pluginScriptsTimeout;
+    }
+
+    public void setPluginScriptsTimeout(int pluginScriptsTimeout) {
+        this.pluginScriptsTimeout = pluginScriptsTimeout;
+    }
+
+    /**
+     * @return minimum milliseconds between two writes of script output to a console
+     */
+    public int getConsoleFlushInterval() {
+        return consoleFlushInterval;
+    }
+
+    public void setConsoleFlushInterval(int consoleFlushInterval) {
+        this.consoleFlushInterval = consoleFlushInterval;
+    }
+
+    /**
+     * @return number of characters of console output a script may get ahead of the console before it has to wait
+     */
+    public int getConsoleBackpressureLimit() {
+        return consoleBackpressureLimit;
+    }
+
+    public void setConsoleBackpressureLimit(int consoleBackpressureLimit) {
+        this.consoleBackpressureLimit = consoleBackpressureLimit;
+    }
+
+    /**
+     * @return maximum number of characters kept in a console, 0 for no limit
+     */
+    public int getConsoleMaxChars() {
+        return consoleMaxChars;
+    }
+
+    public void setConsoleMaxChars(int consoleMaxChars) {
+        this.consoleMaxChars = consoleMaxChars;
+    }
+
+    /**
+     * @return maximum number of lines kept in a console, 0 for no limit
+     */
+    public int getConsoleMaxLines() {
+        return consoleMaxLines;
+    }
+
+    public void setConsoleMaxLines(int consoleMaxLines) {
+        this.consoleMaxLines = consoleMaxLines;
+    }
+
+    /**
+     * @return true if output trimmed from a console is saved to a temp file
+     */
+    public boolean isConsoleSaveTrimmedOutput() {
+        return consoleSaveTrimmedOutput;
+    }
+
+    public void setConsoleSaveTrimmedOutput(boolean consoleSaveTrimmedOutput) {
+        this.consoleSaveTrimmedOutput = consoleSaveTrimmedOutput;
+    }
+
+    /**
+     * @return true if console output is also logged to a memory mapped temp file, and script consoles
+     *         page their output in from that file instead of keeping it in memory
+     */
+    public boolean isConsoleLogToFile() {
+        return consoleLogToFile;
+    }
+
+    public void setConsoleLogToFile(boolean consoleLogToFile) {
+        this.consoleLogToFile = consoleLogToFile;
+    }
+
+    /**
+     * @return seconds a script run from a console may take, 0 for no limit
+     */
+    public int getConsoleTimeLimit() {
+        return consoleTimeLimit;
+    }
+
+    public void setConsoleTimeLimit(int consoleTimeLimit) {
+        this.consoleTimeLimit = consoleTimeLimit;
+    }
+
+    /**
+     * @return seconds of CPU time a script run from a console may use, 0 for no limit
+     */
+    public int getConsoleCpuLimit() {
+        return consoleCpuLimit;
+    }
+
+    public void setConsoleCpuLimit(int consoleCpuLimit) {
+        this.consoleCpuLimit = consoleCpuLimit;
+    }
+
+    /**
+     * @return milliseconds a stopped script gets to finish by itself before its thread is stopped
+     */
+    public int getScriptStopGracePeriod() {
+        return scriptStopGracePeriod;
+    }
+
+    public void setScriptStopGracePeriod(int scriptStopGracePeriod) {
+        this.scriptStopGracePeriod = scriptStopGracePeriod;
+    }
+
+    /**
+     * @return true if tools on this machine may evaluate scripts through the REPL server
+     */
+    public boolean isReplServerEnabled() {
+        return replServerEnabled;
+    }
+
+    public void setReplServerEnabled(boolean replServerEnabled) {
+        this.replServerEnabled = replServerEnabled;
+    }
+
+    /**
+     * @return port of the REPL server on the loopback interface, 0 for any free port
+     */
+    public int getReplServerPort() {
+        return replServerPort;
+    }
+
+    public void setReplServerPort(int replServerPort) {
+        this.replServerPort = replServerPort;
+    }
+
+    public ScriptBudget createConsoleBudget() {
+        return ScriptBudget.ofSeconds(consoleTimeLimit, consoleCpuLimit);
+    }
+
+    public void configure(ScriptWatchdog watchdog) {
+        watchdog.setGracePeriod(scriptStopGracePeriod);
+    }
+
+    public void configure(ScriptEnginePool enginePool) {
+        enginePool.configure(enginePoolSize, enginePoolIdleTimeout * 1000L);
+        enginePool.getCompiledScriptCache().setCapacity(compiledScriptCacheSize);
+        File jsFolder = new File(homeFolder, Constants.JS_FOLDER_NAME);
+        enginePool.setGlobalScriptsFolder(new File(jsFolder, Constants.GLOBAL_SCRIPTS_FOLDER_NAME));
+        enginePool.getModuleLoader().setFolder(new File(jsFolder, Constants.LIB_FOLDER_NAME));
+    }
+
     @Nullable
     public ScriptMonkeySettings getState() {
         return this;
@@ -0,0 +1,58 @@
+package com.boxysystems.scriptmonkey.intellij;
+
+import com.boxysystems.scriptmonkey.intellij.ui.PluginScript;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What made a triggered plugin script run, available to the script as the <code>trigger</code> global.
+ * Events that came in a burst are coalesced, so a script gets all the files of the burst at once.
+ */
+public class ScriptTrigger {
+
+    private final PluginScript.RUN_MODE runMode;
+    private final List<String> files;
+    private final int droppedCount;
+    private final long time = System.currentTimeMillis();
+
+    public ScriptTrigger(PluginScript.RUN_MODE runMode, List<String> files, int droppedCount) {
+        this.runMode = runMode;
+        this.files = Collections.unmodifiableList(files);
+        this.droppedCount = droppedCount;
+    }
+
+    public PluginScript.RUN_MODE getRunMode() {
+        return runMode;
+    }
+
+    /**
+     * @return the name of the run mode, such as "FILE_SAVED" or "TIMER"
+     */
+    public String getKind() {
+        return runMode.name();
+    }
+
+    /**
+     * @return the paths of the files saved, changed or selected in, relative to the project folder when
+     *         they are inside it; empty for timers
+     */
+    public List<String> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return the number of files left out of {@link #getFiles()} because there were too many
+     */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String toString() {
+        return runMode + " " + files + (droppedCount > 0 ? " and " + droppedCount + " more" : "");
+    }
+}
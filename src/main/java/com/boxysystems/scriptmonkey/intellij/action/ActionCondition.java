@@ -0,0 +1,142 @@
+package com.boxysystems.scriptmonkey.intellij.action;
+
+import com.intellij.openapi.actionSystem.DataContext;
+import com.intellij.openapi.actionSystem.LangDataKeys;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * "Enabled when" condition of a {@link ScriptMonkeyIntelliJPluginAction}, evaluated in Java so that
+ * updating the action's presentation never calls into the script.
+ * <p/>
+ * A condition is a comma separated list of requirements that must all hold:
+ * <ul>
+ * <li><code>project</code>: there is a project</li>
+ * <li><code>editor</code>: there is an editor</li>
+ * <li><code>selection</code>: the editor has a selection</li>
+ * <li><code>file</code>: there is a file, <code>file:*.java</code> a file whose name matches the
+ * pattern, with <code>*</code> and <code>?</code> wildcards and <code>|</code> between alternatives</li>
+ * </ul>
+ * A requirement prefixed with <code>!</code> must not hold, for example <code>project, !selection</code>.
+ */
+public class ActionCondition {
+
+    private final String text;
+    private final List<Requirement> requirements;
+
+    private ActionCondition(String text, List<Requirement> requirements) {
+        this.text = text;
+        this.requirements = requirements;
+    }
+
+    /**
+     * @return the condition, or null if the text is null or blank
+     * @throws IllegalArgumentException if the text has unknown requirements
+     */
+    public static ActionCondition parse(String text) {
+        if (text == null || text.trim().length() == 0) {
+            return null;
+        }
+        List<Requirement> requirements = new ArrayList<Requirement>();
+        for (String part : text.split(",")) {
+            String requirement = part.trim();
+            if (requirement.length() == 0) {
+                continue;
+            }
+            boolean negated = requirement.startsWith("!");
+            if (negated) {
+                requirement = requirement.substring(1).trim();
+            }
+            String argument = null;
+            int colon = requirement.indexOf(':');
+            if (colon >= 0) {
+                argument = requirement.substring(colon + 1).trim();
+                requirement = requirement.substring(0, colon).trim();
+            }
+            Requirement.Kind kind;
+            try {
+                kind = Requirement.Kind.valueOf(requirement.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown requirement '" + part.trim() + "' in condition '" + text + "'");
+            }
+            if (argument != null && kind != Requirement.Kind.FILE) {
+                throw new IllegalArgumentException("Requirement '" + part.trim() + "' doesn't take a pattern");
+            }
+            requirements.add(new Requirement(kind, negated, argument != null ? toPattern(argument) : null));
+        }
+        return new ActionCondition(text, requirements);
+    }
+
+    public boolean isSatisfied(DataContext dataContext) {
+        Editor editor = LangDataKeys.EDITOR.getData(dataContext);
+        VirtualFile file = LangDataKeys.VIRTUAL_FILE.getData(dataContext);
+        return isSatisfied(LangDataKeys.PROJECT.getData(dataContext) != null, editor != null,
+                editor != null && editor.getSelectionModel().hasSelection(), file != null ? file.getName() : null);
+    }
+
+    boolean isSatisfied(boolean project, boolean editor, boolean selection, String fileName) {
+        for (Requirement requirement : requirements) {
+            boolean holds;
+            switch (requirement.kind) {
+                case PROJECT:
+                    holds = project;
+                    break;
+                case EDITOR:
+                    holds = editor;
+                    break;
+                case SELECTION:
+                    holds = selection;
+                    break;
+                default:
+                    holds = fileName != null && (requirement.pattern == null || requirement.pattern.matcher(fileName).matches());
+            }
+            if (holds == requirement.negated) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String toString() {
+        return text;
+    }
+
+    private static Pattern toPattern(String wildcards) {
+        StringBuilder regex = new StringBuilder();
+        for (String alternative : wildcards.split("\\|")) {
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            for (String literal : alternative.trim().split("((?<=[*?])|(?=[*?]))")) {
+                if (literal.equals("*")) {
+                    regex.append(".*");
+                } else if (literal.equals("?")) {
+                    regex.append('.');
+                } else if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal));
+                }
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    private static class Requirement {
+        private enum Kind {
+            PROJECT, EDITOR, SELECTION, FILE
+        }
+
+        private final Kind kind;
+        private final boolean negated;
+        private final Pattern pattern;
+
+        private Requirement(Kind kind, boolean negated, Pattern pattern) {
+            this.kind = kind;
+            this.negated = negated;
+            this.pattern = pattern;
+        }
+    }
+}
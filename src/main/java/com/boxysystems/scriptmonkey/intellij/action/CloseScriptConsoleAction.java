@@ -4,6 +4,7 @@ import com.boxysystems.scriptmonkey.intellij.ScriptMonkeyPlugin;
 import com.boxysystems.scriptmonkey.intellij.icons.Icons;
 import com.boxysystems.scriptmonkey.intellij.ui.ScriptMonkeyToolWindow;
 import com.boxysystems.scriptmonkey.intellij.ui.ScriptShellPanelAction;
+import com.boxysystems.scriptmonkey.intellij.ui.ScriptShellTabContent;
 import com.boxysystems.scriptmonkey.intellij.util.ProjectUtil;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
@@ -34,6 +35,7 @@ public class CloseScriptConsoleAction extends ScriptShellPanelAction {
         ScriptMonkeyToolWindow toolWindow = plugin.getToolWindow();
         ContentManager contentManager = toolWindow.getContentManager();
         Content content = contentManager.findContent(contentName);
+        ((ScriptShellTabContent) content.getComponent()).getScriptShellPanel().dispose();
         contentManager.removeContent(content, true);
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
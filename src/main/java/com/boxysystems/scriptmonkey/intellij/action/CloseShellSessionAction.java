@@ -0,0 +1,38 @@
+package com.boxysystems.scriptmonkey.intellij.action;
+
+import com.boxysystems.scriptmonkey.intellij.ScriptMonkeyPlugin;
+import com.boxysystems.scriptmonkey.intellij.icons.Icons;
+import com.boxysystems.scriptmonkey.intellij.ui.ShellSession;
+import com.boxysystems.scriptmonkey.intellij.util.ProjectUtil;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.Project;
+
+/**
+ * Closes a command shell session. The last session of a language stays open.
+ */
+public class CloseShellSessionAction extends AnAction {
+    private ShellSession shellSession;
+
+    public CloseShellSessionAction() {
+        super("Close Session",
+                "Close this shell session",
+                Icons.CLOSE_ICON);
+    }
+
+    public void setShellSession(ShellSession shellSession) {
+        this.shellSession = shellSession;
+    }
+
+    public void update(AnActionEvent actionEvent) {
+        super.update(actionEvent);
+        Project project = ProjectUtil.getProject(actionEvent);
+        ScriptMonkeyPlugin plugin = project != null ? ScriptMonkeyPlugin.getInstance(project) : null;
+        actionEvent.getPresentation().setEnabled(plugin != null && shellSession != null
+                && plugin.getShellSessions(shellSession.getLanguage()).size() > 1);
+    }
+
+    public void actionPerformed(AnActionEvent anActionEvent) {
+        ScriptMonkeyPlugin.getInstance(ProjectUtil.getProject(anActionEvent)).closeShellSession(shellSession);
+    }
+}
@@ -2,15 +2,22 @@ package com.boxysystems.scriptmonkey.intellij.action;
 
 import com.boxysystems.scriptmonkey.intellij.Constants;
 import com.boxysystems.scriptmonkey.intellij.util.JarExploder;
-import com.boxysystems.scriptmonkey.intellij.util.ScriptMonkeyFileUtil;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManager;
 import com.intellij.openapi.util.io.FileUtil;
 import org.apache.log4j.Logger;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Created by IntelliJ IDEA.
@@ -22,6 +29,11 @@ public class CopyScriptsOnStartupAction {
 
 
   private final static Logger logger = Logger.getLogger(CopyScriptsOnStartupAction.class);
+
+  public static final String MANIFEST_FILE_NAME = ".scriptmonkey-manifest";
+  private static final String ENTRY_PREFIX = "entry.";
+  private static final Pattern STAGING_FOLDER_PATTERN = Pattern.compile(Pattern.quote(Constants.JS_FOLDER_NAME + ".jar") + "-?\\d+");
+
   private File pluginFolder;
 
   public CopyScriptsOnStartupAction() {
@@ -33,29 +45,156 @@ public class CopyScriptsOnStartupAction {
   }
 
   public void copyScripts(File targetFolder) {
+    List<File> jsFolders = new ArrayList<File>();
+    collectJSFolders(jsFolders, pluginFolder);
+
+    File manifestFile = new File(targetFolder, MANIFEST_FILE_NAME);
+    Properties manifest = loadManifest(manifestFile);
+    boolean changed = false;
+    for (File jsFolder : jsFolders) {
+      try {
+        changed |= copyScripts(jsFolder, targetFolder, manifest);
+      } catch (IOException e) {
+        logger.error("Error copying scripts from " + jsFolder + " !", e);
+      }
+    }
+    if (changed) {
+      saveManifest(manifestFile, manifest);
+    }
+    deleteStaleStagingFolders();
+  }
+
+  /**
+   * Extracts the entries of the given jar that changed since the last time they were extracted,
+   * straight into the target folder. The manifest keys of a jar hold its path in the plugin folder,
+   * since every jar found there is named the same.
+   *
+   * @return true if the manifest was updated
+   */
+  private boolean copyScripts(File jarFile, File targetFolder, Properties manifest) throws IOException {
+    String folderName = jarFile.getName().endsWith(".jar") ? jarFile.getName().replaceAll(".jar", "") : jarFile.getName();
+    File destFolder = new File(targetFolder, folderName);
+    String jarName = getJarName(jarFile);
+    String checksumKey = "jar." + jarName + ".checksum";
+    String entryPrefix = ENTRY_PREFIX + jarName + "!";
+    String checksum = String.valueOf(checksum(jarFile));
+    if (checksum.equals(manifest.getProperty(checksumKey)) && allEntriesExist(destFolder, manifest, entryPrefix)) {
+      logger.info("Scripts from " + jarFile + " are up to date in " + destFolder);
+      return false;
+    }
+
+    int extracted = 0;
+    ZipFile zipFile = new ZipFile(jarFile);
     try {
-      List<File> jsFolders = new ArrayList<File>();
-      collectJSFolders(jsFolders, pluginFolder);
-
-      for (File jsFolder : jsFolders) {
-        File tmpDir = new File(Constants.TEMP_FOLDER, jsFolder.getName() + new Random().nextInt());
-        logger.info("Creating temporary folder for staging files " + tmpDir);
-        if (tmpDir.mkdir()) {
-          String folderName = jsFolder.getName().endsWith(".jar") ? jsFolder.getName().replaceAll(".jar", "") : jsFolder.getName();
-          logger.info("folderName = " + folderName);
-          File resourceTmpFolder = new File(tmpDir, folderName);
-          logger.info("resourceTmpFolder = " + resourceTmpFolder);
-          if (resourceTmpFolder.mkdir()) {
-            if (jsFolder.isFile()) {
-              logger.info("Exploding jar..."+jsFolder);
-              JarExploder.explodeJar(resourceTmpFolder, jsFolder);
-            }
-            ScriptMonkeyFileUtil.copyDir(tmpDir, targetFolder);
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory()) {
+          continue;
+        }
+        String entryKey = entryPrefix + entry.getName();
+        String crc = String.valueOf(entry.getCrc());
+        File destFile = new File(destFolder, entry.getName());
+        if (crc.equals(manifest.getProperty(entryKey)) && destFile.exists()) {
+          continue;
+        }
+        if (!destFile.exists() || entry.getTime() > destFile.lastModified()) {
+          if (destFile.exists()) {
+            FileUtil.copy(destFile, new File(destFile.getAbsolutePath() + ".bak"));
           }
+          JarExploder.extractEntry(zipFile, entry, destFile);
+          extracted++;
         }
+        manifest.setProperty(entryKey, crc);
+      }
+    } finally {
+      zipFile.close();
+    }
+    manifest.setProperty(checksumKey, checksum);
+    logger.info("Extracted " + extracted + " changed script(s) from " + jarFile + " to " + destFolder);
+    return true;
+  }
+
+  /**
+   * @return the path of the jar in the plugin folder
+   */
+  private String getJarName(File jarFile) {
+    String pluginPath = pluginFolder.getAbsolutePath();
+    String jarPath = jarFile.getAbsolutePath();
+    if (jarPath.startsWith(pluginPath + File.separator)) {
+      jarPath = jarPath.substring(pluginPath.length() + 1);
+    }
+    return jarPath.replace(File.separatorChar, '/');
+  }
+
+  private boolean allEntriesExist(File destFolder, Properties manifest, String entryPrefix) {
+    for (String key : manifest.stringPropertyNames()) {
+      if (key.startsWith(entryPrefix) && !new File(destFolder, key.substring(entryPrefix.length())).exists()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long checksum(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        crc.update(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+    return crc.getValue();
+  }
+
+  private Properties loadManifest(File manifestFile) {
+    Properties manifest = new Properties();
+    if (manifestFile.exists()) {
+      try {
+        InputStream in = new FileInputStream(manifestFile);
+        try {
+          manifest.load(in);
+        } finally {
+          in.close();
+        }
+      } catch (IOException e) {
+        logger.warn("Could not read " + manifestFile + ", extracting all scripts", e);
+        manifest.clear();
+      }
+    }
+    return manifest;
+  }
+
+  private void saveManifest(File manifestFile, Properties manifest) {
+    try {
+      manifestFile.getParentFile().mkdirs();
+      OutputStream out = new FileOutputStream(manifestFile);
+      try {
+        manifest.store(out, "Script Monkey bundled scripts");
+      } finally {
+        out.close();
       }
     } catch (IOException e) {
-      logger.error("Error copying scripts !", e);
+      logger.warn("Could not write " + manifestFile, e);
+    }
+  }
+
+  /**
+   * Removes the random staging folders that earlier versions exploded js.jar into on every start.
+   */
+  private void deleteStaleStagingFolders() {
+    File[] children = Constants.TEMP_FOLDER.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory() && STAGING_FOLDER_PATTERN.matcher(child.getName()).matches()) {
+          logger.info("Deleting stale staging folder " + child);
+          FileUtil.delete(child);
+        }
+      }
     }
   }
 
@@ -0,0 +1,29 @@
+package com.boxysystems.scriptmonkey.intellij.action;
+
+import java.io.File;
+import java.io.FileFilter;
+
+/**
+ * Accepts existing files with one of the given extensions, ignoring case.
+ */
+public class ExtensionBasedFileFilter implements FileFilter {
+
+    private final String[] extensions;
+
+    public ExtensionBasedFileFilter(String... extensions) {
+        this.extensions = extensions;
+    }
+
+    public boolean accept(File file) {
+        if (file == null || !file.isFile()) {
+            return false;
+        }
+        String name = file.getName().toLowerCase();
+        for (String extension : extensions) {
+            if (name.endsWith("." + extension.toLowerCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
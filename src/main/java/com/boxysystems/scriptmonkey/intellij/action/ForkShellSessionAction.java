@@ -0,0 +1,32 @@
+package com.boxysystems.scriptmonkey.intellij.action;
+
+import com.boxysystems.scriptmonkey.intellij.ScriptMonkeyPlugin;
+import com.boxysystems.scriptmonkey.intellij.icons.Icons;
+import com.boxysystems.scriptmonkey.intellij.ui.ShellSession;
+import com.boxysystems.scriptmonkey.intellij.util.ProjectUtil;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+
+/**
+ * Opens a new command shell session that starts out with the variables defined in this one. Only plain
+ * values, such as strings, numbers and Java objects, are copied; functions and other script objects would
+ * keep working on the variables of this session, so the new session lists them instead.
+ */
+public class ForkShellSessionAction extends AnAction {
+    private ShellSession shellSession;
+
+    public ForkShellSessionAction() {
+        super("Fork Session",
+                "Open a new shell session with the plain values of this one, without its functions",
+                Icons.FORK_SESSION_ICON);
+    }
+
+    public void setShellSession(ShellSession shellSession) {
+        this.shellSession = shellSession;
+    }
+
+    public void actionPerformed(AnActionEvent anActionEvent) {
+        ScriptMonkeyPlugin plugin = ScriptMonkeyPlugin.getInstance(ProjectUtil.getProject(anActionEvent));
+        plugin.selectShellSession(plugin.openShellSession(shellSession.getLanguage(), shellSession));
+    }
+}
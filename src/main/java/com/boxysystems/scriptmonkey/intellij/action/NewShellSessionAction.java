@@ -0,0 +1,26 @@
+package com.boxysystems.scriptmonkey.intellij.action;
+
+import com.boxysystems.scriptmonkey.intellij.ScriptMonkeyPlugin;
+import com.boxysystems.scriptmonkey.intellij.icons.Icons;
+import com.boxysystems.scriptmonkey.intellij.util.ProjectUtil;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+
+/**
+ * Opens another command shell session for a language, with variables of its own.
+ */
+public class NewShellSessionAction extends AnAction {
+    private final String language;
+
+    public NewShellSessionAction(String language) {
+        super("New Session",
+                "Open another " + language + " shell session",
+                Icons.NEW_SESSION_ICON);
+        this.language = language;
+    }
+
+    public void actionPerformed(AnActionEvent anActionEvent) {
+        ScriptMonkeyPlugin plugin = ScriptMonkeyPlugin.getInstance(ProjectUtil.getProject(anActionEvent));
+        plugin.selectShellSession(plugin.openShellSession(language, null));
+    }
+}
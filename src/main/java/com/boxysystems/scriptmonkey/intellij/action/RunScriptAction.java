@@ -1,5 +1,6 @@
 package com.boxysystems.scriptmonkey.intellij.action;
 
+import com.boxysystems.scriptmonkey.intellij.ScriptMonkeyApplicationComponent;
 import com.boxysystems.scriptmonkey.intellij.ScriptMonkeyPlugin;
 import com.boxysystems.scriptmonkey.intellij.ui.*;
 import com.boxysystems.scriptmonkey.intellij.util.LoggingUtil;
@@ -89,6 +90,7 @@ public class RunScriptAction extends ScriptShellPanelAction {
                     AnAction scriptConsoleActions[] = {rerunAction, stopScriptAction, closeAction, openHelpAction};
 
                     panel = new ScriptShellPanel(commandProcessor, commandProcessor.guessLanguage(new File(contentName)), scriptConsoleActions);
+                    panel.applySettings(ScriptMonkeyApplicationComponent.getInstance().getSettings());
                     content = toolWindow.addContentPanel(contentName, panel);
                 } else {
                     ScriptShellTabContent tabContent = (ScriptShellTabContent) content.getComponent();
@@ -99,7 +101,7 @@ public class RunScriptAction extends ScriptShellPanelAction {
                 commandProcessor.addGlobalVariable(language,"window", panel);
                 panel.clear();
                 panel.println(LoggingUtil.withDate("Running script '" + scriptFile.getAbsolutePath() + "' ..."));
-                ScriptCommandProcessor.ScriptRunningTask task = commandProcessor.processScript(scriptContent,language, new RunScriptActionCallback(panel));
+                ScriptCommandProcessor.ScriptRunningTask task = commandProcessor.processScript(scriptContent, scriptFile, language, new RunScriptActionCallback(panel, commandProcessor, language));
                 panel.getStopScriptAction().setTask(task);
 
                 toolWindow.activate();
@@ -120,15 +122,21 @@ public class RunScriptAction extends ScriptShellPanelAction {
 
     private class RunScriptActionCallback implements ScriptProcessorCallback {
         private ScriptShellPanel panel;
+        private ScriptCommandProcessor commandProcessor;
+        private String language;
 
-        private RunScriptActionCallback(ScriptShellPanel panel) {
+        private RunScriptActionCallback(ScriptShellPanel panel, ScriptCommandProcessor commandProcessor, String language) {
             this.panel = panel;
+            this.commandProcessor = commandProcessor;
+            this.language = language;
         }
 
         public void success(final Object result) {
+            // rendered on the script thread, a lazy result must not be read on the event dispatch thread
+            panel.println("Successfully processed! Result:");
+            panel.printResult(result, commandProcessor, language);
             SwingUtilities.invokeLater(new Runnable() {
                 public void run() {
-                    panel.println("Successfully processed! Result:\n"+result);
                     finishUp();
                 }
             });
@@ -148,7 +156,11 @@ public class RunScriptAction extends ScriptShellPanelAction {
             });
         }
 
+        /**
+         * The panel keeps the engines until the next run, the rest of the result is rendered on them.
+         */
         public void finishUp() {
+            panel.holdEnginesOf(commandProcessor);
             panel.toggleActions();
         }
 
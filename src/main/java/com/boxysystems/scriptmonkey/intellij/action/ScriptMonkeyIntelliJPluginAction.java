@@ -1,14 +1,19 @@
 package com.boxysystems.scriptmonkey.intellij.action;
 
+import com.boxysystems.scriptmonkey.intellij.engine.GlobalScope;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.DataContext;
+import com.intellij.openapi.actionSystem.DataKey;
+import com.intellij.openapi.actionSystem.LangDataKeys;
+import com.intellij.openapi.actionSystem.Presentation;
+import com.intellij.openapi.application.ApplicationManager;
+import org.apache.log4j.Logger;
 
-import javax.swing.*;
-import javax.script.ScriptEngine;
 import javax.script.Invocable;
-import javax.script.ScriptException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import javax.script.ScriptEngine;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Created by IntelliJ IDEA.
@@ -16,41 +21,260 @@ import java.lang.reflect.InvocationTargetException;
  * Date: Jun 23, 2009
  * Time: 7:39:25 PM
  * To change this template use File | Settings | File Templates.
+ * <p/>
+ * Action registered by scripts through <code>createAction</code>, which calls the
+ * <code>actionPerformed</code> and <code>update</code> functions of the script object. Whether the
+ * object has them is found out once, through {@link Invocable#getInterface(Object, Class)}, and the
+ * resulting proxies are kept.
+ * <p/>
+ * Menus and toolbars update their actions many times per second on the UI thread. An action with an
+ * {@link ActionCondition enabled when condition} is updated from the condition alone, without calling
+ * into the script. Otherwise the script's <code>update</code> is called at most once per
+ * {@link #UPDATE_INTERVAL} for each place the action shows up in, on a pooled thread in a read action,
+ * with a {@link DataSnapshot snapshot} of the data context taken on the UI thread. The UI thread only
+ * applies the presentation the last update left, so a new presentation shows up on the next refresh.
+ * An update that throws is retried after a delay that doubles with every failure in a row, up to
+ * {@link #MAX_RETRY_INTERVAL}.
+ * <p/>
+ * The action is created by a script run, and its functions are called with the context of that run, so
+ * the global functions they call see the variables of the script, such as <code>window</code>.
  */
 public class ScriptMonkeyIntelliJPluginAction extends AnAction {
+
+    private static final Logger logger = Logger.getLogger(ScriptMonkeyIntelliJPluginAction.class);
+
+    public static final long UPDATE_INTERVAL = 250;
+    public static final long MAX_RETRY_INTERVAL = 60 * 1000;
+
+    public interface Performer {
+        void actionPerformed(AnActionEvent anActionEvent);
+    }
+
+    public interface Updater {
+        void update(AnActionEvent anActionEvent);
+    }
+
+    private final GlobalScope.Run run;
     private ScriptEngine engine;
     private Object callableObject;
+    private volatile ActionCondition enabledWhen;
+
+    private boolean resolved = false;
+    private Performer performer;
+    private Updater updater;
+    private final Map<String, CachedPresentation> cachedPresentations = new HashMap<String, CachedPresentation>();
+    private int failures;
+    private long retryAt;
 
     public ScriptMonkeyIntelliJPluginAction() {
         super();
+        run = GlobalScope.getCurrentRun();
     }
 
-    public void setScriptingEngine(ScriptEngine engine) {
+    public synchronized void setScriptingEngine(ScriptEngine engine) {
         this.engine = engine;
+        forgetHandlers();
     }
 
-    public void setCallableObject(Object callableObject) {
+    public synchronized void setCallableObject(Object callableObject) {
         this.callableObject = callableObject;
+        forgetHandlers();
     }
 
+    /**
+     * @param enabledWhen an {@link ActionCondition}, or null to let the script's <code>update</code> decide
+     */
+    public void setEnabledWhen(String enabledWhen) {
+        this.enabledWhen = ActionCondition.parse(enabledWhen);
+    }
 
-    public void actionPerformed(AnActionEvent anActionEvent) {
-        Invocable invocableEngine = (Invocable) engine;
+    public String getEnabledWhen() {
+        ActionCondition condition = enabledWhen;
+        return condition != null ? condition.toString() : null;
+    }
+
+    public void actionPerformed(final AnActionEvent anActionEvent) {
+        final Performer performer = getPerformer();
+        if (performer == null) {
+            return;
+        }
         try {
-            invocableEngine.invokeMethod(callableObject, "actionPerformed", anActionEvent);
+            inRun(new Runnable() {
+                public void run() {
+                    performer.actionPerformed(anActionEvent);
+                }
+            });
         } catch (Throwable e) {
-            //don't care if the method doesn't exist
+            logger.error("Error while performing script action", e);
         }
     }
 
     @Override
     public void update(AnActionEvent anActionEvent) {
         super.update(anActionEvent);
-        Invocable invocableEngine = (Invocable) engine;
+        Presentation presentation = anActionEvent.getPresentation();
+        ActionCondition condition = enabledWhen;
+        if (condition != null) {
+            presentation.setEnabled(condition.isSatisfied(anActionEvent.getDataContext()));
+            return;
+        }
+        Updater updater = getUpdater();
+        if (updater == null) {
+            return;
+        }
+        String place = anActionEvent.getPlace();
+        long now = System.currentTimeMillis();
+        CachedPresentation cached;
+        synchronized (cachedPresentations) {
+            cached = cachedPresentations.get(place);
+            if (cached == null) {
+                cached = new CachedPresentation();
+                cachedPresentations.put(place, cached);
+            }
+            if (cached.presentation != null) {
+                presentation.copyFrom(cached.presentation);
+            }
+            if (cached.updating || now - cached.updatedAt < UPDATE_INTERVAL || now < retryAt) {
+                return;
+            }
+            cached.updating = true;
+            cached.updatedAt = now;
+        }
+        Presentation updated = presentation.clone();
+        AnActionEvent snapshot = new AnActionEvent(anActionEvent.getInputEvent(),
+                new DataSnapshot(anActionEvent.getDataContext()), place, updated,
+                anActionEvent.getActionManager(), anActionEvent.getModifiers());
+        scheduleUpdate(updater, snapshot, cached);
+    }
+
+    private void scheduleUpdate(final Updater updater, final AnActionEvent snapshot, final CachedPresentation cached) {
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            public void run() {
+                try {
+                    ApplicationManager.getApplication().runReadAction(new Runnable() {
+                        public void run() {
+                            inRun(new Runnable() {
+                                public void run() {
+                                    updater.update(snapshot);
+                                }
+                            });
+                        }
+                    });
+                    updateSucceeded(cached, snapshot.getPresentation());
+                } catch (Throwable e) {
+                    updateFailed(cached, e);
+                }
+            }
+        });
+    }
+
+    private void inRun(Runnable call) {
+        if (run != null) {
+            run.execute(call);
+        } else {
+            call.run();
+        }
+    }
+
+    private void updateSucceeded(CachedPresentation cached, Presentation presentation) {
+        synchronized (cachedPresentations) {
+            cached.presentation = presentation;
+            cached.updating = false;
+            failures = 0;
+        }
+    }
+
+    private void updateFailed(CachedPresentation cached, Throwable e) {
+        long delay;
+        synchronized (cachedPresentations) {
+            cached.updating = false;
+            failures++;
+            delay = getRetryDelay(failures);
+            retryAt = System.currentTimeMillis() + delay;
+        }
+        logger.warn("Script action update failed, trying again in " + delay + " ms", e);
+    }
+
+    /**
+     * @return how long to wait before calling an update that failed the given number of times in a row
+     */
+    static long getRetryDelay(int failures) {
+        long delay = UPDATE_INTERVAL;
+        for (int i = 1; i < failures && delay < MAX_RETRY_INTERVAL; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, MAX_RETRY_INTERVAL);
+    }
+
+    private synchronized Performer getPerformer() {
+        resolveHandlers();
+        return performer;
+    }
+
+    private synchronized Updater getUpdater() {
+        resolveHandlers();
+        return updater;
+    }
+
+    private void resolveHandlers() {
+        if (resolved || engine == null || callableObject == null) {
+            return;
+        }
+        resolved = true;
+        Invocable invocable = (Invocable) engine;
+        performer = getInterface(invocable, Performer.class);
+        updater = getInterface(invocable, Updater.class);
+    }
+
+    private <T> T getInterface(Invocable invocable, Class<T> type) {
         try {
-            invocableEngine.invokeMethod(callableObject, "update", anActionEvent);
-        } catch (Throwable e) {
-            //don't care if the method doesn't exist
+            return invocable.getInterface(callableObject, type);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void forgetHandlers() {
+        resolved = false;
+        performer = null;
+        updater = null;
+        synchronized (cachedPresentations) {
+            cachedPresentations.clear();
+            failures = 0;
+            retryAt = 0;
+        }
+    }
+
+    /**
+     * The presentation the script's <code>update</code> left for one place. Guarded by the map it is in.
+     */
+    private static class CachedPresentation {
+        private Presentation presentation;
+        private long updatedAt;
+        private boolean updating;
+    }
+
+    /**
+     * The data a script's <code>update</code> usually looks at, read on the UI thread. Data contexts of
+     * components can only be read there, and only while the event is being handled.
+     */
+    static class DataSnapshot implements DataContext {
+        private static final DataKey<?>[] KEYS = {LangDataKeys.PROJECT, LangDataKeys.MODULE, LangDataKeys.EDITOR,
+                LangDataKeys.VIRTUAL_FILE, LangDataKeys.VIRTUAL_FILE_ARRAY, LangDataKeys.PSI_FILE, LangDataKeys.PSI_ELEMENT};
+
+        private final Map<String, Object> data = new HashMap<String, Object>();
+
+        DataSnapshot(DataContext dataContext) {
+            for (DataKey<?> key : KEYS) {
+                Object value = key.getData(dataContext);
+                if (value != null) {
+                    data.put(key.getName(), value);
+                }
+            }
+        }
+
+        public Object getData(String dataId) {
+            return data.get(dataId);
         }
     }
 }
@@ -0,0 +1,33 @@
+package com.boxysystems.scriptmonkey.intellij.action;
+
+import com.boxysystems.scriptmonkey.intellij.icons.Icons;
+import com.boxysystems.scriptmonkey.intellij.ui.ScriptShellPanel;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+
+/**
+ * Stops the command a command shell is running, see {@link ScriptShellPanel#stopScript()}.
+ */
+public class StopCommandAction extends AnAction {
+    private ScriptShellPanel scriptShellPanel;
+
+    public StopCommandAction() {
+        super("Stop",
+                "Stop the running command",
+                Icons.SUSPEND_ICON);
+    }
+
+    public void setScriptShellPanel(ScriptShellPanel scriptShellPanel) {
+        this.scriptShellPanel = scriptShellPanel;
+    }
+
+    public void update(AnActionEvent anActionEvent) {
+        anActionEvent.getPresentation().setEnabled(scriptShellPanel != null && scriptShellPanel.isUpdating());
+    }
+
+    public void actionPerformed(AnActionEvent anActionEvent) {
+        if (scriptShellPanel != null && scriptShellPanel.isUpdating()) {
+            scriptShellPanel.stopScript();
+        }
+    }
+}
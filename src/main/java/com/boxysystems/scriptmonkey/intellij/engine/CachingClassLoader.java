@@ -0,0 +1,100 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Class loader that remembers what its delegate found, and what it didn't find, for every script
+ * engine of the application that uses the same delegate.
+ * <p/>
+ * Java interop in Rhino resolves names like <code>Packages.com.intellij.openapi</code> by trying to load
+ * every prefix as a class, and Groovy probes several candidate classes for each unqualified name.
+ * Most of those lookups fail, and failing lookups are the expensive ones since the plugin class loader
+ * has to search all of its jars. A fresh engine repeats them all, so sharing the answers across engines
+ * makes the first Java calls of every new engine cheap. The member caches that Rhino and Groovy build on
+ * top of the loaded classes are internal to each engine and are not shared.
+ */
+public class CachingClassLoader extends ClassLoader {
+
+    private static final Map<ClassLoader, WeakReference<CachingClassLoader>> sharedLoaders =
+            new WeakHashMap<ClassLoader, WeakReference<CachingClassLoader>>();
+
+    private final ClassLoader delegate;
+    private final ConcurrentMap<String, Class<?>> loadedClasses = new ConcurrentHashMap<String, Class<?>>();
+    private final ConcurrentMap<String, Boolean> missingClasses = new ConcurrentHashMap<String, Boolean>();
+
+    private CachingClassLoader(ClassLoader delegate) {
+        super(delegate);
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the caching class loader all engines share for the given delegate
+     */
+    public static CachingClassLoader getShared(ClassLoader delegate) {
+        if (delegate instanceof CachingClassLoader) {
+            return (CachingClassLoader) delegate;
+        }
+        synchronized (sharedLoaders) {
+            WeakReference<CachingClassLoader> reference = sharedLoaders.get(delegate);
+            CachingClassLoader loader = reference != null ? reference.get() : null;
+            if (loader == null) {
+                loader = new CachingClassLoader(delegate);
+                sharedLoaders.put(delegate, new WeakReference<CachingClassLoader>(loader));
+            }
+            return loader;
+        }
+    }
+
+    public ClassLoader getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Forgets the classes that weren't found, for example after libraries were added to the delegate.
+     */
+    public void invalidate() {
+        missingClasses.clear();
+    }
+
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        Class<?> loadedClass = loadedClasses.get(name);
+        if (loadedClass != null) {
+            return loadedClass;
+        }
+        if (missingClasses.containsKey(name)) {
+            throw new ClassNotFoundException(name);
+        }
+        try {
+            loadedClass = delegate.loadClass(name);
+        } catch (ClassNotFoundException e) {
+            missingClasses.put(name, Boolean.TRUE);
+            throw e;
+        }
+        loadedClasses.put(name, loadedClass);
+        return loadedClass;
+    }
+
+    public URL getResource(String name) {
+        return delegate.getResource(name);
+    }
+
+    public Enumeration<URL> getResources(String name) throws IOException {
+        return delegate.getResources(name);
+    }
+
+    public InputStream getResourceAsStream(String name) {
+        return delegate.getResourceAsStream(name);
+    }
+
+    public String toString() {
+        return "CachingClassLoader[" + delegate + ", loaded: " + loadedClasses.size() + ", missing: " + missingClasses.size() + "]";
+    }
+}
@@ -0,0 +1,202 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import org.apache.log4j.Logger;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of {@link CompiledScript}s so that re-running the same script file or editor buffer
+ * skips parsing and compiling. Entries are keyed by language, canonical path, last modified time
+ * and a hash of the script content, so any change to the script results in a fresh compilation.
+ * <p/>
+ * A compiled script stays bound to the engine that compiled it: Rhino keeps that engine's top level
+ * scope and Groovy its global closures. Entries are therefore kept per engine as well, and the engines
+ * of a {@link ScriptEnginePool} share the capacity of the cache but not the compiled scripts. The pool
+ * {@link #forget(ScriptEngine) forgets} the entries of an engine it drops.
+ */
+public class CompiledScriptCache {
+
+    private static final Logger logger = Logger.getLogger(CompiledScriptCache.class);
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final Map<Key, CompiledScript> compiledScripts = new LinkedHashMap<Key, CompiledScript>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Key, CompiledScript> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile int capacity = DEFAULT_CAPACITY;
+
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        synchronized (compiledScripts) {
+            while (compiledScripts.size() > this.capacity) {
+                compiledScripts.remove(compiledScripts.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * Evaluates the script with the engine's current context, compiling it only if it isn't cached yet.
+     * Engines that aren't {@link Compilable} simply evaluate the content.
+     *
+     * @param scriptFile the file the content was read from, or null for scripts that don't live in a file
+     */
+    public Object eval(ScriptEngine engine, File scriptFile, String content) throws ScriptException {
+        return eval(engine, scriptFile, content, engine.getContext());
+    }
+
+    /**
+     * Same as {@link #eval(ScriptEngine, File, String)}, but against the given context instead of the
+     * engine's current one.
+     */
+    public Object eval(ScriptEngine engine, File scriptFile, String content, ScriptContext context) throws ScriptException {
+        CompiledScript compiledScript = getCompiledScript(engine, scriptFile, content);
+        if (compiledScript == null) {
+            return engine.eval(content, context);
+        }
+        return compiledScript.eval(context);
+    }
+
+    public CompiledScript getCompiledScript(ScriptEngine engine, File scriptFile, String content) throws ScriptException {
+        if (!(engine instanceof Compilable) || capacity == 0) {
+            return null;
+        }
+        Key key = new Key(engine, scriptFile, content);
+        CompiledScript compiledScript;
+        synchronized (compiledScripts) {
+            compiledScript = compiledScripts.get(key);
+        }
+        if (compiledScript != null) {
+            hits.incrementAndGet();
+            return compiledScript;
+        }
+        misses.incrementAndGet();
+        compiledScript = ((Compilable) engine).compile(content);
+        synchronized (compiledScripts) {
+            compiledScripts.put(key, compiledScript);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Compiled " + (scriptFile != null ? "'" + scriptFile + "'" : "script") + ", " + this);
+        }
+        return compiledScript;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (compiledScripts) {
+            return compiledScripts.size();
+        }
+    }
+
+    /**
+     * Drops the scripts compiled by an engine that won't be used any more.
+     */
+    public void forget(ScriptEngine engine) {
+        synchronized (compiledScripts) {
+            for (Iterator<Key> keys = compiledScripts.keySet().iterator(); keys.hasNext();) {
+                if (keys.next().engine == engine) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (compiledScripts) {
+            compiledScripts.clear();
+        }
+    }
+
+    public String toString() {
+        return "compiled scripts: " + size() + ", hits: " + getHitCount() + ", misses: " + getMissCount();
+    }
+
+    private static class Key {
+        private final ScriptEngine engine;
+        private final String path;
+        private final long lastModified;
+        private final String contentHash;
+
+        private Key(ScriptEngine engine, File scriptFile, String content) {
+            this.engine = engine;
+            this.path = canonicalPath(scriptFile);
+            this.lastModified = scriptFile != null ? scriptFile.lastModified() : 0;
+            this.contentHash = hash(content);
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            Key that = (Key) o;
+
+            return lastModified == that.lastModified
+                    && engine == that.engine
+                    && (path != null ? path.equals(that.path) : that.path == null)
+                    && contentHash.equals(that.contentHash);
+        }
+
+        public int hashCode() {
+            int result = System.identityHashCode(engine);
+            result = 31 * result + (path != null ? path.hashCode() : 0);
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + contentHash.hashCode();
+            return result;
+        }
+
+        private static String canonicalPath(File scriptFile) {
+            if (scriptFile == null) {
+                return null;
+            }
+            try {
+                return scriptFile.getCanonicalPath();
+            } catch (IOException e) {
+                return scriptFile.getAbsolutePath();
+            }
+        }
+
+        private static String hash(String content) {
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(content.getBytes("UTF-8"));
+                StringBuilder hex = new StringBuilder(digest.length * 2);
+                for (byte b : digest) {
+                    hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces bursts of events per key into one call, on the timer of a {@link ScriptExecutionScheduler}.
+ * <p/>
+ * The call happens once no event came for the key during its quiet period, with the distinct events
+ * of the burst in the order they first came. A steady stream of events would put the call off forever,
+ * so it happens anyway once the first event of the burst is {@link #MAX_DELAY_FACTOR} quiet periods old.
+ * At most {@link #MAX_EVENTS} events are kept per burst, the others are only counted, so that a git
+ * checkout touching thousands of files costs one call and a bounded amount of memory.
+ */
+public class Debouncer<K, E> {
+
+    private static final Logger logger = Logger.getLogger(Debouncer.class);
+
+    public static final int MAX_EVENTS = 1000;
+    public static final int MAX_DELAY_FACTOR = 10;
+
+    public interface Action<K, E> {
+        /**
+         * Called on the scheduler's timer thread, so it should hand any real work over to a script runner.
+         *
+         * @param dropped number of events that didn't fit in the list
+         */
+        void fire(K key, List<E> events, int dropped);
+    }
+
+    private final ScriptExecutionScheduler scheduler;
+    private final Action<K, E> action;
+    private final Map<K, Burst> bursts = new HashMap<K, Burst>();
+
+    public Debouncer(ScriptExecutionScheduler scheduler, Action<K, E> action) {
+        this.scheduler = scheduler;
+        this.action = action;
+    }
+
+    /**
+     * @param event       what happened, or null to just trigger the call
+     * @param quietPeriod milliseconds without events to wait for, 0 to call as soon as possible; the
+     *                    quiet period of the first event of a burst holds for the whole burst
+     */
+    public void trigger(K key, E event, long quietPeriod) {
+        long now = System.currentTimeMillis();
+        synchronized (bursts) {
+            Burst burst = bursts.get(key);
+            if (burst == null) {
+                burst = new Burst(key, now, Math.max(0, quietPeriod));
+                bursts.put(key, burst);
+                burst.future = scheduler.schedule(burst, burst.quietPeriod, TimeUnit.MILLISECONDS);
+            }
+            burst.add(event);
+            burst.lastEventAt = now;
+        }
+    }
+
+    /**
+     * @return the number of keys with events waiting for their call
+     */
+    public int getPendingCount() {
+        synchronized (bursts) {
+            return bursts.size();
+        }
+    }
+
+    /**
+     * Forgets the waiting events of every key, without calling for them.
+     */
+    public void cancel() {
+        synchronized (bursts) {
+            for (Burst burst : bursts.values()) {
+                burst.future.cancel(false);
+            }
+            bursts.clear();
+        }
+    }
+
+    private class Burst implements Runnable {
+        private final K key;
+        private final long startedAt;
+        private final long quietPeriod;
+        private final Set<E> events = new LinkedHashSet<E>();
+        private int dropped = 0;
+        private long lastEventAt;
+        private ScheduledFuture<?> future;
+
+        private Burst(K key, long startedAt, long quietPeriod) {
+            this.key = key;
+            this.startedAt = startedAt;
+            this.quietPeriod = quietPeriod;
+        }
+
+        private void add(E event) {
+            if (event == null || events.contains(event)) {
+                return;
+            }
+            if (events.size() < MAX_EVENTS) {
+                events.add(event);
+            } else {
+                dropped++;
+            }
+        }
+
+        /**
+         * Runs once the quiet period after the first event is over. Later events only move
+         * <code>lastEventAt</code> rather than rescheduling, so the burst checks whether to wait some more.
+         */
+        public void run() {
+            synchronized (bursts) {
+                if (bursts.get(key) != this) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                long fireAt = Math.min(lastEventAt + quietPeriod, startedAt + quietPeriod * MAX_DELAY_FACTOR);
+                if (fireAt > now) {
+                    future = scheduler.schedule(this, fireAt - now, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                bursts.remove(key);
+            }
+            try {
+                action.fire(key, new ArrayList<E>(events), dropped);
+            } catch (Throwable e) {
+                logger.error("Error while handling events of '" + key + "'", e);
+            }
+        }
+    }
+}
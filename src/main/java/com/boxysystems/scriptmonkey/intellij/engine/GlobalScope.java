@@ -0,0 +1,298 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the global scripts defined in one engine, kept for every script the engine runs afterwards.
+ * <p/>
+ * The global scripts are evaluated once, with a definition context whose <code>ENGINE_SCOPE</code>
+ * collects their functions and variables. Once {@link #seal() sealed}, those definitions become the
+ * read-only <code>GLOBAL_SCOPE</code> of every context created by {@link #createContext(Bindings)}, and
+ * assignments to a global name from a script shadow it in the script's own <code>ENGINE_SCOPE</code>
+ * instead.
+ * <p/>
+ * Functions remember the scope they were defined in, so a global function looking up a free variable
+ * such as <code>window</code> or <code>engine</code> goes through the definition context. After sealing,
+ * that context reads the variables of the script run {@link #enter(ScriptContext) entered} on the current
+ * thread first, and writes them there, so global functions see the variables of the script calling them,
+ * and several scripts can run on one engine at the same time.
+ * <p/>
+ * Outside of a run, global functions only see the global definitions, and setting a variable fails: the
+ * engine's context may belong to another session by then. Callbacks that run on other threads later, such as
+ * timer tasks, are {@link #bindToCurrentRun(Runnable) bound} to the run they were created in instead, or
+ * enter the {@link #getCurrentRun() run} they were created in themselves.
+ * <p/>
+ * Sealing also freezes the definitions into an immutable snapshot, so looking them up takes no lock.
+ */
+public class GlobalScope {
+
+    private final ScriptEngine engine;
+    private final Map<String, Object> definitionMap = Collections.synchronizedMap(new HashMap<String, Object>());
+    private final Bindings definitions = new SimpleBindings(definitionMap);
+    private volatile Map<String, Object> frozenDefinitions = Collections.unmodifiableMap(definitions);
+    private volatile Bindings sealedDefinitions = new SimpleBindings(frozenDefinitions);
+    private final DefinitionContext definitionContext = new DefinitionContext();
+    private final Map<String, Object> modules = new HashMap<String, Object>();
+    private final ThreadLocal<ScriptContext> runningContext = new ThreadLocal<ScriptContext>();
+    private static final ThreadLocal<GlobalScope> enteredScope = new ThreadLocal<GlobalScope>();
+    private volatile boolean sealed = false;
+
+    public GlobalScope(ScriptEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * @return the context to evaluate the global scripts with
+     */
+    public ScriptContext getDefinitionContext() {
+        return definitionContext;
+    }
+
+    public void seal() {
+        synchronized (definitionMap) {
+            frozenDefinitions = Collections.unmodifiableMap(new HashMap<String, Object>(definitionMap));
+        }
+        sealedDefinitions = new SimpleBindings(frozenDefinitions);
+        sealed = true;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * @return the names and values the global scripts defined, which can't be modified
+     */
+    public Bindings getDefinitions() {
+        return sealedDefinitions;
+    }
+
+    /**
+     * @return the modules {@link ModuleLoader loaded} into the engine, by path; callers synchronize on it
+     */
+    public Map<String, Object> getModules() {
+        return modules;
+    }
+
+    /**
+     * @return a context for running a script, with the given bindings layered over the global definitions
+     */
+    public ScriptContext createContext(Bindings engineBindings) {
+        ScriptContext context = new LayeredScriptContext();
+        context.setBindings(engineBindings, ScriptContext.ENGINE_SCOPE);
+        context.setBindings(sealedDefinitions, ScriptContext.GLOBAL_SCOPE);
+        return context;
+    }
+
+    /**
+     * Makes global functions called from the current thread use the given context, until
+     * {@link #exit(Entry)} is called.
+     *
+     * @return what was entered before, to pass to {@link #exit(Entry)}
+     */
+    public Entry enter(ScriptContext context) {
+        Entry previous = new Entry(enteredScope.get(), runningContext.get());
+        runningContext.set(context);
+        enteredScope.set(this);
+        return previous;
+    }
+
+    public void exit(Entry previous) {
+        if (previous.context != null) {
+            runningContext.set(previous.context);
+        } else {
+            runningContext.remove();
+        }
+        if (previous.scope != null) {
+            enteredScope.set(previous.scope);
+        } else {
+            enteredScope.remove();
+        }
+    }
+
+    /**
+     * Wraps a callback a script hands over to another thread, so that it runs with the context of the
+     * script run that is entered on the current thread, if any.
+     */
+    public static Runnable bindToCurrentRun(final Runnable callback) {
+        final Run run = getCurrentRun();
+        if (run == null) {
+            return callback;
+        }
+        return new Runnable() {
+            public void run() {
+                run.execute(callback);
+            }
+        };
+    }
+
+    /**
+     * @return the script run entered on the current thread, to enter again on other threads, or null outside of a run
+     */
+    public static Run getCurrentRun() {
+        GlobalScope scope = enteredScope.get();
+        ScriptContext context = scope != null ? scope.runningContext.get() : null;
+        return context != null ? new Run(scope, context) : null;
+    }
+
+    private ScriptContext getCurrentContext() {
+        ScriptContext context = runningContext.get();
+        return sealed && context != definitionContext ? context : null;
+    }
+
+    /**
+     * A script run that callbacks it created enter again when other threads call them.
+     */
+    public static class Run {
+        private final GlobalScope scope;
+        private final ScriptContext context;
+
+        private Run(GlobalScope scope, ScriptContext context) {
+            this.scope = scope;
+            this.context = context;
+        }
+
+        /**
+         * Runs the callback on the current thread, with the context of the run.
+         */
+        public void execute(Runnable callback) {
+            Entry previous = scope.enter(context);
+            try {
+                callback.run();
+            } finally {
+                scope.exit(previous);
+            }
+        }
+    }
+
+    /**
+     * What was entered on a thread before a run, to go back to once it is over.
+     */
+    public static class Entry {
+        private final GlobalScope scope;
+        private final ScriptContext context;
+
+        private Entry(GlobalScope scope, ScriptContext context) {
+            this.scope = scope;
+            this.context = context;
+        }
+    }
+
+    /**
+     * Context whose global scope can't be written to, so that assignments land in the engine scope.
+     */
+    private static class LayeredScriptContext extends SimpleScriptContext {
+
+        public void setAttribute(String name, Object value, int scope) {
+            super.setAttribute(name, value, scope == GLOBAL_SCOPE ? ENGINE_SCOPE : scope);
+        }
+
+        public Object removeAttribute(String name, int scope) {
+            return super.removeAttribute(name, scope == GLOBAL_SCOPE ? ENGINE_SCOPE : scope);
+        }
+    }
+
+    /**
+     * Context the global scripts are evaluated with, and which global functions keep using afterwards.
+     */
+    private class DefinitionContext extends SimpleScriptContext {
+
+        private DefinitionContext() {
+            setBindings(new DefinitionBindings(), ENGINE_SCOPE);
+        }
+
+        public Writer getWriter() {
+            ScriptContext context = getCurrentContext();
+            return context != null ? context.getWriter() : super.getWriter();
+        }
+
+        public Writer getErrorWriter() {
+            ScriptContext context = getCurrentContext();
+            return context != null ? context.getErrorWriter() : super.getErrorWriter();
+        }
+
+        public Reader getReader() {
+            ScriptContext context = getCurrentContext();
+            return context != null ? context.getReader() : super.getReader();
+        }
+    }
+
+    /**
+     * Reads the variables of the entered run before the global definitions. Writes go to the definitions
+     * until the scope is sealed, to the entered run afterwards, and fail outside of a run.
+     */
+    private class DefinitionBindings extends AbstractMap<String, Object> implements Bindings {
+
+        private Bindings getCurrentBindings() {
+            ScriptContext context = getCurrentContext();
+            return context != null ? context.getBindings(ScriptContext.ENGINE_SCOPE) : null;
+        }
+
+        public Object put(String name, Object value) {
+            Bindings current = getCurrentBindings();
+            if (current != null) {
+                return current.put(name, value);
+            }
+            checkNotSealed(name);
+            return definitions.put(name, value);
+        }
+
+        public void putAll(Map<? extends String, ? extends Object> toMerge) {
+            for (Map.Entry<? extends String, ? extends Object> entry : toMerge.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        public boolean containsKey(Object key) {
+            Bindings current = getCurrentBindings();
+            return (current != null && current.containsKey(key)) || frozenDefinitions.containsKey(key);
+        }
+
+        public Object get(Object key) {
+            Bindings current = getCurrentBindings();
+            if (current != null && current.containsKey(key)) {
+                return current.get(key);
+            }
+            return frozenDefinitions.get(key);
+        }
+
+        public Object remove(Object key) {
+            Bindings current = getCurrentBindings();
+            if (current != null) {
+                return current.remove(key);
+            }
+            checkNotSealed(key);
+            return definitions.remove(key);
+        }
+
+        private void checkNotSealed(Object name) {
+            if (sealed) {
+                throw new IllegalStateException("Cannot set '" + name + "' outside of a script run, "
+                        + "callbacks run by other threads don't see the variables of the script that created them");
+            }
+        }
+
+        public Set<Entry<String, Object>> entrySet() {
+            Map<String, Object> merged;
+            synchronized (definitionMap) {
+                merged = new HashMap<String, Object>(frozenDefinitions);
+            }
+            Bindings current = getCurrentBindings();
+            if (current != null) {
+                merged.putAll(current);
+            }
+            return Collections.unmodifiableMap(merged).entrySet();
+        }
+    }
+}
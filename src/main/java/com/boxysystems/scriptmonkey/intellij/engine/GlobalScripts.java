@@ -0,0 +1,89 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The folder of global scripts (<code>init.js</code>, <code>gui.js</code>, ...) every engine of a
+ * {@link ScriptEnginePool} starts with.
+ * <p/>
+ * The folder is fingerprinted by the names, sizes and modification times of its files, and the version
+ * goes up whenever {@link #refresh()} finds a different fingerprint, which tells the pool that the
+ * engines it created before are out of date.
+ */
+public class GlobalScripts {
+
+    private final File folder;
+    private String fingerprint;
+    private volatile int version = 0;
+
+    public GlobalScripts(File folder) {
+        this.folder = folder;
+        this.fingerprint = fingerprint(folder);
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if files were added, changed or removed since the last refresh
+     */
+    public synchronized boolean refresh() {
+        String current = fingerprint(folder);
+        if (current.equals(fingerprint)) {
+            return false;
+        }
+        fingerprint = current;
+        version++;
+        return true;
+    }
+
+    /**
+     * @return the scripts with one of the given extensions, in alphabetical order
+     */
+    public List<File> getScripts(List<String> extensions) {
+        List<File> scripts = new ArrayList<File>();
+        for (File file : listFiles(folder)) {
+            String fileName = file.getName().toLowerCase();
+            for (String extension : extensions) {
+                if (fileName.endsWith("." + extension.toLowerCase())) {
+                    scripts.add(file);
+                    break;
+                }
+            }
+        }
+        return scripts;
+    }
+
+    private static String fingerprint(File folder) {
+        StringBuilder fingerprint = new StringBuilder();
+        for (File file : listFiles(folder)) {
+            fingerprint.append(file.getName()).append(':')
+                    .append(file.length()).append(':')
+                    .append(file.lastModified()).append(';');
+        }
+        return fingerprint.toString();
+    }
+
+    private static List<File> listFiles(File folder) {
+        File[] files = folder != null ? folder.listFiles() : null;
+        if (files == null) {
+            return new ArrayList<File>();
+        }
+        Arrays.sort(files);
+        List<File> result = new ArrayList<File>(files.length);
+        for (File file : files) {
+            if (file.isFile()) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+/**
+ * Histogram of non-negative values with power of two buckets: bucket <code>i</code> counts the values
+ * from <code>2^(i-1)</code> up to <code>2^i - 1</code>, and bucket 0 counts the zeros. That keeps it small and
+ * cheap to record into whatever the range of the values, at the price of percentiles that are only
+ * accurate to a factor of two. The exact count, sum, minimum and maximum are kept alongside.
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets[BUCKETS - Long.numberOfLeadingZeros(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getSum() {
+        return sum;
+    }
+
+    public synchronized long getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * @param fraction between 0 and 1, for example 0.95 for the 95th percentile
+     * @return the upper bound of the bucket holding the percentile, or the maximum if that is lower
+     */
+    public synchronized long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, fraction)) * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                long upperBound = i == 0 ? 0 : i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+                return Math.max(getMin(), Math.min(max, upperBound));
+            }
+        }
+        return max;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public synchronized String toString() {
+        return "count: " + count + ", mean: " + Math.round(getMean()) + ", p50: " + getPercentile(0.5)
+                + ", p95: " + getPercentile(0.95) + ", max: " + max;
+    }
+}
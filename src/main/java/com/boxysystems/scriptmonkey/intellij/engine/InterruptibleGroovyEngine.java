@@ -0,0 +1,24 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.transform.ThreadInterrupt;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
+
+import javax.script.ScriptEngine;
+
+/**
+ * Creates Groovy engines whose scripts are compiled with <code>@ThreadInterrupt</code>, so that loops
+ * and method calls check the interrupt flag and a {@link ScriptWatchdog} can stop them cooperatively.
+ * <p/>
+ * Kept apart from {@link ScriptEnginePool} so that the pool still works when Groovy isn't available.
+ */
+class InterruptibleGroovyEngine {
+
+    static ScriptEngine create(ClassLoader classLoader) {
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class));
+        return new GroovyScriptEngineImpl(new GroovyClassLoader(classLoader, configuration));
+    }
+}
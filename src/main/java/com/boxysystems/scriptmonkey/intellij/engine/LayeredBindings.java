@@ -0,0 +1,192 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import javax.script.Bindings;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The <code>ENGINE_SCOPE</code> of a script context, made of two layers.
+ * <p/>
+ * The shared layer holds what the plugin puts at the disposal of scripts, such as <code>application</code>,
+ * <code>project</code> or <code>window</code>. It is an immutable map, replaced as a whole when a variable
+ * is {@link #putShared added}, so reading it takes no lock and contexts can share it.
+ * <p/>
+ * The own layer holds what the script itself defines. Names of the shared layer can be assigned or
+ * removed there, which hides them from this context only. The own layer doesn't lock on reads either,
+ * and stays safe to use from the callbacks a script leaves behind on other threads.
+ */
+public class LayeredBindings extends AbstractMap<String, Object> implements Bindings {
+
+    private static final Object NULL = new Object();
+    private static final Object REMOVED = new Object();
+    private static final String[] SCRIPT_PACKAGES = {"org.mozilla.javascript.", "sun.org.mozilla.javascript.",
+            "jdk.nashorn.", "groovy.lang.", "org.codehaus.groovy."};
+
+    private volatile Map<String, Object> shared;
+    private final ConcurrentHashMap<String, Object> own = new ConcurrentHashMap<String, Object>(16, 0.75f, 1);
+
+    public LayeredBindings() {
+        this(Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * @param shared the shared layer, which must not be modified afterwards
+     */
+    public LayeredBindings(Map<String, Object> shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * @return an immutable snapshot of the shared layer, to start other bindings from
+     */
+    public Map<String, Object> getShared() {
+        return shared;
+    }
+
+    /**
+     * Adds a variable to the shared layer, by replacing it with a copy. Meant for the few variables set up
+     * before a script runs; what the script defines goes to the own layer through {@link #put}.
+     */
+    public synchronized void putShared(String name, Object value) {
+        checkName(name);
+        Map<String, Object> current = shared;
+        if (current.containsKey(name) && current.get(name) == value) {
+            return;
+        }
+        Map<String, Object> copy = new HashMap<String, Object>(current);
+        copy.put(name, value);
+        shared = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Copies the plain values defined in other bindings into these, the way a forked shell session starts out
+     * with the variables of the session it was forked from. Functions, closures and other objects of the
+     * script engine are left out: they keep pointing at the scope of the source, so a function copied into a
+     * fork would still read and write the variables of the session it came from. Other values are shared,
+     * not copied.
+     *
+     * @return the names of the variables that were left out
+     */
+    public List<String> copyPlainValuesFrom(LayeredBindings source) {
+        List<String> skipped = new ArrayList<String>();
+        for (Map.Entry<String, Object> entry : source.own.entrySet()) {
+            Object value = entry.getValue();
+            if (isPlainValue(value)) {
+                own.put(entry.getKey(), value instanceof CharSequence ? value.toString() : value);
+            } else {
+                skipped.add(entry.getKey());
+            }
+        }
+        Collections.sort(skipped);
+        return skipped;
+    }
+
+    /**
+     * @return whether the value isn't an object of a script engine, which could close over a scope
+     */
+    static boolean isPlainValue(Object value) {
+        if (value == NULL || value == REMOVED || value instanceof CharSequence || value instanceof Number
+                || value instanceof Boolean || value instanceof Character) {
+            return true;
+        }
+        for (Class<?> type = value.getClass(); type != null; type = type.getSuperclass()) {
+            for (String scriptPackage : SCRIPT_PACKAGES) {
+                if (type.getName().startsWith(scriptPackage)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public Object put(String name, Object value) {
+        checkName(name);
+        return unmask(own.put(name, value != null ? value : NULL), name);
+    }
+
+    public void putAll(Map<? extends String, ? extends Object> toMerge) {
+        for (Map.Entry<? extends String, ? extends Object> entry : toMerge.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public Object get(Object key) {
+        Object value = own.get(checkKey(key));
+        if (value != null) {
+            return value == NULL || value == REMOVED ? null : value;
+        }
+        return shared.get(key);
+    }
+
+    public boolean containsKey(Object key) {
+        Object value = own.get(checkKey(key));
+        if (value != null) {
+            return value != REMOVED;
+        }
+        return shared.containsKey(key);
+    }
+
+    public Object remove(Object key) {
+        String name = (String) checkKey(key);
+        Object previous = shared.containsKey(name) ? own.put(name, REMOVED) : own.remove(name);
+        return unmask(previous, name);
+    }
+
+    public void clear() {
+        own.clear();
+        for (String name : shared.keySet()) {
+            own.put(name, REMOVED);
+        }
+    }
+
+    /**
+     * @return a snapshot of both layers, which can't be modified
+     */
+    public Set<Entry<String, Object>> entrySet() {
+        Map<String, Object> merged = new HashMap<String, Object>(shared);
+        for (Map.Entry<String, Object> entry : own.entrySet()) {
+            Object value = entry.getValue();
+            if (value == REMOVED) {
+                merged.remove(entry.getKey());
+            } else {
+                merged.put(entry.getKey(), value == NULL ? null : value);
+            }
+        }
+        return Collections.unmodifiableMap(merged).entrySet();
+    }
+
+    private Object unmask(Object previous, String name) {
+        if (previous == null) {
+            return shared.get(name);
+        }
+        return previous == NULL || previous == REMOVED ? null : previous;
+    }
+
+    private static void checkName(String name) {
+        if (name == null) {
+            throw new NullPointerException("key can not be null");
+        }
+        if (name.length() == 0) {
+            throw new IllegalArgumentException("key can not be empty");
+        }
+    }
+
+    private static Object checkKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException("key can not be null");
+        }
+        if (!(key instanceof String)) {
+            throw new ClassCastException("key should be a String");
+        }
+        if (((String) key).length() == 0) {
+            throw new IllegalArgumentException("key can not be empty");
+        }
+        return key;
+    }
+}
@@ -0,0 +1,134 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import org.apache.log4j.Logger;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Loads helper libraries from the <code>js/lib</code> folder the first time a script
+ * <code>require</code>s them, rather than evaluating them with the global scripts of every engine.
+ * <p/>
+ * A module is compiled through the pool's {@link CompiledScriptCache} and evaluated once per engine, in the
+ * definition context of the engine's {@link GlobalScope}, like the global scripts. Its functions therefore see
+ * the global definitions and the variables of the script calling them, just like global functions, and not
+ * those of the script that happened to require the module first. Variables a module sets outside of its
+ * functions end up in the run that first required it, so modules keep their state in their exports.
+ * What a module evaluates to is kept with the engine and returned by every later <code>require</code>,
+ * until the module file changes.
+ * <p/>
+ * JavaScript modules get their own function scope and export through <code>module.exports</code>
+ * or <code>exports</code>, like CommonJS modules. Modules in other languages export the value their
+ * last statement evaluates to.
+ */
+public class ModuleLoader {
+
+    private static final Logger logger = Logger.getLogger(ModuleLoader.class);
+
+    private static final String JS_MODULE_HEADER = "(function() { var module = { exports: {} }, exports = module.exports; ";
+    private static final String JS_MODULE_FOOTER = "\nreturn module.exports; })();";
+
+    private static final Object LOADING = new Object();
+
+    private final ScriptEnginePool enginePool;
+    private volatile File folder;
+
+    public ModuleLoader(ScriptEnginePool enginePool) {
+        this.enginePool = enginePool;
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    public void setFolder(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * @param engine the engine of the script requiring the module, which must come from the pool
+     * @param name   the module file name, relative to the modules folder and without extension
+     * @return the exports of the module
+     */
+    public Object require(ScriptEngine engine, String name) throws ScriptException {
+        GlobalScope globalScope = enginePool.getGlobalScope(engine);
+        if (globalScope == null) {
+            throw new ScriptException("Modules can only be required by pooled engines");
+        }
+        File moduleFile = resolve(engine, name);
+        String key = moduleFile.getPath();
+        Map<String, Object> modules = globalScope.getModules();
+        synchronized (modules) {
+            Object loaded = modules.get(key);
+            if (loaded == LOADING) {
+                throw new ScriptException("Module '" + name + "' requires itself");
+            }
+            if (loaded != null && ((LoadedModule) loaded).lastModified == moduleFile.lastModified()) {
+                return ((LoadedModule) loaded).exports;
+            }
+            modules.put(key, LOADING);
+            boolean success = false;
+            try {
+                long lastModified = moduleFile.lastModified();
+                Object exports = evaluate(engine, moduleFile, globalScope.getDefinitionContext());
+                modules.put(key, new LoadedModule(lastModified, exports));
+                success = true;
+                return exports;
+            } finally {
+                if (!success) {
+                    modules.remove(key);
+                }
+            }
+        }
+    }
+
+    private Object evaluate(ScriptEngine engine, File moduleFile, ScriptContext context) throws ScriptException {
+        long start = System.currentTimeMillis();
+        String content;
+        try {
+            content = ScriptEnginePool.readScript(moduleFile);
+        } catch (IOException e) {
+            throw new ScriptException("Unable to read module '" + moduleFile + "': " + e.getMessage());
+        }
+        if (isJavaScript(engine)) {
+            content = JS_MODULE_HEADER + content + JS_MODULE_FOOTER;
+        }
+        Object exports = enginePool.getCompiledScriptCache().eval(engine, moduleFile, content, context);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Loaded module '" + moduleFile + "' in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        return exports;
+    }
+
+    private File resolve(ScriptEngine engine, String name) throws ScriptException {
+        File folder = this.folder;
+        if (folder == null || name == null || name.length() == 0) {
+            throw new ScriptException("Module '" + name + "' not found");
+        }
+        for (String extension : engine.getFactory().getExtensions()) {
+            File moduleFile = new File(folder, name.endsWith("." + extension) ? name : name + "." + extension);
+            if (moduleFile.isFile()) {
+                return moduleFile;
+            }
+        }
+        throw new ScriptException("Module '" + name + "' not found in '" + folder + "'");
+    }
+
+    private static boolean isJavaScript(ScriptEngine engine) {
+        return engine.getFactory().getExtensions().contains("js");
+    }
+
+    private static class LoadedModule {
+        private final long lastModified;
+        private final Object exports;
+
+        private LoadedModule(long lastModified, Object exports) {
+            this.lastModified = lastModified;
+            this.exports = exports;
+        }
+    }
+}
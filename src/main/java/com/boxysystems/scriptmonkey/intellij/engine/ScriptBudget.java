@@ -0,0 +1,61 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+/**
+ * Wall clock and CPU time a script may use before the {@link ScriptWatchdog} stops it.
+ * A limit of zero or less means no limit.
+ */
+public class ScriptBudget {
+
+    public static final ScriptBudget UNLIMITED = new ScriptBudget(0, 0);
+
+    private final long wallClockMillis;
+    private final long cpuMillis;
+
+    public ScriptBudget(long wallClockMillis, long cpuMillis) {
+        this.wallClockMillis = Math.max(0, wallClockMillis);
+        this.cpuMillis = Math.max(0, cpuMillis);
+    }
+
+    /**
+     * @param wallClockSeconds seconds the script may run, 0 for no limit
+     * @param cpuSeconds       seconds of CPU time the script may use, 0 for no limit
+     */
+    public static ScriptBudget ofSeconds(int wallClockSeconds, int cpuSeconds) {
+        if (wallClockSeconds <= 0 && cpuSeconds <= 0) {
+            return UNLIMITED;
+        }
+        return new ScriptBudget(wallClockSeconds * 1000L, cpuSeconds * 1000L);
+    }
+
+    public long getWallClockMillis() {
+        return wallClockMillis;
+    }
+
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    public boolean isLimited() {
+        return wallClockMillis > 0 || cpuMillis > 0;
+    }
+
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ScriptBudget that = (ScriptBudget) o;
+        return wallClockMillis == that.wallClockMillis && cpuMillis == that.cpuMillis;
+    }
+
+    public int hashCode() {
+        return 31 * (int) (wallClockMillis ^ (wallClockMillis >>> 32)) + (int) (cpuMillis ^ (cpuMillis >>> 32));
+    }
+
+    public String toString() {
+        return "wall clock: " + (wallClockMillis > 0 ? wallClockMillis + " ms" : "unlimited")
+                + ", cpu: " + (cpuMillis > 0 ? cpuMillis + " ms" : "unlimited");
+    }
+}
@@ -0,0 +1,10 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+/**
+ * Told how a script submitted to a {@link ScriptExecutor} ended. Called on the thread that ran the script.
+ */
+public interface ScriptCallback {
+    void success(Object result);
+
+    void failure(Throwable throwable);
+}
@@ -0,0 +1,497 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import org.apache.log4j.Logger;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.SimpleScriptContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps warmed up script engines around so that running a script doesn't have to pay for a
+ * {@link ScriptEngineManager} lookup and a brand new Rhino/Groovy engine every time.
+ * <p/>
+ * Engines are handed out with the pool's global variables already installed in the shared layer of
+ * their {@link LayeredBindings}. When an engine is released, it gets a fresh {@link ScriptContext};
+ * the old context is left untouched so that callbacks and threads started by the previous
+ * script keep seeing the variables they were created with. A script that shouldn't leave anything
+ * behind in the engine's context runs with a {@link #createRunContext(ScriptEngine) context of its own}.
+ * <p/>
+ * The {@link GlobalScripts global scripts} are evaluated once, when an engine is created, and what
+ * they define stays available to every script the engine runs through its {@link GlobalScope}.
+ * Groovy engines keep the closures scripts define as functions outside of the context; those are put
+ * back to what the global scripts left when an engine is released.
+ * Engines created before a global script changed are replaced by new ones. Helper libraries that not
+ * every script needs are loaded on demand instead, by the pool's {@link ModuleLoader}.
+ */
+public class ScriptEnginePool {
+
+    private static final Logger logger = Logger.getLogger(ScriptEnginePool.class);
+
+    public static final String JAVASCRIPT = "JavaScript";
+    public static final String GROOVY = "groovy";
+
+    public static final int DEFAULT_SIZE = 2;
+    public static final long DEFAULT_IDLE_TIMEOUT = 10 * 60 * 1000L;
+
+    private final String name;
+    private final Map<String, Object> globals = new ConcurrentHashMap<String, Object>();
+    private final Map<String, LinkedList<IdleEngine>> idleEngines = new HashMap<String, LinkedList<IdleEngine>>();
+    private final Map<ScriptEngine, EngineInfo> engineInfos = Collections.synchronizedMap(new WeakHashMap<ScriptEngine, EngineInfo>());
+    private final CompiledScriptCache compiledScriptCache = new CompiledScriptCache();
+    private final ModuleLoader moduleLoader = new ModuleLoader(this);
+
+    private volatile ClassLoader classLoader;
+    private volatile ScriptEngineManager manager;
+    private volatile GlobalScripts globalScripts;
+    private volatile ScheduledFuture<?> evictionTimer;
+    private volatile int size = DEFAULT_SIZE;
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile boolean disposed = false;
+
+    /**
+     * @param extension a script file extension, such as "js" or "groovy"
+     * @return the name to {@link #acquire(String) acquire} an engine for the extension with
+     */
+    public static String getEngineName(String extension) {
+        if ("js".equalsIgnoreCase(extension)) {
+            return JAVASCRIPT;
+        }
+        if ("groovy".equalsIgnoreCase(extension)) {
+            return GROOVY;
+        }
+        return extension;
+    }
+
+    public ScriptEnginePool(String name, ClassLoader classLoader) {
+        this.name = name;
+        this.classLoader = CachingClassLoader.getShared(classLoader);
+    }
+
+    /**
+     * @param size        maximum number of idle engines kept per language
+     * @param idleTimeout milliseconds an idle engine is kept before it gets evicted
+     */
+    public void configure(int size, long idleTimeout) {
+        this.size = Math.max(0, size);
+        this.idleTimeout = idleTimeout;
+        evictIdleEngines();
+    }
+
+    /**
+     * Periodically evicts idle engines, so that they don't linger when no scripts are run at all.
+     */
+    public void scheduleIdleEviction(ScriptExecutionScheduler scheduler) {
+        evictionTimer = scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictIdleEngines();
+            }
+        }, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @return the class loader engines are created with, which caches class lookups for all engines
+     *         sharing the same underlying class loader
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * Switches to a new class loader. Idle engines and compiled scripts are dropped, and engines that are
+     * in use when this is called are discarded once they are released.
+     */
+    public void setClassLoader(ClassLoader classLoader) {
+        synchronized (this) {
+            this.classLoader = CachingClassLoader.getShared(classLoader);
+            this.manager = null;
+        }
+        forgetIdleEngines();
+        compiledScriptCache.clear();
+        logger.info("Switched " + name + " to class loader " + classLoader);
+    }
+
+    /**
+     * Sets the folder of the global scripts new engines evaluate before running anything else.
+     * Idle engines that were created with other global scripts are dropped.
+     */
+    public void setGlobalScriptsFolder(File folder) {
+        synchronized (this) {
+            GlobalScripts current = globalScripts;
+            if (current != null ? current.getFolder().equals(folder) : folder == null) {
+                return;
+            }
+            globalScripts = folder != null ? new GlobalScripts(folder) : null;
+        }
+        forgetIdleEngines();
+    }
+
+    public GlobalScripts getGlobalScripts() {
+        return globalScripts;
+    }
+
+    public CompiledScriptCache getCompiledScriptCache() {
+        return compiledScriptCache;
+    }
+
+    /**
+     * @return the loader behind the <code>require</code> function, available to scripts as <code>modules</code>
+     */
+    public ModuleLoader getModuleLoader() {
+        return moduleLoader;
+    }
+
+    public void setGlobalVariable(String name, Object value) {
+        if (name != null && value != null) {
+            globals.put(name, value);
+        }
+    }
+
+    /**
+     * Fills the pool up to its configured size for the given engine names.
+     * This is slow, so it is meant to be called from a background thread.
+     */
+    public void warmUp(String... engineNames) {
+        refreshGlobalScripts();
+        for (String engineName : engineNames) {
+            int missing;
+            synchronized (idleEngines) {
+                missing = size - getIdle(engineName).size();
+            }
+            for (int i = 0; i < missing && !disposed; i++) {
+                try {
+                    release(createEngine(engineName));
+                } catch (RuntimeException e) {
+                    logger.error("Error warming up '" + engineName + "' engine for " + name, e);
+                    break;
+                }
+            }
+        }
+    }
+
+    public ScriptEngine acquire(String engineName) {
+        evictIdleEngines();
+        refreshGlobalScripts();
+        synchronized (idleEngines) {
+            IdleEngine idleEngine = getIdle(engineName).pollFirst();
+            if (idleEngine != null) {
+                return idleEngine.engine;
+            }
+        }
+        return createEngine(engineName);
+    }
+
+    public void release(ScriptEngine engine) {
+        if (engine == null) {
+            return;
+        }
+        EngineInfo engineInfo = engineInfos.get(engine);
+        if (engineInfo == null) {
+            return;
+        }
+        if (isOutdated(engineInfo)) {
+            forget(engine);
+            return;
+        }
+        resetContext(engine);
+        synchronized (idleEngines) {
+            LinkedList<IdleEngine> idle = getIdle(engineInfo.engineName);
+            if (!disposed && idle.size() < size) {
+                idle.addFirst(new IdleEngine(engine, System.currentTimeMillis()));
+                return;
+            }
+        }
+        forget(engine);
+    }
+
+    /**
+     * Drops an engine that must not be used again, for example because a script running in it was stopped.
+     */
+    public void discard(ScriptEngine engine) {
+        if (engine != null && engineInfos.containsKey(engine)) {
+            forget(engine);
+            logger.info("Discarded '" + engine.getFactory().getEngineName() + "' engine of " + name);
+        }
+    }
+
+    public void evictIdleEngines() {
+        long now = System.currentTimeMillis();
+        List<ScriptEngine> evicted = new ArrayList<ScriptEngine>();
+        synchronized (idleEngines) {
+            for (LinkedList<IdleEngine> idle : idleEngines.values()) {
+                for (Iterator<IdleEngine> iterator = idle.iterator(); iterator.hasNext();) {
+                    IdleEngine idleEngine = iterator.next();
+                    if (idle.size() > size || now - idleEngine.idleSince > idleTimeout) {
+                        iterator.remove();
+                        evicted.add(idleEngine.engine);
+                    }
+                }
+            }
+        }
+        for (ScriptEngine engine : evicted) {
+            forget(engine);
+        }
+        if (!evicted.isEmpty()) {
+            logger.debug("Evicted " + evicted.size() + " idle script engine(s) from " + name);
+        }
+    }
+
+    public void dispose() {
+        disposed = true;
+        if (evictionTimer != null) {
+            evictionTimer.cancel(false);
+        }
+        synchronized (idleEngines) {
+            idleEngines.clear();
+        }
+        engineInfos.clear();
+        compiledScriptCache.clear();
+    }
+
+    /**
+     * @return a context for one run of a script on an engine of this pool, which is thrown away afterwards:
+     *         the script sees the shared variables of the engine's context and the global definitions, but
+     *         what it defines stays in its own context
+     */
+    public ScriptContext createRunContext(ScriptEngine engine) {
+        ScriptContext engineContext = engine.getContext();
+        Bindings engineBindings = engineContext.getBindings(ScriptContext.ENGINE_SCOPE);
+        Bindings bindings = engineBindings instanceof LayeredBindings
+                ? new LayeredBindings(((LayeredBindings) engineBindings).getShared())
+                : new LayeredBindings(Collections.unmodifiableMap(new HashMap<String, Object>(engineBindings)));
+        GlobalScope globalScope = getGlobalScope(engine);
+        ScriptContext context;
+        if (globalScope != null) {
+            context = globalScope.createContext(bindings);
+        } else {
+            context = new SimpleScriptContext();
+            context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+            context.setBindings(engineContext.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+        }
+        context.setWriter(engineContext.getWriter());
+        context.setErrorWriter(engineContext.getErrorWriter());
+        context.setReader(engineContext.getReader());
+        return context;
+    }
+
+    /**
+     * @return the global definitions of an engine created by this pool, or null for other engines
+     */
+    public GlobalScope getGlobalScope(ScriptEngine engine) {
+        EngineInfo engineInfo = engineInfos.get(engine);
+        return engineInfo != null ? engineInfo.globalScope : null;
+    }
+
+    private void forget(ScriptEngine engine) {
+        engineInfos.remove(engine);
+        compiledScriptCache.forget(engine);
+    }
+
+    private void forgetIdleEngines() {
+        synchronized (idleEngines) {
+            for (LinkedList<IdleEngine> idle : idleEngines.values()) {
+                for (IdleEngine idleEngine : idle) {
+                    forget(idleEngine.engine);
+                }
+            }
+            idleEngines.clear();
+        }
+    }
+
+    private void refreshGlobalScripts() {
+        GlobalScripts globalScripts = this.globalScripts;
+        if (globalScripts != null && globalScripts.refresh()) {
+            logger.info("Global scripts in '" + globalScripts.getFolder() + "' changed, dropping the idle engines of " + name);
+            forgetIdleEngines();
+        }
+    }
+
+    private boolean isOutdated(EngineInfo engineInfo) {
+        GlobalScripts globalScripts = this.globalScripts;
+        return engineInfo.classLoader != classLoader
+                || engineInfo.globalScripts != globalScripts
+                || (globalScripts != null && engineInfo.globalScriptsVersion != globalScripts.getVersion());
+    }
+
+    private LinkedList<IdleEngine> getIdle(String engineName) {
+        String key = engineName.toLowerCase();
+        LinkedList<IdleEngine> idle = idleEngines.get(key);
+        if (idle == null) {
+            idle = new LinkedList<IdleEngine>();
+            idleEngines.put(key, idle);
+        }
+        return idle;
+    }
+
+    private ScriptEngine createEngine(String engineName) {
+        long start = System.currentTimeMillis();
+        ClassLoader classLoader = this.classLoader;
+        Thread currentThread = Thread.currentThread();
+        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(classLoader);
+        try {
+            ScriptEngine engine = newEngine(engineName, classLoader);
+            if (engine == null) {
+                throw new RuntimeException("cannot load " + engineName + " engine");
+            }
+            GlobalScripts globalScripts = this.globalScripts;
+            EngineInfo engineInfo = new EngineInfo(engineName, classLoader, new GlobalScope(engine),
+                    globalScripts, globalScripts != null ? globalScripts.getVersion() : 0);
+            engineInfos.put(engine, engineInfo);
+            runGlobalScripts(engine, engineInfo);
+            resetContext(engine);
+            warmUpEngine(engine);
+            logger.info("Created '" + engineName + "' engine for " + name + " in " + (System.currentTimeMillis() - start) + " ms");
+            return engine;
+        } finally {
+            currentThread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private ScriptEngine newEngine(String engineName, ClassLoader classLoader) {
+        if (GROOVY.equalsIgnoreCase(engineName)) {
+            try {
+                return InterruptibleGroovyEngine.create(classLoader);
+            } catch (LinkageError e) {
+                logger.debug("Groovy engine can't be interrupted, falling back to the default one", e);
+            }
+        }
+        return getManager(classLoader).getEngineByName(engineName);
+    }
+
+    private void runGlobalScripts(ScriptEngine engine, EngineInfo engineInfo) {
+        if (engineInfo.globalScripts != null) {
+            ScriptContext definitionContext = engineInfo.globalScope.getDefinitionContext();
+            for (File scriptFile : engineInfo.globalScripts.getScripts(engine.getFactory().getExtensions())) {
+                try {
+                    compiledScriptCache.eval(engine, scriptFile, readScript(scriptFile), definitionContext);
+                } catch (Exception e) {
+                    logger.error("Error evaluating global script '" + scriptFile + "'", e);
+                }
+            }
+        }
+        engineInfo.globalScope.seal();
+        Map<String, Object> globalClosures = getGlobalClosures(engine);
+        if (globalClosures != null) {
+            engineInfo.definedClosures = new HashMap<String, Object>(globalClosures);
+        }
+    }
+
+    /**
+     * @return the map a Groovy engine keeps the closures defined by its scripts in, or null for other engines
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> getGlobalClosures(ScriptEngine engine) {
+        for (Class<?> engineClass = engine.getClass(); engineClass != null; engineClass = engineClass.getSuperclass()) {
+            try {
+                Field field = engineClass.getDeclaredField("globalClosures");
+                field.setAccessible(true);
+                Object globalClosures = field.get(engine);
+                return globalClosures instanceof Map ? (Map<String, Object>) globalClosures : null;
+            } catch (NoSuchFieldException e) {
+                // look in the super class
+            } catch (Exception e) {
+                logger.debug("Cannot access the global closures of " + engine.getClass().getName(), e);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    static String readScript(File scriptFile) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(scriptFile));
+        try {
+            StringBuilder content = new StringBuilder((int) scriptFile.length());
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                content.append(buffer, 0, read);
+            }
+            return content.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void warmUpEngine(ScriptEngine engine) {
+        try {
+            engine.eval("null");
+        } catch (Exception e) {
+            logger.debug("Warm up evaluation failed for " + engine.getFactory().getEngineName(), e);
+        }
+    }
+
+    private synchronized ScriptEngineManager getManager(ClassLoader classLoader) {
+        if (manager == null || classLoader != this.classLoader) {
+            ScriptEngineManager manager = new ScriptEngineManager(classLoader);
+            if (classLoader == this.classLoader) {
+                this.manager = manager;
+            }
+            return manager;
+        }
+        return manager;
+    }
+
+    private void resetContext(ScriptEngine engine) {
+        EngineInfo engineInfo = engineInfos.get(engine);
+        engine.setContext(engineInfo.globalScope.createContext(createEngineBindings(engine)));
+        if (engineInfo.definedClosures != null) {
+            Map<String, Object> globalClosures = getGlobalClosures(engine);
+            globalClosures.clear();
+            globalClosures.putAll(engineInfo.definedClosures);
+        }
+    }
+
+    private Bindings createEngineBindings(ScriptEngine engine) {
+        Map<String, Object> shared = new HashMap<String, Object>(globals);
+        shared.put("engine", engine);
+        shared.put("modules", moduleLoader);
+        return new LayeredBindings(Collections.unmodifiableMap(shared));
+    }
+
+    private static class EngineInfo {
+        private final String engineName;
+        private final ClassLoader classLoader;
+        private final GlobalScope globalScope;
+        private final GlobalScripts globalScripts;
+        private final int globalScriptsVersion;
+        private volatile Map<String, Object> definedClosures;
+
+        private EngineInfo(String engineName, ClassLoader classLoader, GlobalScope globalScope,
+                           GlobalScripts globalScripts, int globalScriptsVersion) {
+            this.engineName = engineName;
+            this.classLoader = classLoader;
+            this.globalScope = globalScope;
+            this.globalScripts = globalScripts;
+            this.globalScriptsVersion = globalScriptsVersion;
+        }
+    }
+
+    private static class IdleEngine {
+        private final ScriptEngine engine;
+        private final long idleSince;
+
+        private IdleEngine(ScriptEngine engine, long idleSince) {
+            this.engine = engine;
+            this.idleSince = idleSince;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import org.apache.log4j.Logger;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application wide, bounded pool of threads that runs every script.
+ * <p/>
+ * Waiting scripts are ordered by {@link Priority} first. Within the same priority, each owner
+ * (usually a project) gets its turn in a round robin fashion, so a project that queues dozens of
+ * plugin scripts at once doesn't hold back the scripts of another project.
+ * <p/>
+ * Priorities only order the queue, a running script is never put aside. So that a few plugin scripts
+ * that block or loop can't keep the user waiting, {@link Priority#INTERACTIVE} scripts may also run on
+ * a few threads of their own, whichever thread gets to them first.
+ */
+public class ScriptExecutionScheduler {
+
+    private static final Logger logger = Logger.getLogger(ScriptExecutionScheduler.class);
+
+    public static final int DEFAULT_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    public static final int RESERVED_THREADS = 2;
+
+    private static final Object APPLICATION_OWNER = new Object();
+
+    public enum Priority {
+        INTERACTIVE,
+        EDITOR,
+        LIFECYCLE
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor reserve;
+    private final ScheduledExecutorService timer;
+
+    private final Map<Object, Long> ownerTickets = Collections.synchronizedMap(new WeakHashMap<Object, Long>());
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile long virtualTime = 0;
+
+    public ScriptExecutionScheduler(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new NamedThreadFactory("ScriptMonkey script runner")) {
+            protected void beforeExecute(Thread t, Runnable r) {
+                super.beforeExecute(t, r);
+                virtualTime = ((PrioritizedTask<?>) r).ticket;
+            }
+        };
+        executor.allowCoreThreadTimeOut(true);
+        reserve = new ThreadPoolExecutor(RESERVED_THREADS, RESERVED_THREADS, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new NamedThreadFactory("ScriptMonkey interactive script runner"));
+        reserve.allowCoreThreadTimeOut(true);
+        timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ScriptMonkey timer"));
+    }
+
+    public void setThreads(int threads) {
+        threads = Math.max(1, threads);
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * An interactive task is queued on the shared threads and on the reserved ones, a task only runs once,
+     * on the first thread that takes it.
+     */
+    public <T> Future<T> submit(Callable<T> task, Priority priority, Object owner) {
+        PrioritizedTask<T> prioritizedTask = new PrioritizedTask<T>(task, priority, nextTicket(owner), sequence.incrementAndGet());
+        executor.execute(prioritizedTask);
+        if (priority == Priority.INTERACTIVE) {
+            reserve.execute(prioritizedTask);
+        }
+        return prioritizedTask;
+    }
+
+    public Future<?> submit(Runnable task, Priority priority, Object owner) {
+        return submit(Executors.callable(task), priority, owner);
+    }
+
+    /**
+     * Runs a short, non blocking task periodically on the scheduler's timer thread.
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay, TimeUnit unit) {
+        return timer.scheduleWithFixedDelay(task, delay, delay, unit);
+    }
+
+    /**
+     * Runs a short, non blocking task periodically on the scheduler's timer thread, at a fixed rate.
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period, TimeUnit unit) {
+        return timer.scheduleAtFixedRate(task, period, period, unit);
+    }
+
+    /**
+     * Runs a short, non blocking task once on the scheduler's timer thread, after the delay.
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return timer.schedule(task, delay, unit);
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+        reserve.shutdownNow();
+    }
+
+    private long nextTicket(Object owner) {
+        Object key = owner != null ? owner : APPLICATION_OWNER;
+        synchronized (ownerTickets) {
+            Long lastTicket = ownerTickets.get(key);
+            long ticket = Math.max(lastTicket != null ? lastTicket + 1 : 0, virtualTime);
+            ownerTickets.put(key, ticket);
+            return ticket;
+        }
+    }
+
+    private static class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+        private final Priority priority;
+        private final long ticket;
+        private final long sequence;
+
+        private PrioritizedTask(Callable<T> callable, Priority priority, long ticket, long sequence) {
+            super(callable);
+            this.priority = priority;
+            this.ticket = ticket;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(PrioritizedTask<?> that) {
+            if (priority != that.priority) {
+                return priority.compareTo(that.priority);
+            }
+            if (ticket != that.ticket) {
+                return ticket < that.ticket ? -1 : 1;
+            }
+            return sequence < that.sequence ? -1 : (sequence == that.sequence ? 0 : 1);
+        }
+    }
+
+    static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + " #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                public void uncaughtException(Thread t, Throwable e) {
+                    logger.error("Uncaught exception in " + t.getName(), e);
+                }
+            });
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import org.apache.log4j.Logger;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.io.File;
+import java.io.Writer;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Future;
+
+/**
+ * Runs scripts on the engines of a {@link ScriptEnginePool}, on the threads of a
+ * {@link ScriptExecutionScheduler}, under the eye of a {@link ScriptWatchdog}, recording their
+ * {@link ScriptMetrics}. Nothing here depends on IntelliJ, so scripts can be run outside the IDE as well,
+ * see {@link ScriptRunner}; the plugin's command processors evaluate their scripts through an executor too.
+ */
+public class ScriptExecutor {
+
+    private static final Logger logger = Logger.getLogger(ScriptExecutor.class);
+
+    /**
+     * A script evaluation, timed by a measurement.
+     *
+     * @param <E> the checked exception the evaluation throws
+     */
+    public interface Evaluation<E extends Exception> {
+        Object evaluate(ScriptMetrics.Measurement measurement) throws E;
+    }
+
+    private final ScriptEnginePool enginePool;
+    private final ScriptExecutionScheduler scheduler;
+    private final ScriptWatchdog watchdog;
+    private final ScriptMetrics metrics;
+    private final Set<ScriptWatchdog.Execution> executions = new CopyOnWriteArraySet<ScriptWatchdog.Execution>();
+    private volatile ScriptBudget budget = ScriptBudget.UNLIMITED;
+
+    public ScriptExecutor(ScriptEnginePool enginePool, ScriptExecutionScheduler scheduler, ScriptWatchdog watchdog, ScriptMetrics metrics) {
+        this.enginePool = enginePool;
+        this.scheduler = scheduler;
+        this.watchdog = watchdog;
+        this.metrics = metrics;
+    }
+
+    public ScriptEnginePool getEnginePool() {
+        return enginePool;
+    }
+
+    public ScriptExecutionScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public ScriptMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the wall clock and CPU time the scripts of this executor may use.
+     */
+    public void setBudget(ScriptBudget budget) {
+        this.budget = budget != null ? budget : ScriptBudget.UNLIMITED;
+    }
+
+    public ScriptBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Stops the scripts this executor is running. Scripts that don't react to being interrupted are
+     * stopped forcibly after the watchdog's grace period.
+     */
+    public void stopScripts() {
+        for (ScriptWatchdog.Execution execution : executions) {
+            execution.stop("stopped by the user");
+        }
+    }
+
+    /**
+     * Runs a script file on an engine of the pool for the file's extension, in a context of its own.
+     *
+     * @param owner what the script runs for, which gets its fair share of the scheduler's threads
+     */
+    public Future<?> submit(final File scriptFile, final ScriptCallback callback, ScriptExecutionScheduler.Priority priority, Object owner) {
+        final long queuedAt = System.nanoTime();
+        return scheduler.submit(withScriptClassLoader(new Runnable() {
+            public void run() {
+                runScriptFile(scriptFile, queuedAt, callback);
+            }
+        }), priority, owner);
+    }
+
+    /**
+     * Makes the pool's class loader the context class loader while the script runs, so scripts can see
+     * the project's libraries.
+     */
+    public Runnable withScriptClassLoader(final Runnable runnable) {
+        return new Runnable() {
+            public void run() {
+                Thread currentThread = Thread.currentThread();
+                ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+                currentThread.setContextClassLoader(enginePool.getClassLoader());
+                try {
+                    runnable.run();
+                } finally {
+                    currentThread.setContextClassLoader(contextClassLoader);
+                }
+            }
+        };
+    }
+
+    /**
+     * Evaluates the content of a script file, compiled through the pool's cache.
+     *
+     * @param queuedAt the {@link System#nanoTime()} the script was submitted at
+     */
+    public Object evaluateFile(final ScriptEngine engine, final ScriptContext context, final File scriptFile,
+                               final String scriptContent, long queuedAt) throws ScriptException {
+        return evaluate(engine, context, scriptFile.getName(), scriptFile.getPath(), queuedAt, new Evaluation<ScriptException>() {
+            public Object evaluate(ScriptMetrics.Measurement measurement) throws ScriptException {
+                return evaluateCompiled(engine, context, scriptFile, scriptContent, measurement);
+            }
+        });
+    }
+
+    /**
+     * Evaluates a script under the eye of the watchdog, and records its {@link ScriptMetrics}. When the
+     * script gets stopped, the engine is {@link #stopped(ScriptEngine) given up}, since a script stopped
+     * halfway may leave it in an inconsistent state.
+     *
+     * @param path     the script file, or what the script came from, to keep the metrics by
+     * @param queuedAt the {@link System#nanoTime()} the script was submitted at
+     */
+    public <E extends Exception> Object evaluate(ScriptEngine engine, ScriptContext context, String name, String path,
+                                                 long queuedAt, Evaluation<E> evaluation) throws E {
+        ScriptWatchdog.Execution execution = watchdog.start(name, budget);
+        executions.add(execution);
+        ScriptMetrics.Measurement measurement = metrics.start(path, queuedAt);
+        Writer writer = context.getWriter();
+        context.setWriter(measurement.countOutput(writer));
+        GlobalScope globalScope = enginePool.getGlobalScope(engine);
+        GlobalScope.Entry enteredContext = globalScope != null ? globalScope.enter(context) : null;
+        Object result = null;
+        Throwable failure = null;
+        try {
+            // the watchdog may stop the thread until the execution is finished, so the ThreadDeath has to be
+            // caught up to that point, and finishing is retried if it was thrown while finishing
+            try {
+                result = evaluation.evaluate(measurement);
+            } finally {
+                watchdog.finish(execution);
+            }
+        } catch (Throwable e) {
+            failure = e;
+        }
+        try {
+            watchdog.finish(execution);
+            if (failure == null) {
+                return result;
+            }
+            if (execution.isStopped() && (failure instanceof Exception || failure instanceof ThreadDeath)) {
+                throw new ScriptStoppedException(execution, failure);
+            }
+            if (failure instanceof Exception) {
+                throw ScriptExecutor.<E>evaluationFailure((Exception) failure);
+            }
+            throw (Error) failure;
+        } finally {
+            if (globalScope != null) {
+                globalScope.exit(enteredContext);
+            }
+            context.setWriter(writer);
+            measurement.finish(result, failure != null);
+            executions.remove(execution);
+            if (execution.isStopped()) {
+                Thread.interrupted();
+                stopped(engine);
+            }
+        }
+    }
+
+    /**
+     * @return an exception the evaluation threw, which is either unchecked or the one it declares
+     */
+    @SuppressWarnings({"unchecked"})
+    private static <E extends Exception> E evaluationFailure(Exception failure) {
+        return (E) failure;
+    }
+
+    /**
+     * Compiles the script through the pool's cache, timing the compilation separately, and evaluates it.
+     */
+    public Object evaluateCompiled(ScriptEngine engine, ScriptContext context, File scriptFile, String scriptContent,
+                                   ScriptMetrics.Measurement measurement) throws ScriptException {
+        long compileStart = System.nanoTime();
+        CompiledScript compiledScript = enginePool.getCompiledScriptCache().getCompiledScript(engine, scriptFile, scriptContent);
+        measurement.addCompileTime(System.nanoTime() - compileStart);
+        return compiledScript != null ? compiledScript.eval(context) : engine.eval(scriptContent, context);
+    }
+
+    /**
+     * Called when a script running on the engine was stopped. Discards the engine, so that the pool
+     * doesn't hand it out again.
+     */
+    protected void stopped(ScriptEngine engine) {
+        enginePool.discard(engine);
+    }
+
+    private void runScriptFile(File scriptFile, long queuedAt, ScriptCallback callback) {
+        ScriptEngine engine = null;
+        try {
+            logger.info("Evaluating script file '" + scriptFile + "' ...");
+            engine = enginePool.acquire(ScriptEnginePool.getEngineName(getExtension(scriptFile)));
+            ScriptContext context = enginePool.createRunContext(engine);
+            Object result = evaluateFile(engine, context, scriptFile, ScriptEnginePool.readScript(scriptFile), queuedAt);
+            callback.success(result);
+        } catch (Throwable e) {
+            callback.failure(e);
+        } finally {
+            enginePool.release(engine);
+        }
+    }
+
+    private static String getExtension(File scriptFile) {
+        String fileName = scriptFile.getName();
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 ? fileName.substring(dot + 1).toLowerCase() : "";
+    }
+}
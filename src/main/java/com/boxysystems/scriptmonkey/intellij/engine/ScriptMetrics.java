@@ -0,0 +1,265 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Histograms of how the scripts of the application ran, per script path: how long they waited for a
+ * script runner thread, how long compiling and evaluating them took, how much CPU time they used,
+ * how many bytes they allocated and how much output they produced.
+ * <p/>
+ * Scripts get at it through the <code>stats</code> global, for example
+ * <code>stats.get(path).get("eval").getPercentile(0.95)</code>, and the "Script Monkey Stats" tab
+ * shows it. Only the most recently run {@link #DEFAULT_CAPACITY} scripts are kept.
+ */
+public class ScriptMetrics {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public enum Metric {
+        QUEUE_WAIT("queue", "us"),
+        COMPILE("compile", "us"),
+        EVAL("eval", "us"),
+        CPU("cpu", "us"),
+        ALLOCATED("allocated", "bytes"),
+        OUTPUT("output", "chars");
+
+        private final String key;
+        private final String unit;
+
+        Metric(String key, String unit) {
+            this.key = key;
+            this.unit = unit;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public static Metric forKey(String key) {
+            for (Metric metric : values()) {
+                if (metric.key.equalsIgnoreCase(key) || metric.name().equalsIgnoreCase(key)) {
+                    return metric;
+                }
+            }
+            throw new IllegalArgumentException("Unknown metric '" + key + "'");
+        }
+    }
+
+    /**
+     * In insertion order, refreshed when a script's run is recorded, so that looking at the statistics
+     * doesn't change which scripts count as recently run.
+     */
+    private final Map<String, ScriptStats> statsByPath = new LinkedHashMap<String, ScriptStats>() {
+        protected boolean removeEldestEntry(Map.Entry<String, ScriptStats> eldest) {
+            return size() > DEFAULT_CAPACITY;
+        }
+    };
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final boolean allocationSupported = isAllocationSupported(threadMXBean);
+
+    /**
+     * Starts measuring a script about to run on the current thread.
+     *
+     * @param path     the script file, or a name such as "js shell" for scripts without a file
+     * @param queuedAt the {@link System#nanoTime()} the script was submitted at
+     */
+    public Measurement start(String path, long queuedAt) {
+        return new Measurement(path, queuedAt);
+    }
+
+    /**
+     * @return the statistics of the script, or null if it didn't run (recently)
+     */
+    public ScriptStats get(String path) {
+        synchronized (statsByPath) {
+            return statsByPath.get(path);
+        }
+    }
+
+    /**
+     * @return the paths of the scripts that ran, least recently run first
+     */
+    public List<String> getPaths() {
+        synchronized (statsByPath) {
+            return new ArrayList<String>(statsByPath.keySet());
+        }
+    }
+
+    public void reset() {
+        synchronized (statsByPath) {
+            statsByPath.clear();
+        }
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (String path : getPaths()) {
+            ScriptStats stats = get(path);
+            if (stats != null) {
+                report.append(path).append('\n').append(stats);
+            }
+        }
+        return report.toString();
+    }
+
+    public String toString() {
+        return "script metrics: " + getPaths().size() + " script(s)";
+    }
+
+    private ScriptStats getRecorded(String path) {
+        synchronized (statsByPath) {
+            ScriptStats stats = statsByPath.remove(path);
+            if (stats == null) {
+                stats = new ScriptStats();
+            }
+            statsByPath.put(path, stats);
+            return stats;
+        }
+    }
+
+    private long getCpuTime() {
+        if (!threadMXBean.isThreadCpuTimeSupported()) {
+            return 0;
+        }
+        return Math.max(0, threadMXBean.getCurrentThreadCpuTime());
+    }
+
+    private long getAllocatedBytes() {
+        if (!allocationSupported) {
+            return 0;
+        }
+        return Math.max(0, ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId()));
+    }
+
+    private static boolean isAllocationSupported(ThreadMXBean threadMXBean) {
+        try {
+            return threadMXBean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * The histograms of one script.
+     */
+    public static class ScriptStats {
+        private final Map<Metric, Histogram> histograms = new EnumMap<Metric, Histogram>(Metric.class);
+        private final AtomicLong failures = new AtomicLong();
+
+        private ScriptStats() {
+            for (Metric metric : Metric.values()) {
+                histograms.put(metric, new Histogram());
+            }
+        }
+
+        public Histogram get(Metric metric) {
+            return histograms.get(metric);
+        }
+
+        /**
+         * @param key the key of a {@link Metric}, such as "eval" or "cpu"
+         */
+        public Histogram get(String key) {
+            return get(Metric.forKey(key));
+        }
+
+        public long getRunCount() {
+            return get(Metric.EVAL).getCount();
+        }
+
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Metric metric : Metric.values()) {
+                text.append("  ").append(metric.getKey()).append(" (").append(metric.getUnit()).append("): ")
+                        .append(get(metric)).append('\n');
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * One run of a script, measured on the thread running it.
+     */
+    public class Measurement {
+        private final String path;
+        private final long startedAt = System.nanoTime();
+        private final long queueWait;
+        private final long startCpuTime = getCpuTime();
+        private final long startAllocatedBytes = getAllocatedBytes();
+        private long compileTime;
+        private long output;
+
+        private Measurement(String path, long queuedAt) {
+            this.path = path;
+            this.queueWait = Math.max(0, startedAt - queuedAt);
+        }
+
+        public void addCompileTime(long nanos) {
+            compileTime += nanos;
+        }
+
+        public void addOutput(long chars) {
+            output += chars;
+        }
+
+        /**
+         * @return a writer counting what is written to the given writer as output of the script
+         */
+        public Writer countOutput(final Writer writer) {
+            return new Writer() {
+                public void write(char[] chars, int offset, int length) throws IOException {
+                    writer.write(chars, offset, length);
+                    output += length;
+                }
+
+                public void flush() throws IOException {
+                    writer.flush();
+                }
+
+                public void close() throws IOException {
+                    writer.close();
+                }
+            };
+        }
+
+        /**
+         * Records the run, with the size of what the script evaluated to counted as output.
+         */
+        public void finish(Object result, boolean failed) {
+            long elapsed = System.nanoTime() - startedAt;
+            if (result != null) {
+                output += String.valueOf(result).length();
+            }
+            ScriptStats stats = getRecorded(path);
+            stats.get(Metric.QUEUE_WAIT).record(queueWait / 1000L);
+            stats.get(Metric.COMPILE).record(compileTime / 1000L);
+            stats.get(Metric.EVAL).record(Math.max(0, elapsed - compileTime) / 1000L);
+            stats.get(Metric.CPU).record((getCpuTime() - startCpuTime) / 1000L);
+            stats.get(Metric.ALLOCATED).record(getAllocatedBytes() - startAllocatedBytes);
+            stats.get(Metric.OUTPUT).record(output);
+            if (failed) {
+                stats.failures.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,635 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Lets tools on the same machine evaluate scripts in the IDE, over a socket on the loopback interface.
+ * One thread multiplexes all the connections with non-blocking I/O; the scripts of a connection run one
+ * after the other on the {@link ScriptExecutionScheduler}, in sessions opened by a {@link SessionFactory}.
+ * <p/>
+ * The protocol is line based, in UTF-8. The first line a client sends is the server's token. Every line
+ * after that is a request, numbered from 1 on, and a client doesn't have to wait for the answer to send
+ * the next one. Answers come in the order of the requests:
+ * <pre>
+ * out &lt;request&gt; &lt;text&gt;      what the script printed so far, as it prints it
+ * ok &lt;request&gt; &lt;result&gt;     the script ran, with what it evaluated to
+ * err &lt;request&gt; &lt;message&gt;   the script failed
+ * </pre>
+ * Line breaks and backslashes in requests and answers are escaped as <code>\n</code>, <code>\r</code> and
+ * <code>\\</code>. Requests starting with a colon are commands to the server: <code>:lang groovy</code>
+ * switches the language of the next requests, <code>:project name</code> runs them in the project of that
+ * name (no name for the application) and <code>:quit</code> closes the connection.
+ * <p/>
+ * A client that doesn't read its answers only holds up itself: the server stops reading its requests, and
+ * scripts printing to it wait, until it caught up. A client that doesn't catch up within
+ * {@link #OUTPUT_TIMEOUT} is disconnected. A client that closes its end of the connection still gets the
+ * answers to the requests it sent before.
+ */
+public class ScriptReplServer {
+
+    private static final Logger logger = Logger.getLogger(ScriptReplServer.class);
+
+    public static final String DEFAULT_LANGUAGE = "js";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final int MAX_PENDING_OUTPUT = 4 * 1024 * 1024;
+    public static final long OUTPUT_TIMEOUT = 30 * 1000;
+    private static final int MAX_PENDING_REQUESTS = 10000;
+    private static final int OUTPUT_CHUNK = 8192;
+
+    /**
+     * Opens the sessions the scripts of a connection run in.
+     */
+    public interface SessionFactory {
+        /**
+         * @param language the extension of the language, such as "js" or "groovy"
+         * @param project  the name of the project to run the scripts in, or null for the application
+         * @param output   where what the scripts print goes, to the client
+         */
+        Session open(String language, String project, Writer output) throws Exception;
+    }
+
+    public interface Session {
+        Object evaluate(String command) throws Exception;
+
+        /**
+         * Stops what the session still runs. Called on another thread than the one evaluating.
+         */
+        void stop();
+
+        /**
+         * Frees the session's engine. Called once nothing runs in the session any more.
+         */
+        void close();
+    }
+
+    private final SessionFactory sessionFactory;
+    private final ScriptExecutionScheduler scheduler;
+    private final String token;
+    private final Set<Connection> connections = new CopyOnWriteArraySet<Connection>();
+    private final ConcurrentLinkedQueue<Connection> changedConnections = new ConcurrentLinkedQueue<Connection>();
+
+    private volatile Selector selector;
+    private volatile ServerSocketChannel serverChannel;
+    private volatile Thread thread;
+    private volatile boolean running = false;
+    private volatile int maxPendingOutput = MAX_PENDING_OUTPUT;
+    private volatile long outputTimeout = OUTPUT_TIMEOUT;
+
+    /**
+     * @param token what clients have to send first, or null to let any client in
+     */
+    public ScriptReplServer(SessionFactory sessionFactory, ScriptExecutionScheduler scheduler, String token) {
+        this.sessionFactory = sessionFactory;
+        this.scheduler = scheduler;
+        this.token = token;
+    }
+
+    /**
+     * Starts listening on the loopback interface.
+     *
+     * @param port the port to listen on, 0 for any free port
+     */
+    public synchronized void start(int port) throws IOException {
+        if (running) {
+            throw new IllegalStateException("REPL server is running already");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                serve();
+            }
+        }, "ScriptMonkey REPL server");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("REPL server listening on port " + getPort());
+    }
+
+    /**
+     * Closes all the connections, stopping the scripts they still run.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("REPL server stopped");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getPort() {
+        ServerSocketChannel serverChannel = this.serverChannel;
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * @param maxPendingOutput bytes of answers a client may leave unread before it is held up
+     * @param outputTimeout    milliseconds a script waits to print to a client that is held up, before the
+     *                         client is disconnected
+     */
+    void setOutputLimit(int maxPendingOutput, long outputTimeout) {
+        this.maxPendingOutput = maxPendingOutput;
+        this.outputTimeout = outputTimeout;
+    }
+
+    private void serve() {
+        try {
+            while (running) {
+                selector.select();
+                Connection changed;
+                while ((changed = changedConnections.poll()) != null) {
+                    updateInterest(changed);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                        updateInterest(connection);
+                    } catch (IOException e) {
+                        logger.debug("REPL connection failed", e);
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("REPL server failed", e);
+        } finally {
+            running = false;
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            closeQuietly();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+    }
+
+    private void updateInterest(Connection connection) {
+        SelectionKey key = connection.key;
+        if (!key.isValid()) {
+            return;
+        }
+        int ops = 0;
+        synchronized (connection) {
+            if (connection.stalled || (connection.closeWhenFlushed && connection.output.isEmpty()
+                    && connection.requests.isEmpty() && !connection.evaluating)) {
+                ops = -1;
+            } else if (!connection.output.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            if (!connection.closeWhenFlushed && connection.pendingOutput < maxPendingOutput
+                    && connection.requests.size() < MAX_PENDING_REQUESTS) {
+                ops |= SelectionKey.OP_READ;
+            }
+        }
+        if (ops < 0) {
+            connection.close();
+        } else {
+            key.interestOps(ops);
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing REPL server socket", e);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("Error closing REPL server selector", e);
+        }
+    }
+
+    static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                escaped.append("\\\\");
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\r') {
+                escaped.append("\\r");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                unescaped.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    private static class Request {
+        private final long id;
+        private final String command;
+
+        private Request(long id, String command) {
+            this.id = id;
+            this.command = command;
+        }
+    }
+
+    /**
+     * One client. Its requests are read and its answers written on the server's thread, and evaluated on a
+     * script runner thread, at most one at a time.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final LinkedList<Request> requests = new LinkedList<Request>();
+        private final LinkedList<ByteBuffer> output = new LinkedList<ByteBuffer>();
+        private final Map<String, Session> sessions = new HashMap<String, Session>();
+        private final OutputWriter writer = new OutputWriter(this);
+        private SelectionKey key;
+        private int pendingOutput = 0;
+        private long requestCount = 0;
+        private boolean authorized = token == null;
+        private boolean evaluating = false;
+        private boolean closeWhenFlushed = false;
+        private boolean stalled = false;
+        private volatile boolean closed = false;
+        private String language = DEFAULT_LANGUAGE;
+        private String project = null;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void read() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                closeWhenFlushed();
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    String text = new String(line.toByteArray(), UTF8);
+                    line.reset();
+                    received(text.endsWith("\r") ? text.substring(0, text.length() - 1) : text);
+                } else if (line.size() < MAX_LINE_LENGTH) {
+                    line.write(b);
+                } else {
+                    send("err " + (requestCount + 1) + " request longer than " + MAX_LINE_LENGTH + " bytes");
+                    closeWhenFlushed();
+                    break;
+                }
+            }
+            readBuffer.clear();
+        }
+
+        private void received(String text) {
+            if (closeWhenFlushed) {
+                return;
+            }
+            if (!authorized) {
+                if (MessageDigest.isEqual(text.getBytes(UTF8), token.getBytes(UTF8))) {
+                    authorized = true;
+                    send("ok 0 Script Monkey");
+                } else {
+                    send("err 0 not authorized");
+                    closeWhenFlushed();
+                }
+                return;
+            }
+            boolean start;
+            synchronized (this) {
+                requests.add(new Request(++requestCount, unescape(text)));
+                start = !evaluating;
+                evaluating = true;
+            }
+            if (start) {
+                scheduler.submit(new Runnable() {
+                    public void run() {
+                        evaluateRequests();
+                    }
+                }, ScriptExecutionScheduler.Priority.INTERACTIVE, this);
+            }
+        }
+
+        /**
+         * Evaluates the requests until there are none left. The sessions of a connection that was closed
+         * meanwhile are closed here, once the request that was running is over.
+         */
+        private void evaluateRequests() {
+            while (true) {
+                Request request;
+                boolean closing;
+                synchronized (this) {
+                    request = closed ? null : requests.poll();
+                    closing = closed;
+                    if (request == null) {
+                        evaluating = false;
+                    } else if (requests.size() == MAX_PENDING_REQUESTS - 1) {
+                        changed();
+                    }
+                }
+                if (request == null) {
+                    if (closing) {
+                        closeSessions();
+                    } else {
+                        // a client that closed its end is disconnected once its requests are answered
+                        changed();
+                    }
+                    return;
+                }
+                evaluate(request);
+            }
+        }
+
+        private void evaluate(Request request) {
+            String command = request.command;
+            try {
+                if (command.startsWith(":")) {
+                    evaluateDirective(request);
+                    return;
+                }
+                writer.setRequest(request.id);
+                Object result = getSession().evaluate(command);
+                writer.flush();
+                send("ok " + request.id + " " + escape(result != null ? String.valueOf(result) : ""));
+            } catch (Throwable e) {
+                writer.flush();
+                send("err " + request.id + " " + escape(e.getMessage() != null ? e.getMessage() : e.toString()));
+            }
+        }
+
+        private void evaluateDirective(Request request) {
+            String command = request.command.trim();
+            int space = command.indexOf(' ');
+            String name = space > 0 ? command.substring(1, space) : command.substring(1);
+            String argument = space > 0 ? command.substring(space + 1).trim() : "";
+            if (name.equals("lang") && argument.length() > 0) {
+                language = argument.toLowerCase();
+                send("ok " + request.id + " " + language);
+            } else if (name.equals("project")) {
+                project = argument.length() > 0 ? argument : null;
+                send("ok " + request.id + " " + (project != null ? escape(project) : ""));
+            } else if (name.equals("quit")) {
+                send("ok " + request.id + " bye");
+                synchronized (this) {
+                    closeWhenFlushed = true;
+                    requests.clear();
+                }
+                changed();
+            } else {
+                send("err " + request.id + " unknown command " + escape(command));
+            }
+        }
+
+        private Session getSession() throws Exception {
+            String sessionKey = language + ":" + (project != null ? project : "");
+            Session session;
+            synchronized (sessions) {
+                session = sessions.get(sessionKey);
+            }
+            if (session == null) {
+                session = sessionFactory.open(language, project, writer);
+                synchronized (sessions) {
+                    sessions.put(sessionKey, session);
+                }
+            }
+            if (closed) {
+                throw new IllegalStateException("connection closed");
+            }
+            return session;
+        }
+
+        private void send(String message) {
+            byte[] bytes = (message + "\n").getBytes(UTF8);
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                output.add(ByteBuffer.wrap(bytes));
+                pendingOutput += bytes.length;
+            }
+            changed();
+        }
+
+        private void write() throws IOException {
+            synchronized (this) {
+                while (!output.isEmpty()) {
+                    ByteBuffer buffer = output.getFirst();
+                    int written = channel.write(buffer);
+                    pendingOutput -= written;
+                    if (pendingOutput < maxPendingOutput) {
+                        notifyAll();
+                    }
+                    if (buffer.hasRemaining()) {
+                        return;
+                    }
+                    output.removeFirst();
+                }
+            }
+        }
+
+        /**
+         * Makes the calling thread wait while the client has more answers to read than it may have.
+         *
+         * @throws IOException if the client didn't catch up in time, it is disconnected then
+         */
+        private synchronized void awaitOutputRoom() throws IOException {
+            long deadline = System.currentTimeMillis() + outputTimeout;
+            while (pendingOutput >= maxPendingOutput && !closed) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    stalled = true;
+                    changed();
+                    throw new IOException("REPL client didn't read its answers for " + outputTimeout + " ms");
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the REPL client to read its answers");
+                }
+            }
+        }
+
+        private void changed() {
+            if (Thread.currentThread() == thread) {
+                return;
+            }
+            changedConnections.add(this);
+            Selector selector = ScriptReplServer.this.selector;
+            if (selector != null) {
+                selector.wakeup();
+            }
+        }
+
+        private synchronized void closeWhenFlushed() {
+            closeWhenFlushed = true;
+        }
+
+        private void close() {
+            boolean idle;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                connections.remove(this);
+                output.clear();
+                requests.clear();
+                idle = !evaluating;
+                notifyAll();
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Error closing REPL connection", e);
+            }
+            if (idle) {
+                closeSessions();
+            } else {
+                stopSessions();
+            }
+        }
+
+        private void stopSessions() {
+            synchronized (sessions) {
+                for (Session session : sessions.values()) {
+                    session.stop();
+                }
+            }
+        }
+
+        private void closeSessions() {
+            synchronized (sessions) {
+                for (Session session : sessions.values()) {
+                    session.close();
+                }
+                sessions.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends what scripts print to the client, a line or a chunk at a time, tagged with the request that
+     * runs. What callbacks print after their script is over goes with the request that was last. Writing
+     * waits while the client is behind on reading.
+     */
+    private static class OutputWriter extends Writer {
+        private final Connection connection;
+        private final StringBuilder buffer = new StringBuilder();
+        private long request = 0;
+
+        private OutputWriter(Connection connection) {
+            this.connection = connection;
+        }
+
+        private synchronized void setRequest(long request) {
+            this.request = request;
+        }
+
+        public synchronized void write(char[] chars, int offset, int length) throws IOException {
+            connection.awaitOutputRoom();
+            buffer.append(chars, offset, length);
+            if (buffer.length() >= OUTPUT_CHUNK || buffer.indexOf("\n", buffer.length() - length) >= 0) {
+                flush();
+            }
+        }
+
+        public synchronized void flush() {
+            if (buffer.length() > 0) {
+                connection.send("out " + request + " " + escape(buffer.toString()));
+                buffer.setLength(0);
+            }
+        }
+
+        public void close() {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Runs script files outside the IDE, as many at once as it has threads, and reports how long they took.
+ * Meant for running maintenance scripts on a build server, or for timing scripts without a GUI in the way.
+ * <p/>
+ * Scripts get the same engines, global scripts, <code>require</code> modules, <code>scheduler</code> and
+ * <code>stats</code> globals as in the IDE, but no <code>application</code>, <code>project</code> or
+ * <code>window</code>, so the <code>-globals</code> folder must not have scripts that need the IDE, such as
+ * the bundled <code>intellij.js</code>. From the command line:
+ * <pre>
+ * java -cp scriptmonkey-core.jar:log4j.jar:&lt;script engines&gt; com.boxysystems.scriptmonkey.intellij.engine.ScriptRunner
+ *      [-threads n] [-repeat n] [-timeout seconds] [-globals folder] [-lib folder] [-out file] script...
+ * </pre>
+ * The timings are printed as JSON once all scripts ran, to the <code>-out</code> file or to the standard
+ * output. The exit code is 0 if all scripts succeeded, 1 if one failed and 2 if the arguments were wrong.
+ */
+public class ScriptRunner {
+
+    public static final String USAGE = "usage: ScriptRunner [-threads n] [-repeat n] [-timeout seconds] "
+            + "[-globals folder] [-lib folder] [-out file] script...";
+
+    private final int threads;
+    private final ScriptEnginePool enginePool;
+    private final ScriptExecutionScheduler scheduler;
+    private final ScriptWatchdog watchdog = new ScriptWatchdog();
+    private final ScriptMetrics metrics = new ScriptMetrics();
+    private final ScriptExecutor executor;
+    private final ScriptTimerService timerService;
+
+    public ScriptRunner(int threads, ClassLoader classLoader) {
+        this.threads = threads;
+        enginePool = new ScriptEnginePool("script runner", classLoader);
+        scheduler = new ScriptExecutionScheduler(threads);
+        executor = new ScriptExecutor(enginePool, scheduler, watchdog, metrics);
+        timerService = new ScriptTimerService("script runner", this, scheduler, enginePool);
+        enginePool.setGlobalVariable("stats", metrics);
+        enginePool.setGlobalVariable("scheduler", timerService);
+    }
+
+    public ScriptExecutor getExecutor() {
+        return executor;
+    }
+
+    public ScriptEnginePool getEnginePool() {
+        return enginePool;
+    }
+
+    /**
+     * Sets the wall clock and CPU time every script may use.
+     */
+    public void setBudget(ScriptBudget budget) {
+        executor.setBudget(budget);
+    }
+
+    /**
+     * Runs every script the given number of times, and waits until all runs are over.
+     */
+    public Report run(List<File> scriptFiles, int repeat) throws InterruptedException {
+        Report report = new Report(threads, scriptFiles);
+        long start = System.currentTimeMillis();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < repeat; i++) {
+            for (File scriptFile : scriptFiles) {
+                futures.add(executor.submit(scriptFile, report.callback(scriptFile), ScriptExecutionScheduler.Priority.LIFECYCLE, this));
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // the callback was told already
+            }
+        }
+        report.finish(System.currentTimeMillis() - start, metrics);
+        return report;
+    }
+
+    public void shutdown() {
+        timerService.shutdown();
+        watchdog.shutdown();
+        scheduler.shutdown();
+        enginePool.dispose();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = ScriptExecutionScheduler.DEFAULT_THREADS;
+        int repeat = 1;
+        int timeout = 0;
+        File globals = null;
+        File lib = null;
+        File out = null;
+        List<File> scriptFiles = new ArrayList<File>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-repeat")) {
+                    repeat = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-timeout")) {
+                    timeout = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-globals")) {
+                    globals = new File(args[++i]);
+                } else if (arg.equals("-lib")) {
+                    lib = new File(args[++i]);
+                } else if (arg.equals("-out")) {
+                    out = new File(args[++i]);
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException("unknown option " + arg);
+                } else {
+                    scriptFiles.add(new File(arg));
+                }
+            }
+            if (scriptFiles.isEmpty() || threads < 1 || repeat < 1 || timeout < 0) {
+                throw new IllegalArgumentException("no scripts to run");
+            }
+        } catch (RuntimeException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        Logger rootLogger = Logger.getRootLogger();
+        if (!rootLogger.getAllAppenders().hasMoreElements()) {
+            rootLogger.addAppender(new ConsoleAppender(new PatternLayout("%-5p %c{1} - %m%n"), ConsoleAppender.SYSTEM_ERR));
+            rootLogger.setLevel(Level.WARN);
+        }
+
+        ScriptRunner runner = new ScriptRunner(threads, ScriptRunner.class.getClassLoader());
+        Report report;
+        try {
+            runner.getEnginePool().setGlobalScriptsFolder(globals);
+            if (lib != null) {
+                runner.getEnginePool().getModuleLoader().setFolder(lib);
+            }
+            runner.setBudget(ScriptBudget.ofSeconds(timeout, 0));
+            report = runner.run(scriptFiles, repeat);
+        } finally {
+            runner.shutdown();
+        }
+
+        Writer writer = out != null ? new FileWriter(out) : new PrintWriter(System.out);
+        try {
+            report.writeJson(writer);
+        } finally {
+            writer.close();
+        }
+        System.exit(report.getFailureCount() > 0 ? 1 : 0);
+    }
+
+    /**
+     * How a batch of scripts ran: the errors of the runs that failed, and the {@link ScriptMetrics} of each script.
+     */
+    public static class Report {
+        private final int threads;
+        private final Set<String> paths = new LinkedHashSet<String>();
+        private final Map<String, List<String>> errors = new LinkedHashMap<String, List<String>>();
+        private final Map<String, ScriptMetrics.ScriptStats> stats = new LinkedHashMap<String, ScriptMetrics.ScriptStats>();
+        private long wallMillis;
+
+        private Report(int threads, List<File> scriptFiles) {
+            this.threads = threads;
+            for (File scriptFile : scriptFiles) {
+                paths.add(scriptFile.getPath());
+            }
+        }
+
+        private ScriptCallback callback(final File scriptFile) {
+            return new ScriptCallback() {
+                public void success(Object result) {
+                }
+
+                public void failure(Throwable throwable) {
+                    synchronized (errors) {
+                        List<String> scriptErrors = errors.get(scriptFile.getPath());
+                        if (scriptErrors == null) {
+                            scriptErrors = new ArrayList<String>();
+                            errors.put(scriptFile.getPath(), scriptErrors);
+                        }
+                        scriptErrors.add(String.valueOf(throwable.getMessage() != null ? throwable.getMessage() : throwable));
+                    }
+                }
+            };
+        }
+
+        private void finish(long wallMillis, ScriptMetrics metrics) {
+            this.wallMillis = wallMillis;
+            for (String path : paths) {
+                stats.put(path, metrics.get(path));
+            }
+        }
+
+        public long getWallMillis() {
+            return wallMillis;
+        }
+
+        public int getFailureCount() {
+            int failures = 0;
+            synchronized (errors) {
+                for (List<String> scriptErrors : errors.values()) {
+                    failures += scriptErrors.size();
+                }
+            }
+            return failures;
+        }
+
+        /**
+         * @return the error messages of the failed runs of a script
+         */
+        public List<String> getErrors(String path) {
+            synchronized (errors) {
+                List<String> scriptErrors = errors.get(path);
+                return scriptErrors != null ? new ArrayList<String>(scriptErrors) : new ArrayList<String>();
+            }
+        }
+
+        public ScriptMetrics.ScriptStats getStats(String path) {
+            return stats.get(path);
+        }
+
+        public void writeJson(Writer writer) throws IOException {
+            writer.write("{\n  \"threads\": " + threads + ",\n  \"wallMillis\": " + wallMillis + ",\n  \"scripts\": [");
+            String separator = "\n";
+            for (String path : paths) {
+                ScriptMetrics.ScriptStats scriptStats = stats.get(path);
+                writer.write(separator + "    {\"path\": " + quote(path)
+                        + ", \"runs\": " + (scriptStats != null ? scriptStats.getRunCount() : 0)
+                        + ", \"failures\": " + getErrors(path).size() + ",\n      \"errors\": [");
+                String errorSeparator = "";
+                for (String error : getErrors(path)) {
+                    writer.write(errorSeparator + quote(error));
+                    errorSeparator = ", ";
+                }
+                writer.write("]");
+                if (scriptStats != null) {
+                    for (ScriptMetrics.Metric metric : ScriptMetrics.Metric.values()) {
+                        Histogram histogram = scriptStats.get(metric);
+                        writer.write(",\n      " + quote(metric.getKey()) + ": {\"unit\": " + quote(metric.getUnit())
+                                + ", \"mean\": " + Math.round(histogram.getMean())
+                                + ", \"p50\": " + histogram.getPercentile(0.5)
+                                + ", \"p95\": " + histogram.getPercentile(0.95)
+                                + ", \"max\": " + histogram.getMax() + "}");
+                    }
+                }
+                writer.write("}");
+                separator = ",\n";
+            }
+            writer.write("\n  ]\n}\n");
+            writer.flush();
+        }
+
+        private static String quote(String text) {
+            StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\\') {
+                    quoted.append('\\').append(c);
+                } else if (c == '\n') {
+                    quoted.append("\\n");
+                } else if (c == '\r') {
+                    quoted.append("\\r");
+                } else if (c == '\t') {
+                    quoted.append("\\t");
+                } else if (c < ' ') {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+            return quoted.append('"').toString();
+        }
+    }
+}
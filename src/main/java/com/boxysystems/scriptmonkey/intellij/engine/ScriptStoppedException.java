@@ -0,0 +1,14 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+/**
+ * Reported instead of the script's result when the {@link ScriptWatchdog} stopped it.
+ */
+public class ScriptStoppedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ScriptStoppedException(ScriptWatchdog.Execution execution, Throwable cause) {
+        super("Script '" + execution.getName() + "' was stopped after " + execution.getElapsedMillis()
+                + " ms: " + execution.getStopReason(), cause);
+    }
+}
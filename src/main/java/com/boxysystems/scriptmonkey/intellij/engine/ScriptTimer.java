@@ -0,0 +1,198 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A task scheduled by a script through a {@link ScriptTimerService}.
+ * <p/>
+ * The timer thread only hands the task over to the script runner threads; a task that throws is logged
+ * and runs again at its next turn.
+ */
+public class ScriptTimer {
+
+    private static final Logger logger = Logger.getLogger(ScriptTimer.class);
+
+    private static final AtomicInteger count = new AtomicInteger();
+
+    public enum Kind {
+        ONCE("once"),
+        FIXED_RATE("fixed rate"),
+        FIXED_DELAY("fixed delay");
+
+        private final String text;
+
+        Kind(String text) {
+            this.text = text;
+        }
+
+        public String toString() {
+            return text;
+        }
+    }
+
+    private final ScriptTimerService service;
+    private final String name;
+    private final Kind kind;
+    private final long period;
+    private final Runnable task;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong runCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private volatile ScheduledFuture<?> future;
+    private volatile boolean cancelled = false;
+    private volatile long lastRunAt = 0;
+
+    private final Runnable fire = new Runnable() {
+        public void run() {
+            fire();
+        }
+    };
+
+    ScriptTimer(ScriptTimerService service, String name, Kind kind, long period, Runnable task) {
+        if (task == null) {
+            throw new IllegalArgumentException("No task to schedule");
+        }
+        this.service = service;
+        this.name = name != null ? name : "timer #" + count.incrementAndGet();
+        this.kind = kind;
+        this.period = period;
+        this.task = GlobalScope.bindToCurrentRun(task);
+    }
+
+    void start() {
+        ScriptExecutionScheduler scheduler = service.getScheduler();
+        if (kind == Kind.FIXED_RATE) {
+            future = scheduler.scheduleAtFixedRate(fire, period, TimeUnit.MILLISECONDS);
+        } else {
+            future = scheduler.schedule(fire, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the delay of one shot timers, the period or delay between runs of the others, in milliseconds
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    /**
+     * @return the name of the application or project the timer belongs to
+     */
+    public String getOwnerName() {
+        return service.getName();
+    }
+
+    public long getRunCount() {
+        return runCount.get();
+    }
+
+    /**
+     * @return the number of runs skipped because the previous run was still going
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * @return when the last run started, 0 if the task didn't run yet
+     */
+    public long getLastRunAt() {
+        return lastRunAt;
+    }
+
+    /**
+     * @return milliseconds until the next run, 0 if it is due or running, -1 if there is none
+     */
+    public long getNextRunIn() {
+        ScheduledFuture<?> scheduled = future;
+        if (cancelled || scheduled == null || scheduled.isDone()) {
+            return running.get() && !cancelled ? 0 : -1;
+        }
+        return Math.max(0, scheduled.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stops the timer. A run that is going on isn't interrupted, but is the last one.
+     */
+    public void cancel() {
+        cancelled = true;
+        ScheduledFuture<?> scheduled = future;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        service.remove(this);
+    }
+
+    public String toString() {
+        return name + " (" + kind + ", " + period + " ms, " + service.getName() + ")";
+    }
+
+    private void fire() {
+        if (cancelled) {
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            skippedCount.incrementAndGet();
+            return;
+        }
+        service.getScheduler().submit(new Runnable() {
+            public void run() {
+                execute();
+            }
+        }, ScriptExecutionScheduler.Priority.LIFECYCLE, service.getOwner());
+    }
+
+    private void execute() {
+        Thread currentThread = Thread.currentThread();
+        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(service.getClassLoader());
+        lastRunAt = System.currentTimeMillis();
+        try {
+            if (!cancelled) {
+                task.run();
+            }
+        } catch (Throwable e) {
+            failureCount.incrementAndGet();
+            logger.error("Error running " + this, e);
+        } finally {
+            currentThread.setContextClassLoader(contextClassLoader);
+            runCount.incrementAndGet();
+            running.set(false);
+            if (kind == Kind.ONCE) {
+                service.remove(this);
+            } else if (kind == Kind.FIXED_DELAY && !cancelled) {
+                future = service.getScheduler().schedule(fire, period, TimeUnit.MILLISECONDS);
+                if (cancelled) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Timers for scripts, available to them as the <code>scheduler</code> global, so that a script wanting to
+ * do something periodically doesn't start a thread of its own that nothing ever stops.
+ * <p/>
+ * There is one service for the application and one per project. All of them share the timer thread of the
+ * {@link ScriptExecutionScheduler}, and the tasks themselves run on its script runner threads, with the
+ * class loader of the owner's engine pool. The timers of a project are cancelled when the project closes,
+ * the application's when IntelliJ shuts down. Times are in milliseconds.
+ */
+public class ScriptTimerService {
+
+    private final String name;
+    private final Object owner;
+    private final ScriptExecutionScheduler scheduler;
+    private final ScriptEnginePool enginePool;
+    private final List<ScriptTimer> timers = new CopyOnWriteArrayList<ScriptTimer>();
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param name  shown next to the timers, such as "application" or "project 'foo'"
+     * @param owner the owner the tasks are scheduled for, see {@link ScriptExecutionScheduler#submit}
+     */
+    public ScriptTimerService(String name, Object owner, ScriptExecutionScheduler scheduler, ScriptEnginePool enginePool) {
+        this.name = name;
+        this.owner = owner;
+        this.scheduler = scheduler;
+        this.enginePool = enginePool;
+    }
+
+    /**
+     * Runs the task once, after the delay.
+     */
+    public ScriptTimer schedule(String timerName, long delay, Runnable task) {
+        return start(new ScriptTimer(this, timerName, ScriptTimer.Kind.ONCE, delay, task));
+    }
+
+    public ScriptTimer schedule(long delay, Runnable task) {
+        return schedule(null, delay, task);
+    }
+
+    /**
+     * Runs the task every period, the first time after one period. A run that is due while the previous
+     * one is still going is skipped rather than queued.
+     */
+    public ScriptTimer scheduleAtFixedRate(String timerName, long period, Runnable task) {
+        return start(new ScriptTimer(this, timerName, ScriptTimer.Kind.FIXED_RATE, period, task));
+    }
+
+    public ScriptTimer scheduleAtFixedRate(long period, Runnable task) {
+        return scheduleAtFixedRate(null, period, task);
+    }
+
+    /**
+     * Runs the task again and again, waiting the delay before the first run and after each run.
+     */
+    public ScriptTimer scheduleWithFixedDelay(String timerName, long delay, Runnable task) {
+        return start(new ScriptTimer(this, timerName, ScriptTimer.Kind.FIXED_DELAY, delay, task));
+    }
+
+    public ScriptTimer scheduleWithFixedDelay(long delay, Runnable task) {
+        return scheduleWithFixedDelay(null, delay, task);
+    }
+
+    /**
+     * @return the timers that weren't cancelled yet, and the one shot timers that didn't run yet
+     */
+    public List<ScriptTimer> getTimers() {
+        return new ArrayList<ScriptTimer>(timers);
+    }
+
+    public void cancelAll() {
+        for (ScriptTimer timer : timers) {
+            timer.cancel();
+        }
+    }
+
+    /**
+     * Cancels every timer. Scheduling on the service isn't possible afterwards.
+     */
+    public void shutdown() {
+        shutdown = true;
+        cancelAll();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String toString() {
+        return "scheduler of " + name + " with " + timers.size() + " timer(s)";
+    }
+
+    private ScriptTimer start(ScriptTimer timer) {
+        if (shutdown) {
+            throw new IllegalStateException("The scheduler of " + name + " is shut down");
+        }
+        if (timer.getPeriod() < 0 || (timer.getPeriod() == 0 && timer.getKind() != ScriptTimer.Kind.ONCE)) {
+            throw new IllegalArgumentException("Invalid period for timer '" + timer.getName() + "': " + timer.getPeriod());
+        }
+        timers.add(timer);
+        timer.start();
+        if (shutdown) {
+            timer.cancel();
+        }
+        return timer;
+    }
+
+    void remove(ScriptTimer timer) {
+        timers.remove(timer);
+    }
+
+    Object getOwner() {
+        return owner;
+    }
+
+    ScriptExecutionScheduler getScheduler() {
+        return scheduler;
+    }
+
+    ClassLoader getClassLoader() {
+        return enginePool.getClassLoader();
+    }
+}
@@ -0,0 +1,214 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops scripts that run out of their {@link ScriptBudget}, or that the user asked to stop.
+ * <p/>
+ * Stopping starts cooperatively: the script's thread is interrupted, which ends blocking calls and,
+ * since Groovy engines are compiled with <code>@ThreadInterrupt</code>, Groovy loops too. Rhino
+ * doesn't look at the interrupt flag, so a script that is still running when the grace period is
+ * over gets its thread stopped. The grace period is short by default, so that a runaway loop is stopped
+ * within milliseconds; scripts that need longer to clean up after an interrupt can be given a longer one.
+ * Engines that ran a stopped script must not be reused.
+ * <p/>
+ * A thread is only stopped until its execution is {@link #finish(Execution) finished}, which can't happen
+ * at the same time, so code after <code>finish</code> never gets a <code>ThreadDeath</code>, however short
+ * the grace period.
+ * <p/>
+ * The watchdog checks running scripts on its own thread, which keeps working when every script
+ * runner thread is busy with a runaway script, and only while there are scripts to watch.
+ */
+public class ScriptWatchdog {
+
+    private static final Logger logger = Logger.getLogger(ScriptWatchdog.class);
+
+    public static final long DEFAULT_GRACE_PERIOD = 100;
+    public static final long CHECK_INTERVAL = 20;
+
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(new ScriptExecutionScheduler.NamedThreadFactory("ScriptMonkey watchdog"));
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final Set<Execution> executions = new CopyOnWriteArraySet<Execution>();
+
+    private volatile long gracePeriod = DEFAULT_GRACE_PERIOD;
+    private ScheduledFuture<?> checker;
+
+    /**
+     * @param gracePeriod milliseconds a script gets to stop after being interrupted, before its thread is stopped
+     */
+    public void setGracePeriod(long gracePeriod) {
+        this.gracePeriod = Math.max(0, gracePeriod);
+    }
+
+    public long getGracePeriod() {
+        return gracePeriod;
+    }
+
+    /**
+     * Starts watching the script running on the current thread. Must be paired with {@link #finish(Execution)}.
+     */
+    public Execution start(String name, ScriptBudget budget) {
+        Thread thread = Thread.currentThread();
+        Execution execution = new Execution(name, budget, thread, getCpuTime(thread));
+        executions.add(execution);
+        startChecking();
+        return execution;
+    }
+
+    /**
+     * Stops watching the script. Can be called more than once, for example when it was interrupted by
+     * the thread being stopped.
+     */
+    public void finish(Execution execution) {
+        execution.finish();
+        executions.remove(execution);
+    }
+
+    public int getRunningCount() {
+        return executions.size();
+    }
+
+    public void shutdown() {
+        for (Execution execution : executions) {
+            execution.stop("shutting down");
+        }
+        timer.shutdownNow();
+    }
+
+    private synchronized void startChecking() {
+        if (checker == null) {
+            checker = timer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    check();
+                }
+            }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void stopCheckingIfIdle() {
+        if (checker != null && executions.isEmpty()) {
+            checker.cancel(false);
+            checker = null;
+        }
+    }
+
+    private void check() {
+        long now = System.currentTimeMillis();
+        List<Execution> overdue = new ArrayList<Execution>();
+        for (Execution execution : executions) {
+            if (execution.isStopped()) {
+                if (now - execution.stoppedAt >= gracePeriod) {
+                    overdue.add(execution);
+                }
+                continue;
+            }
+            ScriptBudget budget = execution.budget;
+            if (budget.getWallClockMillis() > 0 && now - execution.startedAt > budget.getWallClockMillis()) {
+                execution.stop("ran longer than " + budget.getWallClockMillis() + " ms");
+            } else if (budget.getCpuMillis() > 0
+                    && (getCpuTime(execution.thread) - execution.startCpuTime) / 1000000L > budget.getCpuMillis()) {
+                execution.stop("used more than " + budget.getCpuMillis() + " ms of CPU time");
+            }
+        }
+        for (Execution execution : overdue) {
+            execution.kill();
+        }
+        stopCheckingIfIdle();
+    }
+
+    private long getCpuTime(Thread thread) {
+        if (!threadMXBean.isThreadCpuTimeSupported()) {
+            return 0;
+        }
+        long cpuTime = threadMXBean.getThreadCpuTime(thread.getId());
+        return cpuTime > 0 ? cpuTime : 0;
+    }
+
+    /**
+     * A script running on some thread.
+     */
+    public static class Execution {
+        private final String name;
+        private final ScriptBudget budget;
+        private final Thread thread;
+        private final long startedAt = System.currentTimeMillis();
+        private final long startCpuTime;
+
+        private volatile String stopReason;
+        private volatile long stoppedAt;
+        private boolean finished = false;
+        private volatile boolean killed = false;
+
+        private Execution(String name, ScriptBudget budget, Thread thread, long startCpuTime) {
+            this.name = name;
+            this.budget = budget;
+            this.thread = thread;
+            this.startCpuTime = startCpuTime;
+        }
+
+        /**
+         * Interrupts the script; its thread gets stopped if it is still running after the grace period.
+         */
+        public synchronized void stop(String reason) {
+            if (finished || stopReason != null) {
+                return;
+            }
+            stopReason = reason;
+            stoppedAt = System.currentTimeMillis();
+            logger.info("Stopping script '" + name + "': " + reason);
+            thread.interrupt();
+        }
+
+        /**
+         * @return true if the script didn't stop by itself and its thread was stopped
+         */
+        public boolean isKilled() {
+            return killed;
+        }
+
+        public boolean isStopped() {
+            return stopReason != null;
+        }
+
+        /**
+         * @return why the script was stopped, or null if it wasn't
+         */
+        public String getStopReason() {
+            return stopReason;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getElapsedMillis() {
+            return System.currentTimeMillis() - startedAt;
+        }
+
+        @SuppressWarnings({"deprecation"})
+        private synchronized void kill() {
+            if (finished || killed) {
+                return;
+            }
+            killed = true;
+            logger.warn("Script '" + name + "' didn't stop within the grace period, stopping its thread");
+            thread.stop();
+        }
+
+        private synchronized void finish() {
+            finished = true;
+        }
+    }
+}
@@ -23,9 +23,13 @@ public class Icons {
           Icons.getIcon("/com/boxysystems/scriptmonkey/intellij/icons/cancel.png");
   public static final Icon HELP_ICON =
           Icons.getIcon("/com/boxysystems/scriptmonkey/intellij/icons/help.png");
+  public static final Icon NEW_SESSION_ICON =
+          Icons.getIcon("/com/boxysystems/scriptmonkey/intellij/icons/add.png");
+  public static final Icon FORK_SESSION_ICON =
+          Icons.getIcon("/com/boxysystems/scriptmonkey/intellij/icons/copy.png");
 
   private static ImageIcon getIcon(String location) {
     final URL resource = Icons.class.getResource(location);
     return new ImageIcon(resource);
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
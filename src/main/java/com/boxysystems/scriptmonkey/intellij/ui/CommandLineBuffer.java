@@ -0,0 +1,71 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+/**
+ * Mirror of the text typed (or pasted) after the mark of a {@link CommandShellDocument}.
+ * <p/>
+ * It is kept up to date as the document changes, so deciding whether a command is complete doesn't
+ * need to read the document back, and the command itself is assembled in a single pass, with
+ * <code>\</code> line continuations removed.
+ */
+public class CommandLineBuffer {
+
+    private final StringBuilder text = new StringBuilder();
+    private boolean newlineInLastInsert = false;
+
+    public void append(String inserted) {
+        text.append(inserted);
+        newlineInLastInsert = inserted.indexOf('\n') >= 0;
+    }
+
+    public void delete(int start, int end) {
+        text.delete(Math.max(0, start), Math.min(end, text.length()));
+        newlineInLastInsert = false;
+    }
+
+    public void clear() {
+        text.setLength(0);
+        newlineInLastInsert = false;
+    }
+
+    public int length() {
+        return text.length();
+    }
+
+    /**
+     * @return true if the last insert ended a line that isn't continued with a trailing <code>\</code>
+     */
+    public boolean isComplete() {
+        if (!newlineInLastInsert) {
+            return false;
+        }
+        int end = getEnd();
+        return end == 0 || text.charAt(end - 1) != '\\';
+    }
+
+    /**
+     * @return the command without trailing newlines, and with the <code>\</code> of continued lines removed
+     */
+    public String getCommand() {
+        int end = getEnd();
+        StringBuilder command = new StringBuilder(end);
+        for (int i = 0; i < end; i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 >= end || text.charAt(i + 1) != '\n') {
+                command.append(c);
+            }
+        }
+        return command.toString();
+    }
+
+    public String toString() {
+        return text.toString();
+    }
+
+    private int getEnd() {
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\n') {
+            end--;
+        }
+        return end;
+    }
+}
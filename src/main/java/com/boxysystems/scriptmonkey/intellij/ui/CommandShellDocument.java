@@ -1,15 +1,31 @@
 package com.boxysystems.scriptmonkey.intellij.ui;
 
+import org.apache.log4j.Logger;
+
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
 import javax.swing.text.PlainDocument;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 public class CommandShellDocument extends PlainDocument {
+  private static final Logger logger = Logger.getLogger(CommandShellDocument.class);
+
+  private final CommandLineBuffer commandLine = new CommandLineBuffer();
   private int mark;
+  private int maxChars = 0;
+  private int maxLines = 0;
+  private File trimmedHistoryFile;
 
   public void insertString(int offset, String text, AttributeSet a)
     throws BadLocationException {
+    commandLine.append(text);
     super.insertString(getLength(), text, a);
+    trim();
   }
 
   public void remove(int offs, int len) throws BadLocationException {
@@ -25,11 +41,13 @@ public class CommandShellDocument extends PlainDocument {
 
     int cutStart = Math.max(start, markStart);
     int cutEnd = Math.min(end, markEnd);
+    commandLine.delete(cutStart - mark, cutEnd - mark);
     super.remove(cutStart, cutEnd - cutStart);
   }
 
   public void setMark() {
     mark = getLength();
+    commandLine.clear();
   }
 
   public String getMarkedText() throws BadLocationException {
@@ -43,4 +61,87 @@ public class CommandShellDocument extends PlainDocument {
     } catch (BadLocationException e) {
     }
   }
+
+  /**
+   * Limits the scrollback. Once a limit is exceeded, the oldest quarter of it is trimmed at once,
+   * always on line boundaries. Only the text before the line of the mark is trimmed, so the prompt and
+   * the command typed after it are kept, however long the command is.
+   *
+   * @param maxChars maximum number of characters kept, 0 for no limit
+   * @param maxLines maximum number of lines kept, 0 for no limit
+   */
+  public void setScrollbackLimits(int maxChars, int maxLines) {
+    this.maxChars = Math.max(0, maxChars);
+    this.maxLines = Math.max(0, maxLines);
+    trim();
+  }
+
+  /**
+   * @param trimmedHistoryFile file that trimmed content is appended to, or null to throw it away
+   */
+  public void setTrimmedHistoryFile(File trimmedHistoryFile) {
+    this.trimmedHistoryFile = trimmedHistoryFile;
+  }
+
+  public File getTrimmedHistoryFile() {
+    return trimmedHistoryFile;
+  }
+
+  public int getMark() {
+    return mark;
+  }
+
+  /**
+   * @return the text after the mark, kept up to date as the document changes
+   */
+  public CommandLineBuffer getCommandLine() {
+    return commandLine;
+  }
+
+  private void trim() {
+    int trimEnd = 0;
+    Element root = getDefaultRootElement();
+    int lineCount = root.getElementCount();
+    if (maxLines > 0 && lineCount > maxLines) {
+      int linesToTrim = lineCount - maxLines * 3 / 4;
+      trimEnd = root.getElement(Math.min(linesToTrim, lineCount - 1)).getStartOffset();
+    }
+    if (maxChars > 0 && getLength() > maxChars) {
+      int charsToTrim = getLength() - maxChars * 3 / 4;
+      int line = root.getElementIndex(charsToTrim);
+      int lineStart = root.getElement(line).getStartOffset();
+      if (lineStart < charsToTrim && line < lineCount - 1) {
+        lineStart = root.getElement(line + 1).getStartOffset();
+      }
+      trimEnd = Math.max(trimEnd, lineStart);
+    }
+    trimEnd = Math.min(trimEnd, root.getElement(root.getElementIndex(mark)).getStartOffset());
+    if (trimEnd <= 0) {
+      return;
+    }
+    try {
+      spill(getText(0, trimEnd));
+      super.remove(0, trimEnd);
+      mark -= trimEnd;
+    } catch (BadLocationException e) {
+      logger.error("Error trimming command shell document", e);
+    }
+  }
+
+  private void spill(String trimmed) {
+    if (trimmedHistoryFile == null) {
+      return;
+    }
+    try {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(trimmedHistoryFile, true), "UTF-8");
+      try {
+        writer.write(trimmed);
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      logger.warn("Could not save trimmed console output to '" + trimmedHistoryFile + "'", e);
+      trimmedHistoryFile = null;
+    }
+  }
 }
@@ -0,0 +1,46 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+import com.boxysystems.scriptmonkey.intellij.util.ConsoleLogFile;
+
+import javax.swing.*;
+
+/**
+ * List model over a {@link ConsoleLogFile}. Lines are only read from the file when the list asks for
+ * them, which a list with a fixed cell size only does for the rows in its viewport.
+ */
+public class ConsoleLogListModel extends AbstractListModel {
+
+    private final ConsoleLogFile logFile;
+    private int size = 0;
+
+    public ConsoleLogListModel(ConsoleLogFile logFile) {
+        this.logFile = logFile;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Object getElementAt(int index) {
+        return logFile.getLine(index);
+    }
+
+    /**
+     * Tells the list about lines appended to, or cleared from, the log since the last refresh.
+     * Must be called on the event dispatch thread.
+     */
+    public void refresh() {
+        int oldSize = size;
+        size = logFile.getLineCount();
+        if (size < oldSize) {
+            fireIntervalRemoved(this, size, oldSize - 1);
+        }
+        if (size > 0 && oldSize > 0) {
+            int lastOldLine = Math.min(oldSize, size) - 1;
+            fireContentsChanged(this, lastOldLine, lastOldLine);
+        }
+        if (size > oldSize) {
+            fireIntervalAdded(this, oldSize, size - 1);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the output scripts print to a console and hands it to the console on the event dispatch
+ * thread, at most once per flush interval and in a single piece, no matter how many times the script printed.
+ * <p/>
+ * Script threads append to a lock free queue and only block once the output that hasn't been flushed
+ * yet reaches the backpressure limit. Output printed on the event dispatch thread is written right away,
+ * after anything still pending, so the order of the output is kept.
+ */
+public class ConsoleOutputBuffer {
+
+    public static final int DEFAULT_FLUSH_INTERVAL = 40;
+    public static final int DEFAULT_BACKPRESSURE_LIMIT = 1024 * 1024;
+
+    public interface Output {
+        void write(String text);
+    }
+
+    private final Output output;
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger pendingChars = new AtomicInteger();
+    private final AtomicInteger blockedWriters = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object capacityLock = new Object();
+    private final Timer flushTimer;
+
+    private volatile int flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private volatile int backpressureLimit = DEFAULT_BACKPRESSURE_LIMIT;
+    private volatile long lastFlush = 0;
+
+    public ConsoleOutputBuffer(Output output) {
+        this.output = output;
+        flushTimer = new Timer(flushInterval, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                flush();
+            }
+        });
+        flushTimer.setRepeats(false);
+    }
+
+    /**
+     * @param flushInterval     minimum milliseconds between two writes to the console
+     * @param backpressureLimit number of pending characters at which script threads have to wait for a flush
+     */
+    public void configure(int flushInterval, int backpressureLimit) {
+        this.flushInterval = Math.max(0, flushInterval);
+        this.backpressureLimit = Math.max(1, backpressureLimit);
+        synchronized (capacityLock) {
+            capacityLock.notifyAll();
+        }
+    }
+
+    public void append(String text) {
+        if (text.length() == 0) {
+            return;
+        }
+        if (SwingUtilities.isEventDispatchThread()) {
+            flush();
+            output.write(text);
+            return;
+        }
+        waitForCapacity();
+        pendingChars.addAndGet(text.length());
+        pending.offer(text);
+        scheduleFlush();
+    }
+
+    /**
+     * Writes all the pending output to the console. Must be called on the event dispatch thread.
+     */
+    public void flush() {
+        flushScheduled.set(false);
+        String text = drain();
+        if (text.length() > 0) {
+            output.write(text);
+        }
+        lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Throws away the output that hasn't been written to the console yet.
+     */
+    public void discard() {
+        drain();
+    }
+
+    public int getPendingCount() {
+        return pendingChars.get();
+    }
+
+    private String drain() {
+        StringBuilder text = new StringBuilder();
+        String piece;
+        while ((piece = pending.poll()) != null) {
+            text.append(piece);
+        }
+        if (text.length() > 0) {
+            pendingChars.addAndGet(-text.length());
+            if (blockedWriters.get() > 0) {
+                synchronized (capacityLock) {
+                    capacityLock.notifyAll();
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private void waitForCapacity() {
+        if (pendingChars.get() < backpressureLimit) {
+            return;
+        }
+        blockedWriters.incrementAndGet();
+        try {
+            synchronized (capacityLock) {
+                while (pendingChars.get() >= backpressureLimit) {
+                    scheduleFlush();
+                    capacityLock.wait(100);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            blockedWriters.decrementAndGet();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            // the timer is restarted on the event dispatch thread, a restart racing with the event the timer
+            // is still firing would otherwise be coalesced away and the output left pending
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    long delay = lastFlush + flushInterval - System.currentTimeMillis();
+                    flushTimer.setInitialDelay((int) Math.max(0, Math.min(delay, flushInterval)));
+                    flushTimer.restart();
+                }
+            });
+        }
+    }
+}
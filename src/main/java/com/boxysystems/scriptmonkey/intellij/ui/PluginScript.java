@@ -1,7 +1,9 @@
 package com.boxysystems.scriptmonkey.intellij.ui;
 
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptBudget;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.*;
 
@@ -18,22 +20,48 @@ public class PluginScript implements Serializable, Cloneable {
     INTELLIJ_STARTUP("While IntelliJ Starts"),
     PROJECT_OPEN("While Project Opens"),
     PROJECT_CLOSE("While Project Closes"),
-    INTELLIJ_SHUTDOWN("While IntelliJ Shutdowns");
+    INTELLIJ_SHUTDOWN("While IntelliJ Shutdowns"),
+    FILE_SAVED("When A File Is Saved", true),
+    VFS_CHANGE("When Files Change", true),
+    SELECTION_CHANGE("When The Selection Changes", true),
+    TIMER("Periodically", true);
 
     private String value;
+    private boolean triggered;
 
     RUN_MODE(String value) {
+      this(value, false);
+    }
+
+    RUN_MODE(String value, boolean triggered) {
       this.value = value;
+      this.triggered = triggered;
     }
 
     public String getValue() {
       return value;
     }
+
+    /**
+     * @return true if scripts of this run mode run whenever an event of the open project triggers them,
+     *         rather than once at a point of the IntelliJ or project lifecycle
+     */
+    public boolean isTriggered() {
+      return triggered;
+    }
   }
 
+  public static final int DEFAULT_DEBOUNCE = 500;
+
   private boolean enabled = false;
   private String filePath;
   private RUN_MODE runMode = RUN_MODE.PROJECT_OPEN;
+  private boolean parallelSafe = false;
+  private List<String> dependsOn = new ArrayList<String>();
+  private int timeLimit = 0;
+  private int cpuLimit = 0;
+  private String trigger;
+  private int debounce = DEFAULT_DEBOUNCE;
 
   public PluginScript() {
   }
@@ -68,6 +96,105 @@ public class PluginScript implements Serializable, Cloneable {
     return runMode;
   }
 
+  /**
+   * @return true if the script doesn't need to wait for the plugin scripts listed before it and
+   *         may run concurrently with other scripts of the same run mode
+   */
+  public boolean isParallelSafe() {
+    return parallelSafe;
+  }
+
+  public void setParallelSafe(boolean parallelSafe) {
+    this.parallelSafe = parallelSafe;
+  }
+
+  /**
+   * @return file paths (or just file names) of the plugin scripts of the same run mode
+   *         that must complete successfully before this one runs
+   */
+  public List<String> getDependsOn() {
+    return dependsOn;
+  }
+
+  public void setDependsOn(List<String> dependsOn) {
+    this.dependsOn = dependsOn != null ? dependsOn : new ArrayList<String>();
+  }
+
+  /**
+   * @return seconds the script may run before it is stopped, 0 for no limit
+   */
+  public int getTimeLimit() {
+    return timeLimit;
+  }
+
+  public void setTimeLimit(int timeLimit) {
+    this.timeLimit = Math.max(0, timeLimit);
+  }
+
+  /**
+   * @return seconds of CPU time the script may use before it is stopped, 0 for no limit
+   */
+  public int getCpuLimit() {
+    return cpuLimit;
+  }
+
+  public void setCpuLimit(int cpuLimit) {
+    this.cpuLimit = Math.max(0, cpuLimit);
+  }
+
+  /**
+   * @return for the file saved, VFS change and selection change run modes, the glob the file must match,
+   *         such as <code>src/**&#47;*.java</code>, or null for any file; for the timer run mode, the period
+   *         in seconds
+   */
+  public String getTrigger() {
+    return trigger;
+  }
+
+  public void setTrigger(String trigger) {
+    this.trigger = trigger != null && trigger.trim().length() > 0 ? trigger.trim() : null;
+  }
+
+  /**
+   * @return milliseconds without new triggering events to wait for before running the script once for
+   *         all of them
+   */
+  public int getDebounce() {
+    return debounce;
+  }
+
+  public void setDebounce(int debounce) {
+    this.debounce = Math.max(0, debounce);
+  }
+
+  /**
+   * @return the period of the timer run mode in seconds, 0 if the trigger isn't a positive number
+   */
+  public int getTimerPeriod() {
+    try {
+      return trigger != null ? Math.max(0, Integer.parseInt(trigger)) : 0;
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  public ScriptBudget createBudget() {
+    return ScriptBudget.ofSeconds(timeLimit, cpuLimit);
+  }
+
+  public boolean dependsOn(PluginScript other) {
+    if (other.getFilePath() == null) {
+      return false;
+    }
+    String otherFileName = new File(other.getFilePath()).getName();
+    for (String dependency : dependsOn) {
+      if (dependency.equals(other.getFilePath()) || dependency.equals(otherFileName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public boolean equals(Object o) {
     if (this == o) {
       return true;
@@ -87,6 +214,24 @@ public class PluginScript implements Serializable, Cloneable {
     if (runMode != that.runMode) {
       return false;
     }
+    if (parallelSafe != that.parallelSafe) {
+      return false;
+    }
+    if (!dependsOn.equals(that.dependsOn)) {
+      return false;
+    }
+    if (timeLimit != that.timeLimit) {
+      return false;
+    }
+    if (cpuLimit != that.cpuLimit) {
+      return false;
+    }
+    if (trigger != null ? !trigger.equals(that.trigger) : that.trigger != null) {
+      return false;
+    }
+    if (debounce != that.debounce) {
+      return false;
+    }
 
     return true;
   }
@@ -96,12 +241,20 @@ public class PluginScript implements Serializable, Cloneable {
     result = (enabled ? 1 : 0);
     result = 31 * result + (filePath != null ? filePath.hashCode() : 0);
     result = 31 * result + (runMode != null ? runMode.hashCode() : 0);
+    result = 31 * result + (parallelSafe ? 1 : 0);
+    result = 31 * result + dependsOn.hashCode();
+    result = 31 * result + timeLimit;
+    result = 31 * result + cpuLimit;
+    result = 31 * result + (trigger != null ? trigger.hashCode() : 0);
+    result = 31 * result + debounce;
     return result;
   }
 
     public Object clone() {
         try {
-            return super.clone();
+            PluginScript clone = (PluginScript) super.clone();
+            clone.dependsOn = new ArrayList<String>(dependsOn);
+            return clone;
         } catch (CloneNotSupportedException e) {
             //ignore this
         }
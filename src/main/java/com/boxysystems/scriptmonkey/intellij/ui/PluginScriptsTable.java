@@ -39,6 +39,12 @@ public class PluginScriptsTable extends JTable {
     this.getColumnModel().getColumn(PluginScriptsTableModel.ENABLED_COL_IDX).setPreferredWidth(60);
     this.getColumnModel().getColumn(PluginScriptsTableModel.FILEPATH_COL_IDX).setPreferredWidth(500);
     this.getColumnModel().getColumn(PluginScriptsTableModel.RUN_MODE_COL_IDX).setPreferredWidth(120);
+    this.getColumnModel().getColumn(PluginScriptsTableModel.PARALLEL_COL_IDX).setPreferredWidth(60);
+    this.getColumnModel().getColumn(PluginScriptsTableModel.DEPENDS_ON_COL_IDX).setPreferredWidth(200);
+    this.getColumnModel().getColumn(PluginScriptsTableModel.TIME_LIMIT_COL_IDX).setPreferredWidth(80);
+    this.getColumnModel().getColumn(PluginScriptsTableModel.CPU_LIMIT_COL_IDX).setPreferredWidth(80);
+    this.getColumnModel().getColumn(PluginScriptsTableModel.TRIGGER_COL_IDX).setPreferredWidth(160);
+    this.getColumnModel().getColumn(PluginScriptsTableModel.DEBOUNCE_COL_IDX).setPreferredWidth(90);
     this.setSelectionBackground(Color.lightGray);
   }
 
@@ -13,7 +13,13 @@ import java.util.*;
 public class PluginScriptsTableModel extends AbstractTableModel {
   String[] columnNames = {"Enabled ?",
     "File path",
-    "When to run ?"};
+    "When to run ?",
+    "Parallel ?",
+    "Depends on",
+    "Time limit (s)",
+    "CPU limit (s)",
+    "Trigger",
+    "Debounce (ms)"};
 
 
   private List<PluginScript> pluginScripts = new ArrayList<PluginScript>();
@@ -21,6 +27,12 @@ public class PluginScriptsTableModel extends AbstractTableModel {
   public final static int ENABLED_COL_IDX = 0;
   public final static int FILEPATH_COL_IDX = 1;
   public final static int RUN_MODE_COL_IDX = 2;
+  public final static int PARALLEL_COL_IDX = 3;
+  public final static int DEPENDS_ON_COL_IDX = 4;
+  public final static int TIME_LIMIT_COL_IDX = 5;
+  public final static int CPU_LIMIT_COL_IDX = 6;
+  public final static int TRIGGER_COL_IDX = 7;
+  public final static int DEBOUNCE_COL_IDX = 8;
 
 
   public PluginScriptsTableModel(List<PluginScript> pluginScripts) {
@@ -76,6 +88,19 @@ public class PluginScriptsTableModel extends AbstractTableModel {
         return pluginScripts.get(row).getFilePath();
       case RUN_MODE_COL_IDX:
         return pluginScripts.get(row).getRunMode().getValue();
+      case PARALLEL_COL_IDX:
+        return pluginScripts.get(row).isParallelSafe();
+      case DEPENDS_ON_COL_IDX:
+        return joinDependencies(pluginScripts.get(row).getDependsOn());
+      case TIME_LIMIT_COL_IDX:
+        return pluginScripts.get(row).getTimeLimit();
+      case CPU_LIMIT_COL_IDX:
+        return pluginScripts.get(row).getCpuLimit();
+      case TRIGGER_COL_IDX:
+        String trigger = pluginScripts.get(row).getTrigger();
+        return trigger != null ? trigger : "";
+      case DEBOUNCE_COL_IDX:
+        return pluginScripts.get(row).getDebounce();
     }
     return null;
   }
@@ -112,10 +137,58 @@ public class PluginScriptsTableModel extends AbstractTableModel {
             break;
           }
         }
+        break;
+      case PARALLEL_COL_IDX:
+        pluginScripts.get(row).setParallelSafe(Boolean.parseBoolean(value.toString()));
+        break;
+      case DEPENDS_ON_COL_IDX:
+        pluginScripts.get(row).setDependsOn(splitDependencies(value.toString()));
+        break;
+      case TIME_LIMIT_COL_IDX:
+        pluginScripts.get(row).setTimeLimit(parseLimit(value));
+        break;
+      case CPU_LIMIT_COL_IDX:
+        pluginScripts.get(row).setCpuLimit(parseLimit(value));
+        break;
+      case TRIGGER_COL_IDX:
+        pluginScripts.get(row).setTrigger(value.toString());
+        break;
+      case DEBOUNCE_COL_IDX:
+        pluginScripts.get(row).setDebounce(parseLimit(value));
+        break;
     }
     fireTableCellUpdated(row, col);
   }
 
+  private int parseLimit(Object value) {
+    try {
+      return Integer.parseInt(value.toString().trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private String joinDependencies(List<String> dependencies) {
+    StringBuilder joined = new StringBuilder();
+    for (String dependency : dependencies) {
+      if (joined.length() > 0) {
+        joined.append(", ");
+      }
+      joined.append(dependency);
+    }
+    return joined.toString();
+  }
+
+  private List<String> splitDependencies(String dependencies) {
+    List<String> split = new ArrayList<String>();
+    for (String dependency : dependencies.split(",")) {
+      if (dependency.trim().length() > 0) {
+        split.add(dependency.trim());
+      }
+    }
+    return split;
+  }
+
   public List<PluginScript> getPluginScripts() {
     return pluginScripts;
   }
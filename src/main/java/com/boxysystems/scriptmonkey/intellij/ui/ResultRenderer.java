@@ -0,0 +1,290 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes the result of a script to a console a piece at a time, so that a big result is never turned into
+ * one big string. Collections, maps, arrays, iterators and enumerations are shown a page of elements at a
+ * time, and only as far as the page goes, so lazy iterators are not run to the end. Text is written in chunks
+ * that go through the batched console output.
+ * <p/>
+ * What is left of a result after a page is handed to the {@link Output} as a {@link Page}, which the console
+ * offers as a "show more" link. Reading a result may run script code, so pages are meant to be rendered
+ * the way scripts run, see {@link ScriptCommandProcessor#renderPage}.
+ */
+public class ResultRenderer {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_MAX_CHARS = 64 * 1024;
+    public static final int CHUNK_SIZE = 8 * 1024;
+
+    static final int MAX_ELEMENT_CHARS = 1000;
+    static final int MAX_NESTED_ELEMENTS = 20;
+
+    public interface Output {
+        void print(String text);
+
+        /**
+         * Called after a page that didn't show the whole result.
+         *
+         * @param remaining what is left, e.g. "250 more elements"
+         * @param rest      renders the next page
+         */
+        void more(String remaining, Page rest);
+    }
+
+    private final int pageSize;
+    private final int maxChars;
+
+    public ResultRenderer() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * @param pageSize number of elements shown per page
+     * @param maxChars number of characters of text shown per page
+     */
+    public ResultRenderer(int pageSize, int maxChars) {
+        this.pageSize = Math.max(1, pageSize);
+        this.maxChars = Math.max(1, maxChars);
+    }
+
+    /**
+     * Writes the first page of a result, always ending with a new line.
+     */
+    public void render(Object result, Output output) {
+        firstPage(result).render(output);
+    }
+
+    /**
+     * @return the first page of a result, which reads nothing of it until it is rendered
+     */
+    public Page firstPage(final Object result) {
+        return new Page() {
+            protected void renderPage(Output output) {
+                String type = result != null ? result.getClass().getName() : null;
+                if (result instanceof CharSequence) {
+                    new TextPage((CharSequence) result, 0).render(output);
+                } else if (result instanceof Map) {
+                    Map<?, ?> map = (Map<?, ?>) result;
+                    new ElementPage(type, map.entrySet().iterator(), map.size(), 0, true).render(output);
+                } else if (result instanceof Collection) {
+                    Collection<?> collection = (Collection<?>) result;
+                    new ElementPage(type, collection.iterator(), collection.size(), 0, false).render(output);
+                } else if (result instanceof Iterable) {
+                    new ElementPage(type, ((Iterable<?>) result).iterator(), -1, 0, false).render(output);
+                } else if (result instanceof Iterator) {
+                    new ElementPage(type, (Iterator<?>) result, -1, 0, false).render(output);
+                } else if (result instanceof Enumeration) {
+                    new ElementPage(type, new EnumerationIterator((Enumeration<?>) result), -1, 0, false).render(output);
+                } else if (result != null && result.getClass().isArray()) {
+                    type = result.getClass().getComponentType().getName() + "[]";
+                    new ElementPage(type, new ArrayIterator(result), Array.getLength(result), 0, false).render(output);
+                } else {
+                    new TextPage(String.valueOf(result), 0).render(output);
+                }
+            }
+        };
+    }
+
+    /**
+     * A part of a result that wasn't shown yet. Renders only once, later calls do nothing.
+     */
+    public abstract static class Page {
+        private final AtomicBoolean rendered = new AtomicBoolean();
+
+        public void render(Output output) {
+            if (!rendered.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                renderPage(output);
+            } catch (RuntimeException e) {
+                output.print("\nError reading the result: " + e + "\n");
+            }
+        }
+
+        protected abstract void renderPage(Output output);
+    }
+
+    private class TextPage extends Page {
+        private final CharSequence text;
+        private final int offset;
+
+        private TextPage(CharSequence text, int offset) {
+            this.text = text;
+            this.offset = offset;
+        }
+
+        protected void renderPage(Output output) {
+            int length = text.length();
+            int pageEnd = length - offset > maxChars ? splitPoint(offset + maxChars) : length;
+            for (int start = offset; start < pageEnd; ) {
+                int end = pageEnd - start > CHUNK_SIZE ? splitPoint(start + CHUNK_SIZE) : pageEnd;
+                output.print(text.subSequence(start, end).toString());
+                start = end;
+            }
+            if (pageEnd == offset || text.charAt(pageEnd - 1) != '\n') {
+                output.print("\n");
+            }
+            if (pageEnd < length) {
+                output.more((length - pageEnd) + " more characters", new TextPage(text, pageEnd));
+            }
+        }
+
+        /**
+         * Keeps surrogate pairs together.
+         */
+        private int splitPoint(int index) {
+            return Character.isHighSurrogate(text.charAt(index - 1)) ? index - 1 : index;
+        }
+    }
+
+    private class ElementPage extends Page {
+        private final String type;
+        private final Iterator<?> elements;
+        private final int size;
+        private final int shown;
+        private final boolean entries;
+
+        /**
+         * @param size    number of elements, -1 if not known
+         * @param shown   number of elements shown on the pages before
+         * @param entries whether the elements are map entries
+         */
+        private ElementPage(String type, Iterator<?> elements, int size, int shown, boolean entries) {
+            this.type = type;
+            this.elements = elements;
+            this.size = size;
+            this.shown = shown;
+            this.entries = entries;
+        }
+
+        protected void renderPage(Output output) {
+            if (shown == 0) {
+                output.print(type + (size >= 0 ? " (" + size + (size == 1 ? " element)\n" : " elements)\n") : "\n"));
+            }
+            StringBuilder lines = new StringBuilder();
+            int index = shown;
+            while (index < shown + pageSize && elements.hasNext()) {
+                Object element = elements.next();
+                lines.append("  ");
+                if (entries) {
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+                    lines.append(format(entry.getKey())).append('=').append(format(entry.getValue()));
+                } else {
+                    lines.append('[').append(index).append("] ").append(format(element));
+                }
+                lines.append('\n');
+                index++;
+                if (lines.length() >= CHUNK_SIZE) {
+                    output.print(lines.toString());
+                    lines.setLength(0);
+                }
+            }
+            if (lines.length() > 0) {
+                output.print(lines.toString());
+            }
+            if (elements.hasNext()) {
+                String remaining = size >= 0 ? (size - index) + (size - index == 1 ? " more element" : " more elements") : "more elements";
+                output.more(remaining, new ElementPage(type, elements, size, index, entries));
+            }
+        }
+    }
+
+    /**
+     * Shows an element on a single line of bounded length. Big nested collections and arrays are only
+     * described, and nested iterators are left alone, they may be lazy or already used up.
+     */
+    static String format(Object element) {
+        String text;
+        if (element == null) {
+            text = "null";
+        } else if (element instanceof Collection && ((Collection<?>) element).size() > MAX_NESTED_ELEMENTS) {
+            text = element.getClass().getName() + " (" + ((Collection<?>) element).size() + " elements)";
+        } else if (element instanceof Map && ((Map<?, ?>) element).size() > MAX_NESTED_ELEMENTS) {
+            text = element.getClass().getName() + " (" + ((Map<?, ?>) element).size() + " elements)";
+        } else if (element.getClass().isArray()) {
+            text = formatArray(element);
+        } else if (element instanceof Iterator || element instanceof Enumeration
+                || (element instanceof Iterable && !(element instanceof Collection))) {
+            text = element.getClass().getName();
+        } else {
+            text = String.valueOf(element);
+        }
+        if (text.length() > MAX_ELEMENT_CHARS) {
+            text = text.substring(0, MAX_ELEMENT_CHARS) + "...";
+        }
+        return text.replace("\r\n", " ").replace('\n', ' ');
+    }
+
+    private static String formatArray(Object array) {
+        int length = Array.getLength(array);
+        String componentType = array.getClass().getComponentType().getName();
+        if (length > MAX_NESTED_ELEMENTS) {
+            return componentType + "[" + length + "]";
+        }
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            Object element = Array.get(array, i);
+            text.append(element != null && element.getClass().isArray() ? element.getClass().getComponentType().getName()
+                    + "[" + Array.getLength(element) + "]" : String.valueOf(element));
+        }
+        return text.append(']').toString();
+    }
+
+    private static class ArrayIterator implements Iterator<Object> {
+        private final Object array;
+        private final int length;
+        private int index;
+
+        private ArrayIterator(Object array) {
+            this.array = array;
+            this.length = Array.getLength(array);
+        }
+
+        public boolean hasNext() {
+            return index < length;
+        }
+
+        public Object next() {
+            if (index >= length) {
+                throw new NoSuchElementException();
+            }
+            return Array.get(array, index++);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class EnumerationIterator implements Iterator<Object> {
+        private final Enumeration<?> enumeration;
+
+        private EnumerationIterator(Enumeration<?> enumeration) {
+            this.enumeration = enumeration;
+        }
+
+        public boolean hasNext() {
+            return enumeration.hasMoreElements();
+        }
+
+        public Object next() {
+            return enumeration.nextElement();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
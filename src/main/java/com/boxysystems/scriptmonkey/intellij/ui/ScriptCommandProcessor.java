@@ -1,12 +1,17 @@
 package com.boxysystems.scriptmonkey.intellij.ui;
 
-import com.boxysystems.scriptmonkey.intellij.Constants;
-import com.boxysystems.scriptmonkey.intellij.ScriptMonkeyPluginClassLoader;
 import com.boxysystems.scriptmonkey.intellij.ScriptMonkeyApplicationComponent;
 import com.boxysystems.scriptmonkey.intellij.ScriptMonkeyPlugin;
-import com.boxysystems.scriptmonkey.intellij.action.ExtensionBasedFileFilter;
+import com.boxysystems.scriptmonkey.intellij.engine.LayeredBindings;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptCallback;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptBudget;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptEnginePool;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptExecutionScheduler;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptExecutor;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptMetrics;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptStoppedException;
+import com.boxysystems.scriptmonkey.intellij.util.ScriptMonkeyFileUtil;
 import com.intellij.openapi.application.Application;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
@@ -16,23 +21,26 @@ import org.jetbrains.annotations.NotNull;
 import javax.script.Bindings;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
-import javax.script.SimpleBindings;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by IntelliJ IDEA.
  * User: shameed
  * Date: Sep 30, 2008
  * Time: 5:10:21 PM
+ * <p/>
+ * Runs the scripts of the IDE on engines set up with the <code>application</code>, <code>project</code> and
+ * <code>plugin</code> globals. The evaluation itself is left to a {@link ScriptExecutor}, which doesn't
+ * depend on IntelliJ.
  */
 public class ScriptCommandProcessor implements ShellCommandProcessor {
 
@@ -40,21 +48,27 @@ public class ScriptCommandProcessor implements ShellCommandProcessor {
 
     private volatile Map<String , ScriptEngine> extensionEngineMap = new HashMap<String, ScriptEngine>();
     private volatile Set<ScriptEngine> engines = new HashSet<ScriptEngine>();
-
-    private CountDownLatch engineReady = new CountDownLatch(1);
+    private final List<Runnable> releaseListeners = new CopyOnWriteArrayList<Runnable>();
 
     private volatile String prompt;
 
 
     private boolean commandShell = true;
+    private String[] engineNames = {ScriptEnginePool.JAVASCRIPT, ScriptEnginePool.GROOVY};
     private Application application;
     private Project project;
     private ScriptMonkeyPlugin plugin;
-    private ScriptMonkeyPluginClassLoader pluginClassLoader;
+    private ScriptEnginePool enginePool;
+    private ScriptExecutionScheduler scheduler = ScriptMonkeyApplicationComponent.getInstance().getScheduler();
+    private ScriptExecutor executor;
+    private final Map<String, Object> globalVariables = Collections.synchronizedMap(new LinkedHashMap<String, Object>());
+    private final Map<String, Map<String, Object>> languageGlobalVariables = new HashMap<String, Map<String, Object>>();
 
     public ScriptCommandProcessor(Application application) {
         this.application = application;
-        createScriptEngines(null);
+        this.enginePool = ScriptMonkeyApplicationComponent.getInstance().getEnginePool();
+        this.executor = createExecutor();
+        createScriptEngines();
     }
 
 
@@ -62,31 +76,91 @@ public class ScriptCommandProcessor implements ShellCommandProcessor {
         this.application = application;
         this.project = project;
         this.plugin = scriptMonkeyPlugin;
-        this.pluginClassLoader = new ScriptMonkeyPluginClassLoader(plugin);
-        createScriptEngines(scriptMonkeyPlugin);
+        this.enginePool = scriptMonkeyPlugin.getEnginePool();
+        this.executor = createExecutor();
+        createScriptEngines();
+    }
+
+    /**
+     * Creates a processor with an engine for one language only, such as the one of a shell session.
+     *
+     * @param language the extension of the language, "js" or "groovy"
+     */
+    public ScriptCommandProcessor(Application application, Project project, ScriptMonkeyPlugin scriptMonkeyPlugin, String language) {
+        this.application = application;
+        this.project = project;
+        this.plugin = scriptMonkeyPlugin;
+        this.enginePool = scriptMonkeyPlugin.getEnginePool();
+        this.engineNames = new String[]{ScriptEnginePool.getEngineName(language)};
+        this.executor = createExecutor();
+        createScriptEngines();
     }
 
-    public ExecutorService processScriptFile(final File scriptFile, final ScriptProcessorCallback callback) {
-        ExecutorService executor = Executors.newFixedThreadPool(1);
-        executor.execute(new Runnable() {
+    /**
+     * When a script gets stopped, all the engines are replaced, since a script stopped halfway may leave
+     * them in an inconsistent state.
+     */
+    private ScriptExecutor createExecutor() {
+        ScriptMonkeyApplicationComponent applicationComponent = ScriptMonkeyApplicationComponent.getInstance();
+        return new ScriptExecutor(enginePool, scheduler, applicationComponent.getWatchdog(), applicationComponent.getMetrics()) {
+            protected void stopped(ScriptEngine engine) {
+                replaceEngines();
+            }
+        };
+    }
+
+    /**
+     * Runs a script file on the scheduler. Cancelling the returned future before the script started fails
+     * the callback with a {@link CancellationException}, so that the callback always gets called.
+     */
+    public Future<?> processScriptFile(final File scriptFile, final ScriptProcessorCallback callback) {
+        final long queuedAt = System.nanoTime();
+        ScriptFuture scriptFuture = new ScriptFuture(callback);
+        scriptFuture.setFuture(scheduler.submit(executor.withScriptClassLoader(scriptFuture.wrap(new Runnable() {
             public void run() {
-                evaluateScriptFile(scriptFile, callback);
+                evaluateScriptFile(scriptFile, queuedAt, callback);
             }
-        });
-        executor.shutdown();
-        return executor;
+        })), ScriptExecutionScheduler.Priority.LIFECYCLE, getOwner()));
+        return scriptFuture;
     }
 
     public void processScriptFileSynchronously(final File scriptFile, final ScriptProcessorCallback callback) {
-        ExecutorService executor = processScriptFile(scriptFile, callback);
+        Future<?> future = processScriptFile(scriptFile, callback);
         try {
-            executor.awaitTermination(1, TimeUnit.MINUTES);
+            future.get(1, TimeUnit.MINUTES);
         } catch (InterruptedException e) {
             logger.error("Error while processing script file synchronously", e);
+        } catch (ExecutionException e) {
+            logger.error("Error while processing script file synchronously", e);
+        } catch (TimeoutException e) {
+            logger.warn("Script file '" + scriptFile + "' is still running after a minute, not waiting for it any longer");
         }
     }
 
-    private void evaluateScriptFile(File scriptFile, ScriptProcessorCallback callback) {
+    private Object getOwner() {
+        return project != null ? project : application;
+    }
+
+    /**
+     * Sets the wall clock and CPU time the scripts of this processor may use.
+     */
+    public void setBudget(ScriptBudget budget) {
+        executor.setBudget(budget);
+    }
+
+    public ScriptBudget getBudget() {
+        return executor.getBudget();
+    }
+
+    /**
+     * Stops the scripts this processor is running. Scripts that don't react to being interrupted are
+     * stopped forcibly after the watchdog's grace period.
+     */
+    public void stopScripts() {
+        executor.stopScripts();
+    }
+
+    private void evaluateScriptFile(final File scriptFile, long queuedAt, ScriptProcessorCallback callback) {
         try {
             Object result = null;
             if (scriptFile != null) {
@@ -94,7 +168,8 @@ public class ScriptCommandProcessor implements ShellCommandProcessor {
                 String language = guessLanguage(scriptFile);
                 ScriptEngine engine = getEngine(language);
                 initScriptEngine(engine);
-                result = engine.eval(new FileReader(scriptFile));
+                ScriptContext context = enginePool.createRunContext(engine);
+                result = executor.evaluateFile(engine, context, scriptFile, ScriptMonkeyFileUtil.loadFile(scriptFile), queuedAt);
             }
             callback.success(result);
         } catch (Throwable e) {
@@ -120,30 +195,38 @@ public class ScriptCommandProcessor implements ShellCommandProcessor {
     }
 
     public ScriptRunningTask processScript(final String scriptContent, String language, final ScriptProcessorCallback callback) {
+        return processScript(scriptContent, null, language, callback);
+    }
+
+    /**
+     * @param scriptFile the file the script content belongs to, used to cache the compiled script
+     */
+    public ScriptRunningTask processScript(final String scriptContent, File scriptFile, String language, final ScriptProcessorCallback callback) {
         if (project != null) {
-            ScriptRunningTask task = new ScriptRunningTask("Running script...", scriptContent, language,  callback);
+            ScriptRunningTask task = new ScriptRunningTask("Running script...", scriptContent, scriptFile, language,  callback);
             task.queue();
             return task;
         }
         return null;
     }
 
-    private void initScriptingEngineAndRunGlobalScripts() {
+    /**
+     * The global scripts don't need to run here, the pool's engines evaluated them when they were created.
+     */
+    private void initScriptEngines() {
 
         for (ScriptEngine engine : engines)
         {
             initScriptEngine(engine);
         }
-        //runGlobalScripts();
     }
 
+    /**
+     * Sets the engines up for commands, on the calling thread. This only puts the globals in their bindings,
+     * so it doesn't wait for a thread of the scheduler, which may be the calling thread itself.
+     */
     public void processCommandLine() {
-        new Thread(new Runnable() {
-            public void run() {
-                initScriptingEngineAndRunGlobalScripts();
-                engineReady.countDown();
-            }
-        }).start();
+        initScriptEngines();
     }
 
     public boolean isCommandShell() {
@@ -154,88 +237,177 @@ public class ScriptCommandProcessor implements ShellCommandProcessor {
         this.commandShell = commandShell;
     }
 
-    public String executeCommand(String cmd, String language) {
-        String res;
+    /**
+     * Evaluates a command like {@link #evaluateCommand(String, String)}, but returns the message of an error
+     * instead of throwing it.
+     *
+     * @return what the command evaluated to, left as it is for the console to render, or the error message
+     */
+    public Object executeCommand(final String cmd, final String language) {
+        Object res;
         try {
-            engineReady.await();
-            Object tmp = getEngine(language).eval(cmd);
-            res = (tmp == null) ? null : tmp.toString();
-        } catch (InterruptedException ie) {
-            res = ie.getMessage();
+            res = evaluateCommand(cmd, language);
         } catch (ScriptException se) {
             res = se.getMessage();
+        } catch (ScriptStoppedException se) {
+            res = se.getMessage();
         }
         return res;
     }
 
-    private void createScriptEngines(ScriptMonkeyPlugin scriptMonkeyPlugin) {
-        ScriptEngineManager manager;
-        if (scriptMonkeyPlugin != null && pluginClassLoader != null) {
-//            ScriptMonkeyPluginClassLoader augmentedClassLoader = pluginClassLoader.getAugmentedClassLoader();
-//            if (augmentedClassLoader != null) {
-//                Thread.currentThread().setContextClassLoader(augmentedClassLoader);
-//            }
-            manager = createScriptEngineManager();
-        } else {
-            manager = createScriptEngineManager();
+    /**
+     * Evaluates a command on the calling thread, in the context of the engine, where the variables it
+     * defines stay for the next commands.
+     *
+     * @return what the command evaluated to
+     */
+    public Object evaluateCommand(final String cmd, final String language) throws ScriptException {
+        long queuedAt = System.nanoTime();
+        Thread currentThread = Thread.currentThread();
+        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(enginePool.getClassLoader());
+        try {
+            final ScriptEngine engine = getEngine(language);
+            return executor.evaluate(engine, engine.getContext(), cmd, language + " shell", queuedAt, new ScriptExecutor.Evaluation<ScriptException>() {
+                public Object evaluate(ScriptMetrics.Measurement measurement) throws ScriptException {
+                    return engine.eval(cmd);
+                }
+            });
+        } finally {
+            currentThread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    /**
+     * Renders a page of what a command or script evaluated to, on the calling thread, the way commands are
+     * evaluated: in the context of the engine that produced it, watched by the watchdog, within the budget
+     * and measured. Reading a result may run script code, such as a lazy iterator or a script object's
+     * <code>toString</code>.
+     *
+     * @return false if the engine was released or replaced since, the page can't be rendered then
+     */
+    public boolean renderPage(final ScriptEngine engine, final ResultRenderer.Page page,
+                              final ResultRenderer.Output output) {
+        if (!hasEngine(engine)) {
+            return false;
+        }
+        long queuedAt = System.nanoTime();
+        Thread currentThread = Thread.currentThread();
+        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(enginePool.getClassLoader());
+        try {
+            executor.evaluate(engine, engine.getContext(), "result", "result pages", queuedAt, new ScriptExecutor.Evaluation<RuntimeException>() {
+                public Object evaluate(ScriptMetrics.Measurement measurement) {
+                    page.render(output);
+                    return null;
+                }
+            });
+            return true;
+        } finally {
+            currentThread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    public boolean hasEngine(ScriptEngine engine) {
+        return engines.contains(engine);
+    }
+
+    /**
+     * @param listener run when engines of the processor are released, or replaced after a script was stopped
+     */
+    public void addReleaseListener(Runnable listener) {
+        releaseListeners.add(listener);
+    }
+
+    private void fireReleased() {
+        for (Runnable listener : releaseListeners) {
+            listener.run();
         }
+    }
 
-        createAndRegisterEngine(manager, "JavaScript");
-        createAndRegisterEngine(manager, "groovy");
+    private void createScriptEngines() {
+        for (String engineName : engineNames) {
+            acquireAndRegisterEngine(engineName);
+        }
 
         //String extension = engine.getFactory().getExtensions().get(0);
         prompt = "js" + ">";
     }
 
-    private ScriptEngine createAndRegisterEngine(ScriptEngineManager manager, String language)
+    private ScriptEngine acquireAndRegisterEngine(String language)
     {
-        ScriptEngine engine = manager.getEngineByName(language);
-        if (engine == null) {
-            throw new RuntimeException("cannot load " + language + " engine");
-        }
+        ScriptEngine engine = enginePool.acquire(language);
         List<String> extensions = engine.getFactory().getExtensions();
         engines.add(engine);
         for (String extension : extensions)
         {
             extensionEngineMap.put(extension.toLowerCase(), engine);
         }
-        engine.setBindings(createGlobalBindings(), ScriptContext.ENGINE_SCOPE);
         return engine;
     }
 
-    private ScriptEngineManager createScriptEngineManager() {
-        return new ScriptEngineManager();
+    /**
+     * Throws the engines away and starts over with fresh ones, with the same global variables.
+     */
+    private synchronized void replaceEngines() {
+        for (ScriptEngine engine : engines) {
+            enginePool.discard(engine);
+        }
+        engines = new HashSet<ScriptEngine>();
+        extensionEngineMap = new HashMap<String, ScriptEngine>();
+        createScriptEngines();
+        for (ScriptEngine engine : engines) {
+            initScriptEngine(engine);
+        }
+        synchronized (globalVariables) {
+            for (Map.Entry<String, Object> variable : globalVariables.entrySet()) {
+                addGlobalVariable(variable.getKey(), variable.getValue());
+            }
+        }
+        synchronized (languageGlobalVariables) {
+            for (Map.Entry<String, Map<String, Object>> languageVariables : languageGlobalVariables.entrySet()) {
+                for (Map.Entry<String, Object> variable : languageVariables.getValue().entrySet()) {
+                    addGlobalVariable(getEngine(languageVariables.getKey()), variable.getKey(), variable.getValue());
+                }
+            }
+        }
+        logger.info("Replaced the script engines of a stopped script");
+        fireReleased();
     }
 
-    private void runGlobalScripts() {
-        try {
-            ScriptMonkeyApplicationComponent applicationComponent = ApplicationManager.getApplication().getComponent(ScriptMonkeyApplicationComponent.class);
-            File jsFolder = new File(applicationComponent.getSettings().getHomeFolder(), Constants.JS_FOLDER_NAME);
-            File globalScripts = new File(jsFolder, "global");
-
-            if (globalScripts.exists()) {
-                File[] jsFiles = globalScripts.listFiles(new ExtensionBasedFileFilter("js", "groovy"));
-                for (File scriptFile : jsFiles) {
-                    try {
-                        logger.info("Evaluating script '" + scriptFile + "' ...");
-                        getEngine(guessLanguage(scriptFile)).eval(new FileReader(scriptFile));
-                        logger.info("Script successfully processed !");
-                    } catch (ScriptException e) {
-                        logger.error("Error executing script '" + scriptFile + "'", e);
-                    } catch (FileNotFoundException e) {
-                        logger.error("Unable to find script file '" + scriptFile + "' !");
-                    }
-                }
+    /**
+     * Copies the variables scripts defined in the engines of another processor into the engines of this
+     * one, for the languages both have. Only plain values are copied, see
+     * {@link LayeredBindings#copyPlainValuesFrom(LayeredBindings)}, and they are shared, not copied.
+     *
+     * @return the names of the variables that were left out, such as functions
+     */
+    public List<String> copyVariablesFrom(ScriptCommandProcessor source) {
+        List<String> skipped = new ArrayList<String>();
+        for (Map.Entry<String, ScriptEngine> entry : extensionEngineMap.entrySet()) {
+            ScriptEngine sourceEngine = source.extensionEngineMap.get(entry.getKey());
+            if (sourceEngine == null) {
+                continue;
+            }
+            Bindings sourceBindings = sourceEngine.getBindings(ScriptContext.ENGINE_SCOPE);
+            Bindings bindings = entry.getValue().getBindings(ScriptContext.ENGINE_SCOPE);
+            if (sourceBindings instanceof LayeredBindings && bindings instanceof LayeredBindings) {
+                skipped.addAll(((LayeredBindings) bindings).copyPlainValuesFrom((LayeredBindings) sourceBindings));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        return skipped;
     }
 
-    private Bindings createGlobalBindings() {
-        Map<String, Object> map =
-                Collections.synchronizedMap(new HashMap<String, Object>());
-        return new SimpleBindings(map);
+    /**
+     * Hands the engines back to the pool. The processor must not be used afterwards.
+     */
+    public void releaseEngines() {
+        for (ScriptEngine engine : engines) {
+            enginePool.release(engine);
+        }
+        engines = new HashSet<ScriptEngine>();
+        extensionEngineMap = new HashMap<String, ScriptEngine>();
+        fireReleased();
     }
 
     private void initScriptEngine(ScriptEngine engine)
@@ -245,13 +417,23 @@ public class ScriptCommandProcessor implements ShellCommandProcessor {
         addGlobalVariable(engine, "application", application);
         addGlobalVariable(engine, "project", project);
         addGlobalVariable(engine, "plugin", plugin);
+        addGlobalVariable(engine, "scheduler", plugin != null ? plugin.getTimerService() : ScriptMonkeyApplicationComponent.getInstance().getTimerService());
     }
 
     public void addGlobalVariable(String language, String name, Object globalObject) {
+        synchronized (languageGlobalVariables) {
+            Map<String, Object> variables = languageGlobalVariables.get(language);
+            if (variables == null) {
+                variables = new LinkedHashMap<String, Object>();
+                languageGlobalVariables.put(language, variables);
+            }
+            variables.put(name, globalObject);
+        }
         addGlobalVariable(getEngine(language), name, globalObject);
     }
 
     public void addGlobalVariable(String name, Object globalObject) {
+        globalVariables.put(name, globalObject);
         for (ScriptEngine engine : engines)
         {
             addGlobalVariable(engine, name, globalObject);
@@ -260,45 +442,70 @@ public class ScriptCommandProcessor implements ShellCommandProcessor {
     }
 
 
+    /**
+     * Puts the variable in the shared layer of the engine's bindings, where the contexts of later runs
+     * pick it up from.
+     */
     private void addGlobalVariable(ScriptEngine engine, String name, Object globalObject) {
         if (name != null && globalObject != null) {
-            engine.put(name, globalObject);
+            Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+            if (bindings instanceof LayeredBindings) {
+                ((LayeredBindings) bindings).putShared(name, globalObject);
+            } else {
+                engine.put(name, globalObject);
+            }
         }
     }
 
     public class ScriptRunningTask extends Task.Backgroundable {
         private ScriptProcessorCallback callback;
         private String scriptContent;
-        private ExecutorService executor;
+        private File scriptFile;
+        private volatile Future<?> future;
         private String language;
 
-        public ScriptRunningTask(@NotNull String title, String scriptContent, String language, ScriptProcessorCallback callback) {
+        public ScriptRunningTask(@NotNull String title, String scriptContent, File scriptFile, String language, ScriptProcessorCallback callback) {
             super(project, title, false);
             this.scriptContent = scriptContent;
+            this.scriptFile = scriptFile;
             this.callback = callback;
             this.setCancelText("Stop running scripts");
             this.language = language;
         }
 
         public void cancel() {
-            executor.shutdownNow();
+            stopScripts();
+            if (future != null) {
+                future.cancel(true);
+            }
         }
 
         public boolean isRunning() {
-            return !executor.isTerminated();
+            return future != null && !future.isDone();
         }
 
+        public Future<?> getFuture() {
+            return future;
+        }
 
         public void run(ProgressIndicator indicator) {
-            executor = Executors.newFixedThreadPool(1);
-            executor.execute(new Runnable() {
+            final long queuedAt = System.nanoTime();
+            ScriptFuture scriptFuture = new ScriptFuture(callback);
+            scriptFuture.setFuture(scheduler.submit(executor.withScriptClassLoader(scriptFuture.wrap(new Runnable() {
                 public void run() {
-                    initScriptingEngineAndRunGlobalScripts();
+                    initScriptEngines();
                     try {
                         Object result = null;
                         if (scriptContent != null) {
                             logger.info("Evaluating script ...");
-                            result = getEngine(language).eval(scriptContent);
+                            final ScriptEngine engine = getEngine(language);
+                            final ScriptContext context = enginePool.createRunContext(engine);
+                            result = executor.evaluate(engine, context, scriptFile != null ? scriptFile.getName() : "script",
+                                    scriptFile != null ? scriptFile.getPath() : language + " script", queuedAt, new ScriptExecutor.Evaluation<ScriptException>() {
+                                public Object evaluate(ScriptMetrics.Measurement measurement) throws ScriptException {
+                                    return executor.evaluateCompiled(engine, context, scriptFile, scriptContent, measurement);
+                                }
+                            });
                         }
                         callback.success(result);
                     } catch (Throwable e) {
@@ -306,7 +513,61 @@ public class ScriptCommandProcessor implements ShellCommandProcessor {
                     }
 
                 }
-            });
+            })), ScriptExecutionScheduler.Priority.EDITOR, getOwner()));
+            future = scriptFuture;
+        }
+    }
+
+    /**
+     * Future of a script run that fails the callback with a {@link CancellationException} when it is cancelled
+     * before the script started. Whoever comes first, the script or the cancellation, decides.
+     */
+    private static class ScriptFuture implements Future<Object> {
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final ScriptCallback callback;
+        private volatile Future<?> future;
+
+        private ScriptFuture(ScriptCallback callback) {
+            this.callback = callback;
+        }
+
+        private Runnable wrap(final Runnable script) {
+            return new Runnable() {
+                public void run() {
+                    if (started.compareAndSet(false, true)) {
+                        script.run();
+                    }
+                }
+            };
+        }
+
+        private void setFuture(Future<?> future) {
+            this.future = future;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (started.compareAndSet(false, true)) {
+                future.cancel(false);
+                callback.failure(new CancellationException("Script cancelled before it started"));
+                return true;
+            }
+            return future.cancel(mayInterruptIfRunning);
+        }
+
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        public Object get() throws InterruptedException, ExecutionException {
+            return future.get();
+        }
+
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return future.get(timeout, unit);
         }
     }
 }
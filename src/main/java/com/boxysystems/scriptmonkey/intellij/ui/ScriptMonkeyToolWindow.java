@@ -9,6 +9,8 @@ import com.intellij.ui.content.Content;
 import com.intellij.ui.content.ContentFactory;
 import com.intellij.ui.content.ContentManager;
 
+import javax.swing.*;
+
 /**
  * Created by IntelliJ IDEA.
  * User: siddique
@@ -31,12 +33,14 @@ public class ScriptMonkeyToolWindow {
 
 
     public Content addContentPanel(String contentName, ScriptShellPanel scriptShellPanel) {
+        return addContentPanel(contentName, new ScriptShellTabContent(scriptShellPanel));
+    }
 
-        ScriptShellTabContent scriptShellTabContent = new ScriptShellTabContent(scriptShellPanel);
+    public Content addContentPanel(String contentName, JComponent component) {
 
         ContentFactory contentFactory = ContentFactory.SERVICE.getInstance();
 
-        Content content = contentFactory.createContent(scriptShellTabContent, contentName, false);
+        Content content = contentFactory.createContent(component, contentName, false);
         toolWindow.getContentManager().addContent(content);
         return content;
     }
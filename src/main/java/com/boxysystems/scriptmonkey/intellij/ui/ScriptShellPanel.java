@@ -5,25 +5,44 @@ import com.boxysystems.scriptmonkey.intellij.ScriptMonkeySettings;
 import com.boxysystems.scriptmonkey.intellij.action.RerunScriptAction;
 import com.boxysystems.scriptmonkey.intellij.action.StopScriptAction;
 import com.boxysystems.scriptmonkey.intellij.action.CloseScriptConsoleAction;
+import com.boxysystems.scriptmonkey.intellij.util.ConsoleLogFile;
 import com.boxysystems.scriptmonkey.intellij.util.LoggingUtil;
 import com.intellij.openapi.actionSystem.ActionManager;
 import com.intellij.openapi.actionSystem.ActionToolbar;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.DefaultActionGroup;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.ui.components.JBScrollPane;
+import org.apache.log4j.Logger;
 
+import javax.script.ScriptEngine;
 import javax.swing.*;
 import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
+import javax.swing.text.Position;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionAdapter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 
 public class ScriptShellPanel extends JPanel {
 
+    private static final Logger logger = Logger.getLogger(ScriptShellPanel.class);
+
+    private static final long RELEASE_TIMEOUT = 60;
+
     private ShellCommandProcessor shellCommandProcessor;
     private AnAction[] actions;
     private JEditorPane editor;
@@ -31,6 +50,34 @@ public class ScriptShellPanel extends JPanel {
     private final ExecutorService commandExecutor =
             Executors.newSingleThreadExecutor();
 
+    private final ConsoleOutputBuffer outputBuffer = new ConsoleOutputBuffer(new ConsoleOutputBuffer.Output() {
+        public void write(String text) {
+            insertOutput(text);
+        }
+    });
+
+    private final ResultRenderer resultRenderer = new ResultRenderer();
+    private final List<MoreLink> moreLinks = new ArrayList<MoreLink>();
+    private final Runnable dropReleasedLinks = new Runnable() {
+        public void run() {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    for (int i = moreLinks.size() - 1; i >= 0; i--) {
+                        if (!moreLinks.get(i).hasEngine()) {
+                            moreLinks.remove(i);
+                        }
+                    }
+                }
+            });
+        }
+    };
+    private ShellCommandProcessor heldProcessor;
+
+    private JScrollPane scroller;
+    private ConsoleLogFile logFile;
+    private ConsoleLogListModel logModel;
+    private JList logView;
+
     private boolean updating;
     private String language;
 
@@ -39,6 +86,7 @@ public class ScriptShellPanel extends JPanel {
         this.shellCommandProcessor = cmdProc;
         this.actions = actions;
         this.language = language;
+        cmdProc.addReleaseListener(dropReleasedLinks);
         setLayout(new BorderLayout());
 
         final DefaultActionGroup toolbarGroup = new DefaultActionGroup();
@@ -61,7 +109,7 @@ public class ScriptShellPanel extends JPanel {
             editor.setEditable(false);
         }
 
-        JScrollPane scroller = new JBScrollPane();
+        scroller = new JBScrollPane();
         scroller.getViewport().add(editor);
         add(scroller, BorderLayout.CENTER);
 
@@ -77,6 +125,24 @@ public class ScriptShellPanel extends JPanel {
             }
         });
 
+        editor.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                MoreLink link = findMoreLink(e.getPoint());
+                if (link != null) {
+                    showMore(link);
+                }
+            }
+        });
+
+        editor.addMouseMotionListener(new MouseMotionAdapter() {
+            public void mouseMoved(MouseEvent e) {
+                int cursor = findMoreLink(e.getPoint()) != null ? Cursor.HAND_CURSOR : Cursor.TEXT_CURSOR;
+                if (editor.getCursor().getType() != cursor) {
+                    editor.setCursor(Cursor.getPredefinedCursor(cursor));
+                }
+            }
+        });
+
         if (shellCommandProcessor.isCommandShell()) {
             clear();
         }
@@ -91,6 +157,14 @@ public class ScriptShellPanel extends JPanel {
     }
 
     public void clear(boolean prompt) {
+        outputBuffer.discard();
+        moreLinks.clear();
+        if (logFile != null) {
+            logFile.clear();
+            if (logModel != null) {
+                logModel.refresh();
+            }
+        }
         CommandShellDocument d = (CommandShellDocument) editor.getDocument();
         d.clear();
         if (prompt) {
@@ -101,10 +175,12 @@ public class ScriptShellPanel extends JPanel {
     }
 
     public void setMark() {
+        flushOutput();
         ((CommandShellDocument) editor.getDocument()).setMark();
     }
 
     public String getMarkedText() {
+        flushOutput();
         try {
             String s = ((CommandShellDocument) editor.getDocument()).getMarkedText();
             int i = s.length();
@@ -125,12 +201,7 @@ public class ScriptShellPanel extends JPanel {
 
     public void print(String s)
     {
-        Document d = editor.getDocument();
-        try {
-            d.insertString(d.getLength(), s, null);
-        } catch (BadLocationException e) {
-            e.printStackTrace();
-        }
+        outputBuffer.append(s);
     }
 
     public void println(Object s)
@@ -140,19 +211,228 @@ public class ScriptShellPanel extends JPanel {
 
     public void println(String s)
     {
-        s = LoggingUtil.withDate(s);
+        outputBuffer.append(LoggingUtil.withDate(s) + "\n");
+    }
+
+    /**
+     * Writes the result of a command of this shell, see {@link #printResult(Object, ShellCommandProcessor, String)}.
+     */
+    public void printResult(Object result) {
+        printResult(result, shellCommandProcessor, language);
+    }
+
+    /**
+     * Writes the result of a script or a command. Collections, arrays, maps and iterators are shown a page
+     * at a time, followed by a "show more" link to the next page, and long text goes out in chunks.
+     * <p/>
+     * Reading the result may run script code, so every page is rendered by the processor that ran the script,
+     * in the context of its engine, and the links are dropped once that engine is released. This is meant to
+     * be called off the event dispatch thread.
+     */
+    public void printResult(Object result, ShellCommandProcessor processor, String language) {
+        ScriptEngine engine;
+        try {
+            engine = processor.getEngine(language);
+        } catch (IllegalArgumentException e) {
+            print(result + "\n");
+            return;
+        }
+        renderPage(resultRenderer.firstPage(result), processor, engine);
+    }
+
+    private void renderPage(ResultRenderer.Page page, ShellCommandProcessor processor, ScriptEngine engine) {
+        try {
+            if (!processor.renderPage(engine, page, new ResultOutput(processor, engine))) {
+                print("[the rest of the result is gone, its script engine was released]\n");
+            }
+        } catch (RuntimeException e) {
+            print("\nError reading the result: " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Keeps the engines of the last script run, so that the rest of its result can still be shown, until
+     * the next run finishes or the console is closed. The engines of the run before are handed back to the
+     * pool then, on the command thread, so not while a page of their result is being rendered.
+     */
+    public void holdEnginesOf(ShellCommandProcessor processor) {
+        ShellCommandProcessor previous = heldProcessor;
+        heldProcessor = processor;
+        processor.addReleaseListener(dropReleasedLinks);
+        if (previous != null && previous != processor) {
+            releaseEngines(previous);
+        }
+    }
+
+    private void releaseEngines(final ShellCommandProcessor processor) {
+        try {
+            commandExecutor.execute(new Runnable() {
+                public void run() {
+                    processor.releaseEngines();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            releaseEnginesWhenDone(processor);
+        }
+    }
+
+    /**
+     * Hands the engines of a processor back to the pool once the command thread of the disposed panel has
+     * ended, so that the engines aren't given to someone else while a command or a page still uses them.
+     */
+    public void releaseEnginesWhenDone(final ShellCommandProcessor processor) {
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            public void run() {
+                try {
+                    if (commandExecutor.awaitTermination(RELEASE_TIMEOUT, TimeUnit.SECONDS)) {
+                        processor.releaseEngines();
+                    } else {
+                        logger.warn("A command of the " + language + " console is still running, not handing its engine back to the pool");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    /**
+     * Ends the output with a link that renders the rest of a result when clicked. The output log view
+     * can't show links, so it only mentions what was left out.
+     */
+    private void addMoreLink(String remaining, ResultRenderer.Page rest, ShellCommandProcessor processor, ScriptEngine engine) {
+        outputBuffer.flush();
+        if (logView != null) {
+            insertOutput("[" + remaining + " not shown]\n");
+            return;
+        }
+        String text = "[show more: " + remaining + "]";
+        insertOutput(text + "\n");
         Document d = editor.getDocument();
+        int start = d.getLength() - text.length() - 1;
         try {
-            d.insertString(d.getLength(), s + "\n", null);
+            if (start >= 0 && d.getText(start, text.length()).equals(text)) {
+                moreLinks.add(new MoreLink(d.createPosition(start), d.createPosition(start + text.length()), rest, processor, engine));
+            }
+        } catch (BadLocationException e) {
+            logger.error("Error adding a link to the rest of a result", e);
+        }
+        removeTrimmedLinks();
+    }
+
+    private MoreLink findMoreLink(Point point) {
+        if (moreLinks.isEmpty()) {
+            return null;
+        }
+        int offset = editor.viewToModel(point);
+        for (MoreLink link : moreLinks) {
+            if (link.contains(offset)) {
+                return link;
+            }
+        }
+        return null;
+    }
+
+    private void removeTrimmedLinks() {
+        for (int i = moreLinks.size() - 1; i >= 0; i--) {
+            if (!moreLinks.get(i).isValid()) {
+                moreLinks.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Renders the next page of a result on the command thread, at the end of the console. The command shell
+     * ignores links while a command runs, and shows a new prompt after the page.
+     */
+    private void showMore(final MoreLink link) {
+        final boolean commandShell = isCommandShell();
+        if (commandShell && updating) {
+            return;
+        }
+        moreLinks.remove(link);
+        if (commandShell) {
+            beginUpdate();
+            print("\n");
+        }
+        commandExecutor.execute(new Runnable() {
+            public void run() {
+                renderPage(link.rest, link.processor, link.engine);
+                if (commandShell) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            printPrompt();
+                            setMark();
+                            endUpdate();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private static void runOnEventDispatchThread(Runnable runnable) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            runnable.run();
+            return;
+        }
+        try {
+            SwingUtilities.invokeAndWait(runnable);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (InvocationTargetException e) {
+            logger.error("Error writing to the console", e.getCause());
+        }
+    }
+
+    /**
+     * Writes output that was batched up by the output buffer, without triggering command execution.
+     */
+    private void insertOutput(String text) {
+        if (logFile != null) {
+            try {
+                logFile.append(text);
+            } catch (IOException e) {
+                logger.warn("Could not write console output to '" + logFile.getFile() + "', not logging it any longer", e);
+                configureOutputLog(false);
+            }
+        }
+        if (logView != null) {
+            boolean atBottom = logView.getLastVisibleIndex() >= logModel.getSize() - 1;
+            logModel.refresh();
+            if (atBottom && logModel.getSize() > 0) {
+                logView.ensureIndexIsVisible(logModel.getSize() - 1);
+            }
+            return;
+        }
+        boolean wasUpdating = updating;
+        updating = true;
+        CommandShellDocument d = (CommandShellDocument) editor.getDocument();
+        try {
+            d.insertString(d.getLength(), text, null);
+            if (wasUpdating || !isCommandShell()) {
+                // no command is being typed, the output can be trimmed from the scrollback later
+                d.setMark();
+            }
+            editor.setCaretPosition(d.getLength());
         } catch (BadLocationException e) {
             e.printStackTrace();
+        } finally {
+            updating = wasUpdating;
         }
+    }
 
+    private void flushOutput() {
+        if (SwingUtilities.isEventDispatchThread()) {
+            outputBuffer.flush();
+        }
     }
 
-    //TODO: Need to implement this
+    /**
+     * Stops the command the shell is running, for the stop action of the shell's toolbar.
+     */
     public void stopScript() {
-        commandExecutor.shutdownNow();
+        shellCommandProcessor.stopScripts();
         println("Script cancelled!");
     }
 
@@ -176,11 +456,15 @@ public class ScriptShellPanel extends JPanel {
         return language +"> ";
     }
 
+    public boolean isCommandShell() {
+        return shellCommandProcessor.isCommandShell();
+    }
+
     public boolean isUpdating() {
         return updating;
     }
 
-    public String executeCommand(String cmd) {
+    public Object executeCommand(String cmd) {
         return shellCommandProcessor.executeCommand(cmd, language);
     }
 
@@ -195,6 +479,87 @@ public class ScriptShellPanel extends JPanel {
     public void applySettings(ScriptMonkeySettings settings) {
         editor.setBackground(settings.getCommandShellBackgroundColor());
         editor.setForeground(settings.getCommandShellForegroundColor());
+        outputBuffer.configure(settings.getConsoleFlushInterval(), settings.getConsoleBackpressureLimit());
+        CommandShellDocument document = (CommandShellDocument) editor.getDocument();
+        if (settings.isConsoleSaveTrimmedOutput() && document.getTrimmedHistoryFile() == null) {
+            document.setTrimmedHistoryFile(createTrimmedHistoryFile());
+        } else if (!settings.isConsoleSaveTrimmedOutput()) {
+            document.setTrimmedHistoryFile(null);
+        }
+        document.setScrollbackLimits(settings.getConsoleMaxChars(), settings.getConsoleMaxLines());
+        configureOutputLog(settings.isConsoleLogToFile());
+        shellCommandProcessor.setBudget(settings.createConsoleBudget());
+        if (logView != null) {
+            logView.setBackground(settings.getCommandShellBackgroundColor());
+            logView.setForeground(settings.getCommandShellForegroundColor());
+        }
+    }
+
+    /**
+     * Turns the output log on or off. Script consoles show the logged output through a paged view of
+     * the log file instead of the document; the command shell keeps its editable document.
+     */
+    private void configureOutputLog(boolean enabled) {
+        if (enabled && logFile == null) {
+            try {
+                logFile = ConsoleLogFile.create(Constants.TEMP_FOLDER, language + "-output");
+            } catch (IOException e) {
+                logger.warn("Could not create the console output log", e);
+                return;
+            }
+            logger.info("Logging the output of the " + language + " console to '" + logFile.getFile() + "'");
+            if (!shellCommandProcessor.isCommandShell()) {
+                logModel = new ConsoleLogListModel(logFile);
+                logView = createLogView(logModel);
+                scroller.setViewportView(logView);
+            }
+        } else if (!enabled && logFile != null) {
+            if (logView != null) {
+                scroller.setViewportView(editor);
+                logView = null;
+                logModel = null;
+            }
+            logFile.close();
+            logFile = null;
+        }
+    }
+
+    private JList createLogView(ConsoleLogListModel model) {
+        JList list = new JList(model);
+        list.setFont(editor.getFont());
+        list.setBackground(editor.getBackground());
+        list.setForeground(editor.getForeground());
+        FontMetrics metrics = list.getFontMetrics(list.getFont());
+        list.setFixedCellHeight(metrics.getHeight());
+        list.setFixedCellWidth(metrics.charWidth('m') * 250);
+        return list;
+    }
+
+    /**
+     * Stops the command thread and drops the results. The engines the console holds on to for showing
+     * results are handed back to the pool once the command thread has ended.
+     */
+    public void dispose() {
+        configureOutputLog(false);
+        commandExecutor.shutdownNow();
+        moreLinks.clear();
+        if (heldProcessor != null) {
+            releaseEnginesWhenDone(heldProcessor);
+            heldProcessor = null;
+        }
+    }
+
+    private File createTrimmedHistoryFile() {
+        try {
+            Constants.TEMP_FOLDER.mkdirs();
+            File file = File.createTempFile(language + "-console", ".log", Constants.TEMP_FOLDER);
+            file.deleteOnExit();
+            logger.info("Output trimmed from the " + language + " console is saved to '" + file + "'");
+            return file;
+        } catch (IOException e) {
+            logger.warn("Could not create a file for trimmed console output", e);
+            return null;
+        }
     }
 
     public void toggleActions(){
@@ -228,4 +593,65 @@ public class ScriptShellPanel extends JPanel {
         return null;
     }
 
+    /**
+     * Writes the pages of one result, and remembers where the rest of it has to be rendered.
+     */
+    private class ResultOutput implements ResultRenderer.Output {
+        private final ShellCommandProcessor processor;
+        private final ScriptEngine engine;
+
+        private ResultOutput(ShellCommandProcessor processor, ScriptEngine engine) {
+            this.processor = processor;
+            this.engine = engine;
+        }
+
+        public void print(String text) {
+            ScriptShellPanel.this.print(text);
+        }
+
+        public void more(final String remaining, final ResultRenderer.Page rest) {
+            runOnEventDispatchThread(new Runnable() {
+                public void run() {
+                    addMoreLink(remaining, rest, processor, engine);
+                }
+            });
+        }
+    }
+
+    private static class MoreLink {
+        private final Position start;
+        private final Position end;
+        private final int length;
+        private final ResultRenderer.Page rest;
+        private final ShellCommandProcessor processor;
+        private final ScriptEngine engine;
+
+        private MoreLink(Position start, Position end, ResultRenderer.Page rest, ShellCommandProcessor processor, ScriptEngine engine) {
+            this.start = start;
+            this.end = end;
+            this.length = end.getOffset() - start.getOffset();
+            this.rest = rest;
+            this.processor = processor;
+            this.engine = engine;
+        }
+
+        /**
+         * @return false once the engine the result came from was released
+         */
+        private boolean hasEngine() {
+            return processor.hasEngine(engine);
+        }
+
+        /**
+         * @return false once the scrollback limit trimmed the link away
+         */
+        private boolean isValid() {
+            return end.getOffset() - start.getOffset() == length;
+        }
+
+        private boolean contains(int offset) {
+            return isValid() && offset >= start.getOffset() && offset < end.getOffset();
+        }
+    }
+
 }
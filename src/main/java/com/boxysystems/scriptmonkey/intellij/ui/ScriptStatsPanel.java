@@ -0,0 +1,120 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+import com.boxysystems.scriptmonkey.intellij.engine.Histogram;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptMetrics;
+import com.intellij.ui.components.JBScrollPane;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Content of the "Script Monkey Stats" tab: the {@link ScriptMetrics} of every script that ran recently,
+ * as median / 95th percentile / maximum per metric. Refreshes itself while it is showing.
+ */
+public class ScriptStatsPanel extends JPanel {
+
+    private static final int REFRESH_INTERVAL = 2000;
+
+    private final ScriptMetrics metrics;
+    private final StatsTableModel tableModel = new StatsTableModel();
+    private final Timer refreshTimer;
+
+    public ScriptStatsPanel(ScriptMetrics metrics) {
+        this.metrics = metrics;
+        setLayout(new BorderLayout());
+        add(new JBScrollPane(new JTable(tableModel)), BorderLayout.CENTER);
+
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                ScriptStatsPanel.this.metrics.reset();
+                refresh();
+            }
+        });
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttonPanel.add(resetButton);
+        add(buttonPanel, BorderLayout.NORTH);
+
+        refreshTimer = new Timer(REFRESH_INTERVAL, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (isShowing()) {
+                    refresh();
+                }
+            }
+        });
+        refreshTimer.start();
+    }
+
+    public void refresh() {
+        tableModel.update();
+    }
+
+    public void dispose() {
+        refreshTimer.stop();
+    }
+
+    private class StatsTableModel extends AbstractTableModel {
+        private List<String> paths = new ArrayList<String>();
+        private List<ScriptMetrics.ScriptStats> stats = new ArrayList<ScriptMetrics.ScriptStats>();
+
+        private void update() {
+            List<String> recentFirst = metrics.getPaths();
+            Collections.reverse(recentFirst);
+            List<String> newPaths = new ArrayList<String>();
+            List<ScriptMetrics.ScriptStats> newStats = new ArrayList<ScriptMetrics.ScriptStats>();
+            for (String path : recentFirst) {
+                ScriptMetrics.ScriptStats scriptStats = metrics.get(path);
+                if (scriptStats != null) {
+                    newPaths.add(path);
+                    newStats.add(scriptStats);
+                }
+            }
+            paths = newPaths;
+            stats = newStats;
+            fireTableDataChanged();
+        }
+
+        public int getRowCount() {
+            return paths.size();
+        }
+
+        public int getColumnCount() {
+            return 3 + ScriptMetrics.Metric.values().length;
+        }
+
+        public String getColumnName(int column) {
+            switch (column) {
+                case 0:
+                    return "Script";
+                case 1:
+                    return "Runs";
+                case 2:
+                    return "Failures";
+                default:
+                    ScriptMetrics.Metric metric = ScriptMetrics.Metric.values()[column - 3];
+                    return metric.getKey() + " (" + metric.getUnit() + ")";
+            }
+        }
+
+        public Object getValueAt(int row, int column) {
+            ScriptMetrics.ScriptStats scriptStats = stats.get(row);
+            switch (column) {
+                case 0:
+                    return paths.get(row);
+                case 1:
+                    return scriptStats.getRunCount();
+                case 2:
+                    return scriptStats.getFailureCount();
+                default:
+                    Histogram histogram = scriptStats.get(ScriptMetrics.Metric.values()[column - 3]);
+                    return histogram.getPercentile(0.5) + " / " + histogram.getPercentile(0.95) + " / " + histogram.getMax();
+            }
+        }
+    }
+}
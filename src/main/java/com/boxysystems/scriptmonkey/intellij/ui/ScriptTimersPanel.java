@@ -0,0 +1,122 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptTimer;
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptTimerService;
+import com.intellij.ui.components.JBScrollPane;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Content of the "Script Monkey Timers" tab: the active timers of the project's and the application's
+ * scripts, which can be cancelled from here. Refreshes itself while it is showing.
+ */
+public class ScriptTimersPanel extends JPanel {
+
+    private static final int REFRESH_INTERVAL = 1000;
+
+    private static final String[] COLUMN_NAMES = {"Timer", "Owner", "Kind", "Period (ms)", "Next run (ms)", "Last run", "Runs", "Skipped", "Failures"};
+
+    private final ScriptTimerService[] timerServices;
+    private final TimersTableModel tableModel = new TimersTableModel();
+    private final JTable table = new JTable(tableModel);
+    private final Timer refreshTimer;
+
+    public ScriptTimersPanel(ScriptTimerService... timerServices) {
+        this.timerServices = timerServices;
+        setLayout(new BorderLayout());
+        add(new JBScrollPane(table), BorderLayout.CENTER);
+
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.setToolTipText("Cancel the selected timers");
+        cancelButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                for (int row : table.getSelectedRows()) {
+                    tableModel.getTimer(row).cancel();
+                }
+                refresh();
+            }
+        });
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttonPanel.add(cancelButton);
+        add(buttonPanel, BorderLayout.NORTH);
+
+        refreshTimer = new Timer(REFRESH_INTERVAL, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (isShowing()) {
+                    refresh();
+                }
+            }
+        });
+        refreshTimer.start();
+    }
+
+    public void refresh() {
+        tableModel.update();
+    }
+
+    public void dispose() {
+        refreshTimer.stop();
+    }
+
+    private class TimersTableModel extends AbstractTableModel {
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+        private List<ScriptTimer> timers = new ArrayList<ScriptTimer>();
+
+        private void update() {
+            List<ScriptTimer> newTimers = new ArrayList<ScriptTimer>();
+            for (ScriptTimerService timerService : timerServices) {
+                newTimers.addAll(timerService.getTimers());
+            }
+            timers = newTimers;
+            fireTableDataChanged();
+        }
+
+        private ScriptTimer getTimer(int row) {
+            return timers.get(row);
+        }
+
+        public int getRowCount() {
+            return timers.size();
+        }
+
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        public Object getValueAt(int row, int column) {
+            ScriptTimer timer = timers.get(row);
+            switch (column) {
+                case 0:
+                    return timer.getName();
+                case 1:
+                    return timer.getOwnerName();
+                case 2:
+                    return timer.getKind();
+                case 3:
+                    return timer.getPeriod();
+                case 4:
+                    return timer.isRunning() ? "running" : String.valueOf(timer.getNextRunIn());
+                case 5:
+                    return timer.getLastRunAt() > 0 ? timeFormat.format(new Date(timer.getLastRunAt())) : "";
+                case 6:
+                    return timer.getRunCount();
+                case 7:
+                    return timer.getSkippedCount();
+                default:
+                    return timer.getFailureCount();
+            }
+        }
+    }
+}
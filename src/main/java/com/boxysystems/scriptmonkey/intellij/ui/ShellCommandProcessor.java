@@ -1,5 +1,9 @@
 package com.boxysystems.scriptmonkey.intellij.ui;
 
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptBudget;
+
+import javax.script.ScriptEngine;
+
 /**
  * Created by IntelliJ IDEA.
  * User: siddique
@@ -8,7 +12,21 @@ package com.boxysystems.scriptmonkey.intellij.ui;
  * To change this template use File | Settings | File Templates.
  */
 interface ShellCommandProcessor {
-    public String executeCommand(String cmd, String language);
+    public Object executeCommand(String cmd, String language);
 
     public boolean isCommandShell();
+
+    public void setBudget(ScriptBudget budget);
+
+    public void stopScripts();
+
+    public ScriptEngine getEngine(String language);
+
+    public boolean hasEngine(ScriptEngine engine);
+
+    public boolean renderPage(ScriptEngine engine, ResultRenderer.Page page, ResultRenderer.Output output);
+
+    public void addReleaseListener(Runnable listener);
+
+    public void releaseEngines();
 }
@@ -0,0 +1,65 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+import com.intellij.ui.content.Content;
+
+/**
+ * One command shell tab: a {@link ScriptShellPanel} with a processor and engine of its own, so that a
+ * long command in one session doesn't hold up the others, and variables defined in one aren't seen by
+ * the others.
+ */
+public class ShellSession {
+
+    private final String name;
+    private final String language;
+    private final ScriptCommandProcessor commandProcessor;
+    private final ScriptShellPanel panel;
+    private Content content;
+
+    public ShellSession(String name, String language, ScriptCommandProcessor commandProcessor, ScriptShellPanel panel) {
+        this.name = name;
+        this.language = language;
+        this.commandProcessor = commandProcessor;
+        this.panel = panel;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the extension of the session's language, "js" or "groovy"
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    public ScriptCommandProcessor getCommandProcessor() {
+        return commandProcessor;
+    }
+
+    public ScriptShellPanel getPanel() {
+        return panel;
+    }
+
+    public Content getContent() {
+        return content;
+    }
+
+    public void setContent(Content content) {
+        this.content = content;
+    }
+
+    /**
+     * Stops what the session runs and hands its engine back to the pool once the command that was running
+     * has ended, so that the engine isn't given to someone else while the command still uses it.
+     */
+    public void dispose() {
+        commandProcessor.stopScripts();
+        panel.dispose();
+        panel.releaseEnginesWhenDone(commandProcessor);
+    }
+
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,155 @@
+package com.boxysystems.scriptmonkey.intellij.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append only log of console output, kept in a memory mapped temp file so that huge outputs don't
+ * have to live on the heap.
+ * <p/>
+ * The file is mapped in fixed size regions as it grows. To find lines quickly, the start offset of
+ * every {@link #INDEX_INTERVAL}th line is kept in a sparse index; reading a line scans at most that
+ * many lines forward from the nearest index entry.
+ */
+public class ConsoleLogFile {
+
+    public static final int REGION_SIZE = 8 * 1024 * 1024;
+    public static final int INDEX_INTERVAL = 64;
+
+    private static final String ENCODING = "UTF-8";
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+
+    private long length = 0;
+    private int completeLines = 0;
+    private long lastLineStart = 0;
+    private long[] lineIndex = new long[256];
+
+    public ConsoleLogFile(File file) throws IOException {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+    }
+
+    public static ConsoleLogFile create(File folder, String prefix) throws IOException {
+        folder.mkdirs();
+        File file = File.createTempFile(prefix, ".log", folder);
+        file.deleteOnExit();
+        return new ConsoleLogFile(file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized void append(String text) throws IOException {
+        byte[] bytes = text.getBytes(ENCODING);
+        int written = 0;
+        while (written < bytes.length) {
+            long position = length + written;
+            ByteBuffer region = getRegion(position).duplicate();
+            region.position((int) (position % REGION_SIZE));
+            int count = Math.min(region.remaining(), bytes.length - written);
+            region.put(bytes, written, count);
+            written += count;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                completeLines++;
+                lastLineStart = length + i + 1;
+                if (completeLines % INDEX_INTERVAL == 0) {
+                    addIndexEntry(completeLines / INDEX_INTERVAL, lastLineStart);
+                }
+            }
+        }
+        length += bytes.length;
+    }
+
+    /**
+     * @return number of lines, counting a last line that isn't terminated yet
+     */
+    public synchronized int getLineCount() {
+        return completeLines + (length > lastLineStart ? 1 : 0);
+    }
+
+    public synchronized long getLength() {
+        return length;
+    }
+
+    public synchronized String getLine(int line) {
+        if (line < 0 || line >= getLineCount()) {
+            throw new IndexOutOfBoundsException("line " + line + " of " + getLineCount());
+        }
+        long position = lineIndex[line / INDEX_INTERVAL];
+        for (int skip = line % INDEX_INTERVAL; skip > 0; position++) {
+            if (byteAt(position) == '\n') {
+                skip--;
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        for (; position < length; position++) {
+            byte b = byteAt(position);
+            if (b == '\n') {
+                break;
+            }
+            bytes.write(b);
+        }
+        try {
+            return bytes.toString(ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Forgets all the output, reusing the already mapped regions for what comes next.
+     */
+    public synchronized void clear() {
+        length = 0;
+        completeLines = 0;
+        lastLineStart = 0;
+    }
+
+    public synchronized void close() {
+        regions.clear();
+        try {
+            channel.close();
+            randomAccessFile.close();
+        } catch (IOException e) {
+            // nothing left to do with the file
+        }
+        file.delete();
+    }
+
+    private MappedByteBuffer getRegion(long position) throws IOException {
+        int index = (int) (position / REGION_SIZE);
+        while (regions.size() <= index) {
+            regions.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) regions.size() * REGION_SIZE, REGION_SIZE));
+        }
+        return regions.get(index);
+    }
+
+    private byte byteAt(long position) {
+        return regions.get((int) (position / REGION_SIZE)).get((int) (position % REGION_SIZE));
+    }
+
+    private void addIndexEntry(int entry, long offset) {
+        if (entry >= lineIndex.length) {
+            long[] grown = new long[lineIndex.length * 2];
+            System.arraycopy(lineIndex, 0, grown, 0, lineIndex.length);
+            lineIndex = grown;
+        }
+        lineIndex[entry] = offset;
+    }
+}
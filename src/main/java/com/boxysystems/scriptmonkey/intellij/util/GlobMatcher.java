@@ -0,0 +1,95 @@
+package com.boxysystems.scriptmonkey.intellij.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * Matches file paths against a glob such as <code>src/**&#47;*.java</code> or <code>*.{js,groovy}</code>.
+ * <p/>
+ * <code>*</code> and <code>?</code> match within a path segment, <code>**</code> across segments and
+ * <code>{a,b}</code> either alternative. A glob without a <code>/</code> is matched against the file name
+ * only; a glob with one against the whole path, which is expected to be relative, so that
+ * <code>src/*.js</code> matches <code>src/a.js</code> but not <code>lib/src/a.js</code>. Backslashes in paths
+ * are taken as separators.
+ */
+public class GlobMatcher {
+
+  private final String glob;
+  private final Pattern pattern;
+  private final boolean nameOnly;
+
+  /**
+   * @param glob the glob, null or blank to match every path
+   */
+  public GlobMatcher(String glob) {
+    this.glob = glob != null ? glob.trim() : "";
+    this.nameOnly = this.glob.indexOf('/') < 0;
+    this.pattern = this.glob.length() > 0 ? Pattern.compile(toRegex(this.glob)) : null;
+  }
+
+  public boolean matches(String path) {
+    if (path == null) {
+      return false;
+    }
+    if (pattern == null) {
+      return true;
+    }
+    path = path.replace('\\', '/');
+    if (nameOnly) {
+      path = path.substring(path.lastIndexOf('/') + 1);
+    } else if (path.startsWith("/") && !glob.startsWith("/") && !glob.startsWith("**")) {
+      path = path.substring(1);
+    }
+    return pattern.matcher(path).matches();
+  }
+
+  public String toString() {
+    return glob;
+  }
+
+  static String toRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+    int braces = 0;
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      switch (c) {
+        case '*':
+          if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+            i++;
+            if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+              i++;
+              regex.append("(?:.*/)?");
+            } else {
+              regex.append(".*");
+            }
+          } else {
+            regex.append("[^/]*");
+          }
+          break;
+        case '?':
+          regex.append("[^/]");
+          break;
+        case '{':
+          braces++;
+          regex.append("(?:");
+          break;
+        case '}':
+          if (braces > 0) {
+            braces--;
+            regex.append(')');
+          } else {
+            regex.append("\\}");
+          }
+          break;
+        case ',':
+          regex.append(braces > 0 ? "|" : ",");
+          break;
+        default:
+          regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    while (braces-- > 0) {
+      regex.append(')');
+    }
+    return regex.toString();
+  }
+}
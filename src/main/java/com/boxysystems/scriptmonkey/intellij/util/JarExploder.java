@@ -2,108 +2,165 @@ package com.boxysystems.scriptmonkey.intellij.util;
 
 import org.apache.log4j.Logger;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.*;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
+/**
+ * Extracts jars in a single pass over the archive's central directory. Entries are streamed
+ * through a fixed size buffer per worker, so memory use doesn't depend on the size of the entries,
+ * and bigger jars are extracted by several workers in parallel.
+ */
 public class JarExploder {
 
   private static final Logger logger = Logger.getLogger(JarExploder.class);
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MIN_ENTRIES_PER_THREAD = 16;
+
+  public static final int DEFAULT_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
   public static void explodeJar(File destDir, File jarFile)
     throws IOException {
     try {
-      ZipFile zf = new ZipFile(jarFile);
-      Map<String, Integer> entrySizes = new HashMap<String, Integer>();
-
-      Enumeration e = zf.entries();
-      while (e.hasMoreElements()) {
-        ZipEntry ze = (ZipEntry) e.nextElement();
+      explodeJar(destDir, jarFile, DEFAULT_THREADS);
+    } catch (FileNotFoundException e) {
+      logger.error("File not found !", e);
+    } catch (IOException e) {
+      logger.error(e);
+    }
+  }
 
-        entrySizes.put(ze.getName(), (int) ze
-          .getSize());
+  public static void explodeJar(File destDir, File jarFile, int threads)
+    throws IOException {
+    ZipFile zipFile = new ZipFile(jarFile);
+    try {
+      List<ZipEntry> fileEntries = new ArrayList<ZipEntry>();
+      List<ZipEntry> directoryEntries = new ArrayList<ZipEntry>();
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory()) {
+          new File(destDir, entry.getName()).mkdirs();
+          directoryEntries.add(entry);
+        } else {
+          fileEntries.add(entry);
+        }
       }
 
-      zf.close();
-
-      FileInputStream fileInputStream = new FileInputStream(
-        jarFile);
-      BufferedInputStream bufferedInputStream = new BufferedInputStream(
-        fileInputStream);
-      ZipInputStream zipInputStream = new ZipInputStream(
-        bufferedInputStream);
-
-      ZipEntry zipEntry;
-      while ((zipEntry = zipInputStream.getNextEntry()) != null) {
-        if (zipEntry.isDirectory()) {
-          continue;
-        }
+      int workers = Math.max(1, Math.min(threads, fileEntries.size() / MIN_ENTRIES_PER_THREAD));
+      if (workers == 1) {
+        new ExtractTask(zipFile, fileEntries, destDir, new AtomicInteger()).call();
+      } else {
+        extractInParallel(zipFile, fileEntries, destDir, workers);
+      }
 
-        int size = (int) zipEntry.getSize();
+      // directories get their timestamps last, since extracting files into them changes it
+      for (ZipEntry entry : directoryEntries) {
+        setTime(new File(destDir, entry.getName()), entry);
+      }
+    } finally {
+      zipFile.close();
+    }
+  }
 
-        // -1 means unknown size.
-        if (size == -1) {
-          size = entrySizes
-            .get(zipEntry.getName());
-        }
+  /**
+   * Extracts a single entry to the given file, keeping the entry's timestamp.
+   */
+  public static void extractEntry(ZipFile zipFile, ZipEntry entry, File destFile) throws IOException {
+    extractEntry(zipFile, entry, destFile, new byte[BUFFER_SIZE]);
+  }
 
-        // Read the content of this zip entry
-        byte[] b = new byte[size];
-        int rb = 0;
-        int chunk;
-        while ((size - rb) > 0) {
-          chunk = zipInputStream.read(b, rb, size - rb);
-          if (chunk == -1) {
-            break;
-          }
-
-          rb += chunk;
+  private static void extractEntry(ZipFile zipFile, ZipEntry entry, File destFile, byte[] buffer) throws IOException {
+    File parent = destFile.getParentFile();
+    if (!parent.exists()) {
+      parent.mkdirs();
+    }
+    InputStream in = zipFile.getInputStream(entry);
+    try {
+      OutputStream out = new FileOutputStream(destFile);
+      try {
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
         }
-
-        String savedFilePath = saveFile(destDir, zipEntry.getName(), b);
-        File saveFile = new File(savedFilePath);
-        saveFile.setLastModified(zipEntry.getTime());
+      } finally {
+        out.close();
       }
-    } catch (FileNotFoundException e) {
-      logger.error("File not found !", e);
-    } catch (IOException e) {
-      logger.error(e);
+    } finally {
+      in.close();
     }
-
+    setTime(destFile, entry);
   }
 
-  private static String saveFile(File destDir, String fileName,
-                                 byte[] bytes) throws IOException {
-    File destFile = new File(destDir, fileName);
-    FileOutputStream fos = null;
+  private static void extractInParallel(ZipFile zipFile, List<ZipEntry> entries, File destDir, int workers) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
     try {
-      if (!destFile.exists()) {
-        destFile.getParentFile().mkdirs();
+      AtomicInteger nextEntry = new AtomicInteger();
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < workers; i++) {
+        futures.add(executor.submit(new ExtractTask(zipFile, entries, destDir, nextEntry)));
       }
-      fos = new FileOutputStream(destFile);
-      BufferedOutputStream bos = new BufferedOutputStream(fos);
-      bos.write(bytes);
-      bos.flush();
-      return destFile.getAbsolutePath();
-    } catch (java.io.FileNotFoundException e) {
-      logger.error(e);
-    } catch (IOException e) {
-      logger.error(e);
-    }
-    finally {
-      if (fos != null) {
-        fos.close();
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while extracting " + zipFile.getName());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
       }
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void setTime(File file, ZipEntry entry) {
+    if (entry.getTime() != -1) {
+      file.setLastModified(entry.getTime());
     }
-    return null;
   }
 
+  /**
+   * Takes entries off the shared list until there are none left, reusing one buffer for all of them.
+   */
+  private static class ExtractTask implements Callable<Void> {
+    private final ZipFile zipFile;
+    private final List<ZipEntry> entries;
+    private final File destDir;
+    private final AtomicInteger nextEntry;
+
+    private ExtractTask(ZipFile zipFile, List<ZipEntry> entries, File destDir, AtomicInteger nextEntry) {
+      this.zipFile = zipFile;
+      this.entries = entries;
+      this.destDir = destDir;
+      this.nextEntry = nextEntry;
+    }
+
+    public Void call() throws IOException {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int index;
+      while ((index = nextEntry.getAndIncrement()) < entries.size()) {
+        ZipEntry entry = entries.get(index);
+        extractEntry(zipFile, entry, new File(destDir, entry.getName()), buffer);
+      }
+      return null;
+    }
+  }
 }
@@ -330,6 +330,25 @@ function streamClose(stream) {
  }
  load.docString = "loads a script file and evaluates it. If no script file is specified, file dialog is shown to choose the script";
 
+/**
+ * Loads a module from the 'lib' folder of the script monkey home the first
+ * time it is required, and returns the same exports afterwards.<br>
+ *
+ * Example:
+ * <pre>
+ * <code>
+ *    var TrimPath = require('trimpath');
+ * </code>
+ * </pre>
+ *
+ * @param name module file name, without the '.js' extension
+ * @return the module's exports
+ */
+function require(name) {
+	return modules.require(engine, name);
+}
+require.docString = "loads a module from the lib folder once and returns its exports";
+
 // file system utilities
 
 /**
@@ -722,7 +741,7 @@ exec.docString = "Executes a given command";
 //	exit(code);
 //}
 
-// XML utilities
+// XML utilities, loaded from lib/xml.js the first time they are used
 
 /** 
  * Converts input to DOM Document object
@@ -732,17 +751,7 @@ exec.docString = "Executes a given command";
  * @return returns a DOM Document object
  */
 function XMLDocument(inp) {
-	var factory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
-	var builder = factory.newDocumentBuilder();
-	if (inp) {
-		if (typeof(inp) == "string") {
-			return builder.parse(pathToFile(inp));
-		} else {
-			return builder.parse(inp);
-		}
-	} else {
-		return builder.newDocument();
-	}
+	return require('xml').XMLDocument(inp);
 }
 
 /**
@@ -752,14 +761,7 @@ function XMLDocument(inp) {
  * @return XMLSource object
  */
 function XMLSource(inp) {
-	if (inp instanceof javax.xml.transform.Source) {
-		return inp;
-	} else if (inp instanceof Packages.org.w3c.dom.Document) {
-		return new javax.xml.transform.dom.DOMSource(inp);
-	} else {
-		inp = new BufferedInputStream(inStream(inp));
-		return new javax.xml.transform.stream.StreamSource(inp);
-	}
+	return require('xml').XMLSource(inp);
 }
 
 /**
@@ -769,14 +771,7 @@ function XMLSource(inp) {
  * @return XMLResult object
  */
 function XMLResult(out) {
-	if (out instanceof javax.xml.transform.Result) {
-		return out;
-	} else if (out instanceof Packages.org.w3c.dom.Document) {
-		return new javax.xml.transform.dom.DOMResult(out);
-	} else {
-		out = new BufferedOutputStream(outStream(out));
-		return new javax.xml.transform.stream.StreamResult(out);
-	}
+	return require('xml').XMLResult(out);
 }
 
 /**
@@ -787,37 +782,8 @@ function XMLResult(out) {
  * @param out Output XML (File or OutputStream
  */
 function XSLTransform(inp, style, out) {
-	switch (arguments.length) {
-	case 2:
-		inp = arguments[0];
-		out = arguments[1];
-		break;
-	case 3:
-		inp = arguments[0];
-		style = arguments[1];
-		out = arguments[2];
-		break;
-	default:
-		window.println("XSL tranform requires 2 or 3 arguments");
-		return;
-	}
-
-	var factory = javax.xml.transform.TransformerFactory.newInstance();
-	var tranformer;
-	if (style) {		
-		transformer = factory.newTransformer(XMLSource(style));	
-	} else {
-		transformer = factory.newTransformer();
-	}
-	var source = XMLSource(inp);
-	var result = XMLResult(out);
-	transformer.transform(source, result);
-	if (source.getInputStream) {
-		streamClose(source.getInputStream());
-	}
-	if (result.getOutputStream) {
-		streamClose(result.getOutputStream());
-	}
+	var xml = require('xml');
+	return xml.XSLTransform.apply(xml, arguments);
 }
 
 // miscellaneous utilities
@@ -19,7 +19,12 @@ with (pkgs) {
 
     listPlugins.docString = "List intellij plugins";
 
-    function createAction(plugin, actionID, text, callableObject) {
+    /**
+     * enabledWhen is optional, for example "editor, file:*.java"; when given, it decides whether the action
+     * is enabled instead of callableObject.update, which then isn't called at all. Otherwise update is called
+     * on a background thread, with only the project, module, editor, files and PSI of the data context.
+     */
+    function createAction(plugin, actionID, text, callableObject, enabledWhen) {
         var actionManager = ActionManager.instance;
         var action = actionManager.getAction(actionID);
         if (action == null) {
@@ -31,6 +36,7 @@ with (pkgs) {
         templatePresentation.setText(text);
 
         action.setCallableObject(callableObject);
+        action.setEnabledWhen(enabledWhen ? String(enabledWhen) : null);
         return action;
     }
 
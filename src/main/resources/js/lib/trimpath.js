@@ -395,3 +395,7 @@ var TrimPath;
         return TrimPath.parseDOMTemplate(elementId, optDocument, optEtc).process(context, optFlags);
     }
 }) ();
+
+if (typeof module != "undefined") {
+    module.exports = TrimPath;
+}
@@ -0,0 +1,105 @@
+/*
+ * XML utilities of jrunscript's init.js, required on demand by the
+ * XMLDocument, XMLSource, XMLResult and XSLTransform functions of init.js.
+ */
+
+/** 
+ * Converts input to DOM Document object
+ *
+ * @param inp file or reader. optional, without this param,
+ * this function returns a new DOM Document.
+ * @return returns a DOM Document object
+ */
+function XMLDocument(inp) {
+	var factory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
+	var builder = factory.newDocumentBuilder();
+	if (inp) {
+		if (typeof(inp) == "string") {
+			return builder.parse(pathToFile(inp));
+		} else {
+			return builder.parse(inp);
+		}
+	} else {
+		return builder.newDocument();
+	}
+}
+
+/**
+ * Converts arbitrary stream, file, URL to XMLSource
+ *
+ * @param inp input stream or file or URL
+ * @return XMLSource object
+ */
+function XMLSource(inp) {
+	if (inp instanceof javax.xml.transform.Source) {
+		return inp;
+	} else if (inp instanceof Packages.org.w3c.dom.Document) {
+		return new javax.xml.transform.dom.DOMSource(inp);
+	} else {
+		inp = new java.io.BufferedInputStream(inStream(inp));
+		return new javax.xml.transform.stream.StreamSource(inp);
+	}
+}
+
+/**
+ * Converts arbitrary stream, file to XMLResult
+ *
+ * @param inp output stream or file
+ * @return XMLResult object
+ */
+function XMLResult(out) {
+	if (out instanceof javax.xml.transform.Result) {
+		return out;
+	} else if (out instanceof Packages.org.w3c.dom.Document) {
+		return new javax.xml.transform.dom.DOMResult(out);
+	} else {
+		out = new java.io.BufferedOutputStream(outStream(out));
+		return new javax.xml.transform.stream.StreamResult(out);
+	}
+}
+
+/**
+ * Perform XSLT transform 
+ *
+ * @param inp Input XML to transform (URL, File or InputStream)
+ * @param style XSL Stylesheet to be used (URL, File or InputStream). optional.
+ * @param out Output XML (File or OutputStream
+ */
+function XSLTransform(inp, style, out) {
+	switch (arguments.length) {
+	case 2:
+		inp = arguments[0];
+		out = arguments[1];
+		break;
+	case 3:
+		inp = arguments[0];
+		style = arguments[1];
+		out = arguments[2];
+		break;
+	default:
+		window.println("XSL tranform requires 2 or 3 arguments");
+		return;
+	}
+
+	var factory = javax.xml.transform.TransformerFactory.newInstance();
+	var tranformer;
+	if (style) {		
+		transformer = factory.newTransformer(XMLSource(style));	
+	} else {
+		transformer = factory.newTransformer();
+	}
+	var source = XMLSource(inp);
+	var result = XMLResult(out);
+	transformer.transform(source, result);
+	if (source.getInputStream) {
+		streamClose(source.getInputStream());
+	}
+	if (result.getOutputStream) {
+		streamClose(result.getOutputStream());
+	}
+}
+
+exports.XMLDocument = XMLDocument;
+exports.XMLSource = XMLSource;
+exports.XMLResult = XMLResult;
+exports.XSLTransform = XSLTransform;
@@ -47,14 +47,8 @@
 
 	with ( namespace ) {
 
-		// Loading library files from 'lib' folder within scriptMonkey home.
-		( function ( libName )
-		{
-			// TODO: Load from scriptmonkey 'home' configuration.
-			var jsFolder = new File( new File( System.getProperty("user.home"), "scriptMonkey"), "js" ),
-				libFile = new File( jsFolder, 'lib/' + libName + '.js' );
-			load( libFile.getPath() );
-		} )( 'trimpath' );
+		// Loaded from the 'lib' folder within scriptMonkey home.
+		var TrimPath = require( 'trimpath' );
 
 		function doAction( actionEvent )
 		{
@@ -119,7 +113,7 @@
 				"ScriptMonkey.MainMenu.Tools.CodesPointers", "Create codes pointer...",
 		{
 			actionPerformed : doAction
-		} );
+		}, 'editor' );
 
 		// Adding the action as the last entry of 'ToolsMenu' group.
 		var actionManager = ActionManager.instance;
@@ -27,21 +27,25 @@ with (timebarPkgs) {
       statusBar.addCustomIndicationComponent(timerLabel);
     }
 
-    var r = new java.lang.Runnable()
+    var updateLabels = new java.lang.Runnable()
     {
       run: function() {
-        while (true) {
-          var now = new java.util.Date();
-          timerLabel.setText("Current Time: " + timeFormat.format(now));
-          timerLabel.setToolTipText(dateFormat.format(now))
-
-          uptimeLabel.setText("Uptime:" + getUptime(intellij.application.startTime, now.getTime()));
-          java.lang.Thread.sleep(1000);
-        }
+        var now = new java.util.Date();
+        timerLabel.setText("Current Time: " + timeFormat.format(now));
+        timerLabel.setToolTipText(dateFormat.format(now))
+
+        uptimeLabel.setText("Uptime:" + getUptime(intellij.application.startTime, now.getTime()));
       }
     };
 
-    new java.lang.Thread(r).start();
+    javax.swing.SwingUtilities.invokeLater(updateLabels);
+    scheduler.scheduleAtFixedRate("timebar", 1000, new java.lang.Runnable()
+    {
+      run: function() {
+        javax.swing.SwingUtilities.invokeLater(updateLabels);
+      }
+    });
+
     statusBar.setInfo("Time bar initialised!");
   }
 }
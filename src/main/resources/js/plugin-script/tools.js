@@ -24,20 +24,6 @@ with (toolsPkgs) {
         alert("No suitable editors found!");
     }
 
-    editorActionCallableObj.update = function(anActionEvent) {
-        var presentation = anActionEvent.getPresentation();
-
-        var currentProject = getProject(anActionEvent);
-        var editor = FileEditorManager.getInstance(currentProject).getSelectedTextEditor();
-        if (editor != null) {
-            var file = FileDocumentManager.getInstance().getFile(editor.getDocument());
-            presentation.setEnabled(file != null && file.isValid() && file.exists());
-        }
-        else {
-            presentation.setEnabled(false);
-        }
-    }
-
     var backupActionCallableObj = new Object();
     backupActionCallableObj.actionPerformed = function(anActionEvent) {
         var currentProject = getProject(anActionEvent);
@@ -106,8 +92,8 @@ with (toolsPkgs) {
         if (projectManager.getOpenProjects().length == 1) {
 
             var firefoxAction = intellij.createAction(plugin, "ScriptMonkey.MainMenu.Tools.Firefox", "Firefox", firefoxActionCallableObj);
-            var editorAction = intellij.createAction(plugin, "ScriptMonkey.MainMenu.Tools.Editor", "Open with editor", editorActionCallableObj);
-            var backupAction = intellij.createAction(plugin, "ScriptMonkey.MainMenu.Tools.Backup", "Backup Project", backupActionCallableObj);
+            var editorAction = intellij.createAction(plugin, "ScriptMonkey.MainMenu.Tools.Editor", "Open with editor", editorActionCallableObj, "editor, file");
+            var backupAction = intellij.createAction(plugin, "ScriptMonkey.MainMenu.Tools.Backup", "Backup Project", backupActionCallableObj, "project");
 
             var toolsActionGroup = new DefaultActionGroup("Tools", true);
             toolsActionGroup.add(firefoxAction);
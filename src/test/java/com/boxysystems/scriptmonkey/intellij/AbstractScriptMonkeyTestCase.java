@@ -4,6 +4,7 @@ import com.intellij.openapi.util.io.FileUtil;
 import junit.framework.TestCase;
 
 import java.io.File;
+import java.io.FileWriter;
 
 /**
  * Created by IntelliJ IDEA.
@@ -34,4 +35,13 @@ public abstract class AbstractScriptMonkeyTestCase extends TestCase {
         }
     }
 
+    protected void writeFile(File file, String content) throws Exception {
+        FileWriter fw = new FileWriter(file);
+        try {
+            fw.write(content);
+        } finally {
+            fw.close();
+        }
+    }
+
 }
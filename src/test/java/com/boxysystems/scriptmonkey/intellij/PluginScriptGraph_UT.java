@@ -0,0 +1,66 @@
+package com.boxysystems.scriptmonkey.intellij;
+
+import com.boxysystems.scriptmonkey.intellij.ui.PluginScript;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class PluginScriptGraph_UT extends TestCase {
+
+    public void testScriptsThatAreNotParallelSafeRunInListOrder() throws Exception {
+        PluginScript a = createScript("/scripts/a.js", false);
+        PluginScript b = createScript("/scripts/b.js", false);
+        PluginScript c = createScript("/scripts/c.js", false);
+
+        PluginScriptGraph graph = new PluginScriptGraph(Arrays.asList(a, b, c));
+
+        assertEquals(Collections.emptyList(), graph.getPrerequisites(a));
+        assertEquals(Arrays.asList(a), graph.getPrerequisites(b));
+        assertEquals(Arrays.asList(b), graph.getPrerequisites(c));
+        assertFalse(graph.isDeclaredDependency(b, a));
+    }
+
+    public void testParallelSafeScriptsOnlyWaitForDeclaredDependencies() throws Exception {
+        PluginScript a = createScript("/scripts/a.js", true);
+        PluginScript b = createScript("/scripts/b.js", true);
+        PluginScript c = createScript("/scripts/c.js", true, "a.js");
+
+        PluginScriptGraph graph = new PluginScriptGraph(Arrays.asList(a, b, c));
+
+        assertEquals(Collections.emptyList(), graph.getPrerequisites(b));
+        assertEquals(Arrays.asList(a), graph.getPrerequisites(c));
+        assertEquals(Arrays.asList(c), graph.getDependents(a));
+        assertTrue(graph.isDeclaredDependency(c, a));
+    }
+
+    public void testDependenciesMatchFullPath() throws Exception {
+        PluginScript a = createScript("/scripts/a.js", true);
+        PluginScript b = createScript("/scripts/b.js", true, "/scripts/a.js");
+
+        PluginScriptGraph graph = new PluginScriptGraph(Arrays.asList(a, b));
+
+        assertEquals(Arrays.asList(a), graph.getPrerequisites(b));
+    }
+
+    public void testCyclesAreDetected() throws Exception {
+        PluginScript a = createScript("/scripts/a.js", true, "b.js");
+        PluginScript b = createScript("/scripts/b.js", true, "a.js");
+        PluginScript c = createScript("/scripts/c.js", true, "b.js");
+        PluginScript d = createScript("/scripts/d.js", true);
+
+        PluginScriptGraph graph = new PluginScriptGraph(Arrays.asList(a, b, c, d));
+
+        assertEquals(Arrays.asList(a, b, c), graph.getCyclicScripts());
+        assertFalse(graph.isCyclic(d));
+    }
+
+    private PluginScript createScript(String filePath, boolean parallelSafe, String... dependsOn) {
+        PluginScript pluginScript = new PluginScript();
+        pluginScript.setEnabled(true);
+        pluginScript.setFilePath(filePath);
+        pluginScript.setParallelSafe(parallelSafe);
+        pluginScript.setDependsOn(Arrays.asList(dependsOn));
+        return pluginScript;
+    }
+}
@@ -0,0 +1,94 @@
+package com.boxysystems.scriptmonkey.intellij;
+
+import com.boxysystems.scriptmonkey.intellij.engine.ScriptReplServer;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ScriptMonkeyReplSessions_UT extends AbstractScriptMonkeyTestCase {
+
+    private static final String TOKEN = "secret";
+
+    private final ExecutorService pooledThreads = Executors.newCachedThreadPool();
+    private ScriptMonkeyApplicationComponent applicationComponent;
+    private ScriptReplServer server;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        ScriptMonkeySettings settings = new ScriptMonkeySettings();
+        settings.setHomeFolder(tmpFolder.getAbsolutePath());
+        settings.setScriptRunnerThreads(1);
+        applicationComponent = new ScriptMonkeyApplicationComponent();
+        applicationComponent.setSettings(settings);
+        ApplicationManager.setApplication(createApplication(settings), new Disposable() {
+            public void dispose() {
+            }
+        });
+        applicationComponent.initServices();
+        server = new ScriptReplServer(new ScriptMonkeyReplSessions(), applicationComponent.getScheduler(), TOKEN);
+        server.start(0);
+    }
+
+    protected void tearDown() throws Exception {
+        server.stop();
+        applicationComponent.getTimerService().shutdown();
+        applicationComponent.getEnginePool().dispose();
+        applicationComponent.getWatchdog().shutdown();
+        applicationComponent.getScheduler().shutdown();
+        pooledThreads.shutdownNow();
+        super.tearDown();
+    }
+
+    /**
+     * Sessions are opened on a thread of the scheduler, so setting their engines up must not wait for another one.
+     */
+    public void testSessionsOpenWhenEveryScriptRunnerIsTaken() throws Exception {
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        try {
+            socket.setSoTimeout(10000);
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            writer.write(TOKEN + "\n1 + 1\ntypeof application\n");
+            writer.flush();
+            assertEquals("ok 0 Script Monkey", reader.readLine());
+            assertEquals("ok 1 2", reader.readLine());
+            assertEquals("ok 2 object", reader.readLine());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private Application createApplication(final ScriptMonkeySettings settings) {
+        return (Application) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Application.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getComponent") && args[0] == ScriptMonkeyApplicationComponent.class) {
+                    return applicationComponent;
+                } else if (name.equals("getComponent") && args[0] == ScriptMonkeySettings.class) {
+                    return settings;
+                } else if (name.equals("executeOnPooledThread")) {
+                    return args[0] instanceof Callable ? pooledThreads.submit((Callable<?>) args[0]) : pooledThreads.submit((Runnable) args[0]);
+                } else if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (name.equals("equals")) {
+                    return proxy == args[0];
+                } else if (name.equals("isHeadlessEnvironment")) {
+                    return Boolean.TRUE;
+                }
+                return null;
+            }
+        });
+    }
+}
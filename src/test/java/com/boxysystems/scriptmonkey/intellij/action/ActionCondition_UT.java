@@ -0,0 +1,53 @@
+package com.boxysystems.scriptmonkey.intellij.action;
+
+import junit.framework.TestCase;
+
+public class ActionCondition_UT extends TestCase {
+
+    public void testBlankConditionIsNoCondition() {
+        assertNull(ActionCondition.parse(null));
+        assertNull(ActionCondition.parse("  "));
+    }
+
+    public void testAllRequirementsMustHold() {
+        ActionCondition condition = ActionCondition.parse("project, editor, selection");
+        assertTrue(condition.isSatisfied(true, true, true, null));
+        assertFalse(condition.isSatisfied(true, true, false, null));
+        assertFalse(condition.isSatisfied(false, true, true, null));
+    }
+
+    public void testNegatedRequirement() {
+        ActionCondition condition = ActionCondition.parse("editor, !selection");
+        assertTrue(condition.isSatisfied(false, true, false, null));
+        assertFalse(condition.isSatisfied(false, true, true, null));
+    }
+
+    public void testFilePatterns() {
+        assertTrue(ActionCondition.parse("file").isSatisfied(false, false, false, "Foo.txt"));
+        assertFalse(ActionCondition.parse("file").isSatisfied(false, false, false, null));
+
+        ActionCondition condition = ActionCondition.parse("file: *.java | *.groovy");
+        assertTrue(condition.isSatisfied(false, false, false, "Foo.java"));
+        assertTrue(condition.isSatisfied(false, false, false, "build.GROOVY"));
+        assertFalse(condition.isSatisfied(false, false, false, "Foo.javax"));
+        assertFalse(condition.isSatisfied(false, false, false, "Foo_java"));
+
+        assertTrue(ActionCondition.parse("file:Test?.js").isSatisfied(false, false, false, "Test1.js"));
+        assertFalse(ActionCondition.parse("file:Test?.js").isSatisfied(false, false, false, "Test12.js"));
+    }
+
+    public void testUnknownRequirementIsRejected() {
+        try {
+            ActionCondition.parse("project, debugger");
+            fail("unknown requirement should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("debugger"));
+        }
+        try {
+            ActionCondition.parse("editor:*.java");
+            fail("pattern on a requirement other than file should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -6,8 +6,11 @@ import com.intellij.openapi.util.io.FileUtil;
 import junit.framework.TestCase;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 
 /**
  * Created by IntelliJ IDEA.
@@ -31,6 +34,57 @@ public class CopyScriptsOnStartupAction_UT extends AbstractScriptMonkeyTestCase
         assertTrue(jsFiles.size() > 0);
     }
 
+    public void testUnchangedScriptsAreNotCopiedAgain() throws Exception {
+        CopyScriptsOnStartupAction action = new MockCopyScriptsOnStartupAction();
+        action.copyScripts(tmpFolder);
+        assertTrue(new File(tmpFolder, CopyScriptsOnStartupAction.MANIFEST_FILE_NAME).exists());
+
+        File initJs = new File(tmpFolder, "js/global/init.js");
+        writeFile(initJs, "// changed");
+        assertTrue(initJs.setLastModified(0));
+
+        action.copyScripts(tmpFolder);
+
+        assertEquals("// changed", FileUtil.loadFile(initJs));
+        assertFalse(new File(tmpFolder, "js/global/init.js.bak").exists());
+    }
+
+    public void testManifestKeysHoldTheJarPath() throws Exception {
+        new MockCopyScriptsOnStartupAction().copyScripts(tmpFolder);
+
+        Properties manifest = new Properties();
+        InputStream in = new FileInputStream(new File(tmpFolder, CopyScriptsOnStartupAction.MANIFEST_FILE_NAME));
+        try {
+            manifest.load(in);
+        } finally {
+            in.close();
+        }
+        assertTrue(manifest.containsKey("jar.resources/lib/js.jar.checksum"));
+        assertTrue(manifest.containsKey("entry.resources/lib/js.jar!global/init.js"));
+    }
+
+    public void testDeletedScriptIsExtractedAgain() throws Exception {
+        CopyScriptsOnStartupAction action = new MockCopyScriptsOnStartupAction();
+        action.copyScripts(tmpFolder);
+
+        File initJs = new File(tmpFolder, "js/global/init.js");
+        assertTrue(initJs.delete());
+
+        action.copyScripts(tmpFolder);
+
+        assertTrue(initJs.exists());
+    }
+
+    public void testStaleStagingFoldersAreDeleted() throws Exception {
+        File staleFolder = new File(Constants.TEMP_FOLDER, "js.jar-12345");
+        assertTrue(new File(staleFolder, "js").mkdirs());
+
+        new MockCopyScriptsOnStartupAction().copyScripts(tmpFolder);
+
+        assertFalse(staleFolder.exists());
+        assertTrue(tmpFolder.exists());
+    }
+
     private void collectJSFiles(List<File> jsFiles, File targetResourceFolder) {
         if (targetResourceFolder != null) {
             File childDirs[] = targetResourceFolder.listFiles();
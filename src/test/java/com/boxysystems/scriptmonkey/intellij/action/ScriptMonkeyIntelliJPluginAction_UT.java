@@ -0,0 +1,68 @@
+package com.boxysystems.scriptmonkey.intellij.action;
+
+import com.boxysystems.scriptmonkey.intellij.engine.GlobalScope;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import junit.framework.TestCase;
+
+import javax.script.Bindings;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.SimpleBindings;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+public class ScriptMonkeyIntelliJPluginAction_UT extends TestCase {
+
+    public void testFailedUpdatesAreRetriedLessAndLessOften() {
+        assertEquals(ScriptMonkeyIntelliJPluginAction.UPDATE_INTERVAL, ScriptMonkeyIntelliJPluginAction.getRetryDelay(1));
+        assertEquals(2 * ScriptMonkeyIntelliJPluginAction.UPDATE_INTERVAL, ScriptMonkeyIntelliJPluginAction.getRetryDelay(2));
+        assertEquals(8 * ScriptMonkeyIntelliJPluginAction.UPDATE_INTERVAL, ScriptMonkeyIntelliJPluginAction.getRetryDelay(4));
+        assertEquals(ScriptMonkeyIntelliJPluginAction.MAX_RETRY_INTERVAL, ScriptMonkeyIntelliJPluginAction.getRetryDelay(100));
+    }
+
+    public void testHandlersSeeTheVariablesOfTheRunThatCreatedTheAction() throws Exception {
+        ScriptEngine engine = createEngine();
+        GlobalScope globalScope = new GlobalScope(engine);
+        final ScriptContext definitionContext = globalScope.getDefinitionContext();
+        globalScope.seal();
+        Bindings runVariables = new SimpleBindings();
+        runVariables.put("window", "console");
+
+        ScriptMonkeyIntelliJPluginAction action;
+        GlobalScope.Entry previous = globalScope.enter(globalScope.createContext(runVariables));
+        try {
+            action = new ScriptMonkeyIntelliJPluginAction();
+        } finally {
+            globalScope.exit(previous);
+        }
+        action.setScriptingEngine(engine);
+        action.setCallableObject(new ScriptMonkeyIntelliJPluginAction.Performer() {
+            public void actionPerformed(AnActionEvent anActionEvent) {
+                definitionContext.setAttribute("printedTo", definitionContext.getAttribute("window"), ScriptContext.ENGINE_SCOPE);
+            }
+        });
+        action.actionPerformed(null);
+
+        assertEquals("console", runVariables.get("printedTo"));
+    }
+
+    /**
+     * An engine whose script objects are already the handlers.
+     */
+    private static ScriptEngine createEngine() {
+        return (ScriptEngine) Proxy.newProxyInstance(ScriptMonkeyIntelliJPluginAction_UT.class.getClassLoader(),
+                new Class[]{ScriptEngine.class, Invocable.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getInterface") && args.length == 2) {
+                    if (!((Class<?>) args[1]).isInstance(args[0])) {
+                        throw new IllegalArgumentException("not a " + args[1]);
+                    }
+                    return args[0];
+                }
+                return null;
+            }
+        });
+    }
+}
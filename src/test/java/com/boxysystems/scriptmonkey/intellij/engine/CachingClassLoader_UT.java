@@ -0,0 +1,73 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CachingClassLoader_UT extends TestCase {
+
+    private CountingClassLoader delegate;
+    private CachingClassLoader classLoader;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        delegate = new CountingClassLoader();
+        classLoader = CachingClassLoader.getShared(delegate);
+    }
+
+    public void testLoaderIsSharedPerDelegate() throws Exception {
+        assertSame(classLoader, CachingClassLoader.getShared(delegate));
+        assertSame(classLoader, CachingClassLoader.getShared(classLoader));
+        assertNotSame(classLoader, CachingClassLoader.getShared(new CountingClassLoader()));
+    }
+
+    public void testFoundClassesAreLookedUpOnce() throws Exception {
+        assertSame(String.class, classLoader.loadClass("java.lang.String"));
+        assertSame(String.class, Class.forName("java.lang.String", false, classLoader));
+
+        assertEquals(1, delegate.lookups("java.lang.String"));
+    }
+
+    public void testMissingClassesAreLookedUpOnceUntilInvalidated() throws Exception {
+        assertMissing("com.intellij");
+        assertMissing("com.intellij");
+        assertEquals(1, delegate.lookups("com.intellij"));
+
+        classLoader.invalidate();
+        assertMissing("com.intellij");
+        assertEquals(2, delegate.lookups("com.intellij"));
+    }
+
+    private void assertMissing(String name) {
+        try {
+            classLoader.loadClass(name);
+            fail(name + " should not be found");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+    }
+
+    private static class CountingClassLoader extends ClassLoader {
+        private final List<String> lookups = new ArrayList<String>();
+
+        private CountingClassLoader() {
+            super(CachingClassLoader_UT.class.getClassLoader());
+        }
+
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            lookups.add(name);
+            return super.loadClass(name, resolve);
+        }
+
+        private int lookups(String name) {
+            int count = 0;
+            for (String lookup : lookups) {
+                if (lookup.equals(name)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
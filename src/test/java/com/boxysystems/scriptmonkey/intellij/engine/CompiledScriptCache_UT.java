@@ -0,0 +1,141 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import com.boxysystems.scriptmonkey.intellij.AbstractScriptMonkeyTestCase;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.File;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+public class CompiledScriptCache_UT extends AbstractScriptMonkeyTestCase {
+
+    private CompiledScriptCache cache;
+    private CountingEngine engine;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = new CompiledScriptCache();
+        engine = new CountingEngine();
+    }
+
+    public void testSameScriptIsCompiledOnce() throws Exception {
+        File scriptFile = createScriptFile("test.js", "1 + 1");
+
+        assertEquals("1 + 1", cache.eval(engine, scriptFile, "1 + 1"));
+        assertEquals("1 + 1", cache.eval(engine, scriptFile, "1 + 1"));
+
+        assertEquals(1, engine.compilations);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testChangedContentIsRecompiled() throws Exception {
+        File scriptFile = createScriptFile("test.js", "1 + 1");
+
+        cache.eval(engine, scriptFile, "1 + 1");
+        cache.eval(engine, scriptFile, "2 + 2");
+
+        assertEquals(2, engine.compilations);
+        assertEquals(0, cache.getHitCount());
+    }
+
+    public void testModifiedFileIsRecompiled() throws Exception {
+        File scriptFile = createScriptFile("test.js", "1 + 1");
+
+        cache.eval(engine, scriptFile, "1 + 1");
+        assertTrue(scriptFile.setLastModified(scriptFile.lastModified() - 10000));
+        cache.eval(engine, scriptFile, "1 + 1");
+
+        assertEquals(2, engine.compilations);
+    }
+
+    public void testLeastRecentlyUsedScriptIsEvicted() throws Exception {
+        cache.setCapacity(2);
+
+        cache.eval(engine, null, "a");
+        cache.eval(engine, null, "b");
+        cache.eval(engine, null, "a");
+        cache.eval(engine, null, "c");
+        assertEquals(2, cache.size());
+
+        cache.eval(engine, null, "a");
+        assertEquals(3, engine.compilations);
+        cache.eval(engine, null, "b");
+        assertEquals(4, engine.compilations);
+    }
+
+    public void testCompiledScriptsStayWithTheEngineThatCompiledThem() throws Exception {
+        ScriptEngineManager manager = new ScriptEngineManager();
+        ScriptEngine first = manager.getEngineByName("JavaScript");
+        ScriptEngine second = manager.getEngineByName("JavaScript");
+        first.put("x", 1);
+        second.put("x", 2);
+
+        assertEquals(1, ((Number) cache.eval(first, null, "x")).intValue());
+        assertEquals(2, ((Number) cache.eval(second, null, "x")).intValue());
+        assertSame(first, cache.getCompiledScript(first, null, "x").getEngine());
+        assertSame(second, cache.getCompiledScript(second, null, "x").getEngine());
+        assertEquals(2, cache.getMissCount());
+
+        cache.forget(first);
+        assertEquals(1, cache.size());
+    }
+
+    private File createScriptFile(String fileName, String content) throws Exception {
+        File scriptFile = new File(tmpFolder, fileName);
+        writeFile(scriptFile, content);
+        return scriptFile;
+    }
+
+    private static class CountingEngine extends AbstractScriptEngine implements Compilable {
+        private int compilations = 0;
+
+        public CompiledScript compile(final String script) throws ScriptException {
+            compilations++;
+            return new CompiledScript() {
+                public Object eval(ScriptContext context) throws ScriptException {
+                    return script;
+                }
+
+                public ScriptEngine getEngine() {
+                    return CountingEngine.this;
+                }
+            };
+        }
+
+        public CompiledScript compile(Reader script) throws ScriptException {
+            throw new UnsupportedOperationException();
+        }
+
+        public Object eval(String script, ScriptContext context) throws ScriptException {
+            return script;
+        }
+
+        public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+            throw new UnsupportedOperationException();
+        }
+
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        public ScriptEngineFactory getFactory() {
+            return (ScriptEngineFactory) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ScriptEngineFactory.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return "counting";
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class Debouncer_UT extends TestCase {
+
+    private ScriptExecutionScheduler scheduler;
+    private final List<String> fired = new ArrayList<String>();
+    private CountDownLatch latch;
+    private Debouncer<String, Integer> debouncer;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        scheduler = new ScriptExecutionScheduler(1);
+        latch = new CountDownLatch(1);
+        debouncer = new Debouncer<String, Integer>(scheduler, new Debouncer.Action<String, Integer>() {
+            public void fire(String key, List<Integer> events, int dropped) {
+                synchronized (fired) {
+                    fired.add(key + events.size() + "/" + dropped + (events.size() < 5 ? events.toString() : ""));
+                }
+                latch.countDown();
+            }
+        });
+    }
+
+    protected void tearDown() throws Exception {
+        scheduler.shutdown();
+        super.tearDown();
+    }
+
+    public void testBurstIsCoalescedIntoOneCall() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            debouncer.trigger("a", i, 100);
+            debouncer.trigger("a", i, 100);
+        }
+        assertEquals(1, debouncer.getPendingCount());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(Arrays.asList("a3/0[0, 1, 2]"), fired);
+        assertEquals(0, debouncer.getPendingCount());
+    }
+
+    public void testEventsBeyondTheLimitAreCounted() throws Exception {
+        for (int i = 0; i < Debouncer.MAX_EVENTS + 10; i++) {
+            debouncer.trigger("b", i, 50);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("b" + Debouncer.MAX_EVENTS + "/10"), fired);
+    }
+
+    public void testSteadyStreamStillFires() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        int i = 0;
+        while (latch.getCount() > 0 && System.currentTimeMillis() < deadline) {
+            debouncer.trigger("c", i++, 20);
+            Thread.sleep(5);
+        }
+        assertEquals(0, latch.getCount());
+    }
+
+    public void testCancelDropsPendingEvents() throws Exception {
+        debouncer.trigger("d", 1, 50);
+        debouncer.cancel();
+        assertFalse(latch.await(300, TimeUnit.MILLISECONDS));
+        assertTrue(fired.isEmpty());
+    }
+}
@@ -0,0 +1,180 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import com.boxysystems.scriptmonkey.intellij.AbstractScriptMonkeyTestCase;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.SimpleBindings;
+import java.io.File;
+import java.io.Reader;
+import java.util.Arrays;
+
+public class GlobalScope_UT extends AbstractScriptMonkeyTestCase {
+
+    private NullEngine engine;
+    private GlobalScope globalScope;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        engine = new NullEngine();
+        globalScope = new GlobalScope(engine);
+    }
+
+    public void testDefinitionsAreSharedBySealedContexts() throws Exception {
+        globalScope.getDefinitionContext().setAttribute("echo", "function", ScriptContext.ENGINE_SCOPE);
+        globalScope.seal();
+
+        ScriptContext first = globalScope.createContext(new SimpleBindings());
+        ScriptContext second = globalScope.createContext(new SimpleBindings());
+
+        assertEquals("function", first.getAttribute("echo"));
+        assertEquals("function", second.getAttribute("echo"));
+        assertEquals(ScriptContext.GLOBAL_SCOPE, first.getAttributesScope("echo"));
+    }
+
+    public void testAssignmentsToDefinitionsShadowThemInEngineScope() throws Exception {
+        globalScope.getDefinitionContext().setAttribute("echo", "function", ScriptContext.ENGINE_SCOPE);
+        globalScope.seal();
+
+        ScriptContext context = globalScope.createContext(new SimpleBindings());
+        context.setAttribute("echo", "redefined", ScriptContext.GLOBAL_SCOPE);
+
+        assertEquals("redefined", context.getAttribute("echo"));
+        assertEquals("function", globalScope.getDefinitions().get("echo"));
+        assertEquals("function", globalScope.createContext(new SimpleBindings()).getAttribute("echo"));
+        try {
+            globalScope.getDefinitions().put("echo", "redefined");
+            fail("definitions should be sealed");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    public void testDefinitionContextSeesVariablesOfEnteredRun() throws Exception {
+        ScriptContext definitionContext = globalScope.getDefinitionContext();
+        definitionContext.setAttribute("window", "none", ScriptContext.ENGINE_SCOPE);
+        globalScope.seal();
+
+        Bindings variables = new SimpleBindings();
+        variables.put("window", "console");
+        GlobalScope.Entry previous = globalScope.enter(globalScope.createContext(variables));
+        try {
+            assertEquals("console", definitionContext.getAttribute("window"));
+            definitionContext.setAttribute("result", "42", ScriptContext.ENGINE_SCOPE);
+            assertEquals("42", variables.get("result"));
+            assertFalse(globalScope.getDefinitions().containsKey("result"));
+        } finally {
+            globalScope.exit(previous);
+        }
+        assertEquals("none", definitionContext.getAttribute("window"));
+    }
+
+    public void testEnteredContextIsOnlySeenOnItsThread() throws Exception {
+        final ScriptContext definitionContext = globalScope.getDefinitionContext();
+        globalScope.seal();
+        Bindings engineVariables = new SimpleBindings();
+        engineVariables.put("window", "shell");
+        engine.setContext(globalScope.createContext(engineVariables));
+
+        Bindings runVariables = new LayeredBindings();
+        runVariables.put("window", "editor");
+        GlobalScope.Entry previous = globalScope.enter(globalScope.createContext(runVariables));
+        try {
+            assertEquals("editor", definitionContext.getAttribute("window"));
+            final Object[] seenByOtherThread = new Object[1];
+            Thread other = new Thread(new Runnable() {
+                public void run() {
+                    seenByOtherThread[0] = definitionContext.getAttribute("window");
+                }
+            });
+            other.start();
+            other.join();
+            assertNull(seenByOtherThread[0]);
+        } finally {
+            globalScope.exit(previous);
+        }
+        assertNull(definitionContext.getAttribute("window"));
+    }
+
+    public void testSettingVariablesOutsideOfARunFails() throws Exception {
+        globalScope.seal();
+        try {
+            globalScope.getDefinitionContext().setAttribute("result", "42", ScriptContext.ENGINE_SCOPE);
+            fail("there is no run to set the variable in");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().indexOf("result") >= 0);
+        }
+    }
+
+    public void testCallbacksRunWithTheContextTheyWereCreatedIn() throws Exception {
+        final ScriptContext definitionContext = globalScope.getDefinitionContext();
+        globalScope.seal();
+        Bindings runVariables = new SimpleBindings();
+        runVariables.put("window", "editor");
+        final Object[] seenByCallback = new Object[1];
+        Runnable callback;
+        GlobalScope.Entry previous = globalScope.enter(globalScope.createContext(runVariables));
+        try {
+            callback = GlobalScope.bindToCurrentRun(new Runnable() {
+                public void run() {
+                    seenByCallback[0] = definitionContext.getAttribute("window");
+                }
+            });
+        } finally {
+            globalScope.exit(previous);
+        }
+        Thread timer = new Thread(callback);
+        timer.start();
+        timer.join();
+        assertEquals("editor", seenByCallback[0]);
+    }
+
+    public void testSealingFreezesDefinitions() throws Exception {
+        globalScope.getDefinitionContext().setAttribute("echo", "function", ScriptContext.ENGINE_SCOPE);
+        globalScope.seal();
+        GlobalScope.Entry previous = globalScope.enter(globalScope.createContext(new SimpleBindings()));
+        try {
+            globalScope.getDefinitionContext().setAttribute("late", "value", ScriptContext.ENGINE_SCOPE);
+        } finally {
+            globalScope.exit(previous);
+        }
+        assertEquals("function", globalScope.getDefinitions().get("echo"));
+        assertFalse(globalScope.getDefinitions().containsKey("late"));
+    }
+
+    public void testGlobalScriptsVersionChangesWithFolder() throws Exception {
+        writeFile(new File(tmpFolder, "init.js"), "// init");
+        GlobalScripts globalScripts = new GlobalScripts(tmpFolder);
+        assertFalse(globalScripts.refresh());
+
+        writeFile(new File(tmpFolder, "gui.js"), "// gui");
+        assertTrue(globalScripts.refresh());
+        assertEquals(1, globalScripts.getVersion());
+        assertFalse(globalScripts.refresh());
+
+        assertEquals(Arrays.asList(new File(tmpFolder, "gui.js"), new File(tmpFolder, "init.js")),
+                globalScripts.getScripts(Arrays.asList("js")));
+        assertTrue(globalScripts.getScripts(Arrays.asList("groovy")).isEmpty());
+    }
+
+    private static class NullEngine extends AbstractScriptEngine {
+
+        public Object eval(String script, ScriptContext context) {
+            return null;
+        }
+
+        public Object eval(Reader reader, ScriptContext context) {
+            return null;
+        }
+
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        public ScriptEngineFactory getFactory() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LayeredBindings_UT extends TestCase {
+
+    private LayeredBindings bindings;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        Map<String, Object> shared = new HashMap<String, Object>();
+        shared.put("project", "foo");
+        shared.put("application", "idea");
+        bindings = new LayeredBindings(Collections.unmodifiableMap(shared));
+    }
+
+    public void testOwnVariablesShadowSharedOnes() {
+        assertEquals("foo", bindings.get("project"));
+        assertEquals("foo", bindings.put("project", "bar"));
+        assertEquals("bar", bindings.get("project"));
+        assertEquals("foo", bindings.getShared().get("project"));
+
+        bindings.put("x", null);
+        assertTrue(bindings.containsKey("x"));
+        assertNull(bindings.get("x"));
+        assertEquals(3, bindings.size());
+    }
+
+    public void testRemovingSharedVariableHidesItFromThisBindingsOnly() {
+        assertEquals("idea", bindings.remove("application"));
+        assertFalse(bindings.containsKey("application"));
+        assertNull(bindings.get("application"));
+        assertFalse(bindings.keySet().contains("application"));
+
+        LayeredBindings other = new LayeredBindings(bindings.getShared());
+        assertEquals("idea", other.get("application"));
+
+        bindings.put("application", "eclipse");
+        assertEquals("eclipse", bindings.get("application"));
+
+        bindings.clear();
+        assertTrue(bindings.isEmpty());
+        assertEquals("foo", other.get("project"));
+    }
+
+    public void testPutSharedReplacesTheLayerCopyOnWrite() {
+        Map<String, Object> snapshot = bindings.getShared();
+        LayeredBindings run = new LayeredBindings(snapshot);
+
+        bindings.putShared("window", "console");
+        assertEquals("console", bindings.get("window"));
+        assertFalse(snapshot.containsKey("window"));
+        assertNull(run.get("window"));
+        assertNotSame(snapshot, bindings.getShared());
+
+        Map<String, Object> current = bindings.getShared();
+        bindings.putShared("window", "console");
+        assertSame(current, bindings.getShared());
+    }
+
+    public void testRunsStartingFromTheSameLayerDontSeeEachOther() {
+        LayeredBindings first = new LayeredBindings(bindings.getShared());
+        LayeredBindings second = new LayeredBindings(bindings.getShared());
+        first.put("result", 1);
+        second.put("result", 2);
+        assertEquals(1, first.get("result"));
+        assertEquals(2, second.get("result"));
+        assertFalse(bindings.containsKey("result"));
+    }
+
+    public void testForkStartsWithTheVariablesOfTheSourceOnly() {
+        bindings.put("x", 1);
+        bindings.put("empty", null);
+        bindings.remove("application");
+
+        LayeredBindings fork = new LayeredBindings(bindings.getShared());
+        assertTrue(fork.copyPlainValuesFrom(bindings).isEmpty());
+        assertEquals(1, fork.get("x"));
+        assertTrue(fork.containsKey("empty"));
+        assertFalse(fork.containsKey("application"));
+
+        fork.put("x", 2);
+        bindings.put("y", 3);
+        assertEquals(1, bindings.get("x"));
+        assertFalse(fork.containsKey("y"));
+    }
+
+    public void testForkLeavesOutClosuresOfTheSourceScope() {
+        GroovyShell shell = new GroovyShell(new Binding(bindings));
+        shell.evaluate("count = 1; name = 'a'; increment = { count++ }; list = new ArrayList()");
+
+        LayeredBindings fork = new LayeredBindings(bindings.getShared());
+        assertEquals(Arrays.asList("increment"), fork.copyPlainValuesFrom(bindings));
+        assertEquals(1, fork.get("count"));
+        assertEquals("a", fork.get("name"));
+        assertSame(bindings.get("list"), fork.get("list"));
+        assertFalse(fork.containsKey("increment"));
+    }
+
+    public void testInvalidKeysAreRejected() {
+        try {
+            bindings.put(null, "x");
+            fail("null key should be rejected");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        try {
+            bindings.get("");
+            fail("empty key should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            bindings.putShared("", "x");
+            fail("empty key should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
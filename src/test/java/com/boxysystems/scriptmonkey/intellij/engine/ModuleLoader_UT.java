@@ -0,0 +1,184 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import com.boxysystems.scriptmonkey.intellij.AbstractScriptMonkeyTestCase;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ModuleLoader_UT extends AbstractScriptMonkeyTestCase {
+
+    private ScriptEnginePool enginePool;
+    private ModuleLoader moduleLoader;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        File services = new File(tmpFolder, "services");
+        writeFile(services, EchoEngineFactory.class.getName());
+        enginePool = new ScriptEnginePool("test", new ServicesClassLoader(services));
+        moduleLoader = enginePool.getModuleLoader();
+        moduleLoader.setFolder(tmpFolder);
+    }
+
+    protected void tearDown() throws Exception {
+        enginePool.dispose();
+        super.tearDown();
+    }
+
+    public void testModuleIsEvaluatedOncePerEngine() throws Exception {
+        writeFile(new File(tmpFolder, "helpers.echo"), "helpers");
+        ScriptEngine engine = enginePool.acquire(EchoEngineFactory.NAME);
+
+        assertEquals("helpers", moduleLoader.require(engine, "helpers"));
+        assertEquals("helpers", moduleLoader.require(engine, "helpers"));
+        assertEquals(1, ((EchoEngine) engine).evaluations);
+
+        ScriptEngine otherEngine = enginePool.acquire(EchoEngineFactory.NAME);
+        assertEquals("helpers", moduleLoader.require(otherEngine, "helpers.echo"));
+        assertEquals(1, ((EchoEngine) otherEngine).evaluations);
+    }
+
+    public void testModifiedModuleIsEvaluatedAgain() throws Exception {
+        File moduleFile = new File(tmpFolder, "helpers.echo");
+        writeFile(moduleFile, "helpers");
+        ScriptEngine engine = enginePool.acquire(EchoEngineFactory.NAME);
+        moduleLoader.require(engine, "helpers");
+
+        writeFile(moduleFile, "changed");
+        assertTrue(moduleFile.setLastModified(moduleFile.lastModified() - 10000));
+
+        assertEquals("changed", moduleLoader.require(engine, "helpers"));
+        assertEquals(2, ((EchoEngine) engine).evaluations);
+    }
+
+    public void testMissingModule() throws Exception {
+        ScriptEngine engine = enginePool.acquire(EchoEngineFactory.NAME);
+        try {
+            moduleLoader.require(engine, "missing");
+            fail("missing module should not be found");
+        } catch (ScriptException e) {
+            assertTrue(e.getMessage().indexOf("missing") >= 0);
+        }
+    }
+
+    /**
+     * Makes {@link EchoEngineFactory} available to the pool's script engine manager.
+     */
+    static class ServicesClassLoader extends ClassLoader {
+        private final File services;
+
+        ServicesClassLoader(File services) {
+            super(ModuleLoader_UT.class.getClassLoader());
+            this.services = services;
+        }
+
+        public Enumeration<URL> getResources(String name) throws IOException {
+            if (name.equals("META-INF/services/javax.script.ScriptEngineFactory")) {
+                return Collections.enumeration(Collections.singletonList(services.toURI().toURL()));
+            }
+            return super.getResources(name);
+        }
+    }
+
+    public static class EchoEngineFactory implements ScriptEngineFactory {
+        private static final String NAME = "echo";
+
+        public String getEngineName() {
+            return NAME;
+        }
+
+        public String getEngineVersion() {
+            return "1.0";
+        }
+
+        public List<String> getExtensions() {
+            return Arrays.asList(NAME);
+        }
+
+        public List<String> getMimeTypes() {
+            return Collections.emptyList();
+        }
+
+        public List<String> getNames() {
+            return Arrays.asList(NAME);
+        }
+
+        public String getLanguageName() {
+            return NAME;
+        }
+
+        public String getLanguageVersion() {
+            return "1.0";
+        }
+
+        public Object getParameter(String key) {
+            return null;
+        }
+
+        public String getMethodCallSyntax(String obj, String m, String... args) {
+            return null;
+        }
+
+        public String getOutputStatement(String toDisplay) {
+            return toDisplay;
+        }
+
+        public String getProgram(String... statements) {
+            return null;
+        }
+
+        public ScriptEngine getScriptEngine() {
+            return new EchoEngine(this);
+        }
+    }
+
+    /**
+     * Evaluates every script to its own text. Like Groovy, keeps what <code>def name</code> scripts define
+     * outside of the context.
+     */
+    static class EchoEngine extends AbstractScriptEngine {
+        private final ScriptEngineFactory factory;
+        private final Map<String, Object> globalClosures = new HashMap<String, Object>();
+        private int evaluations = 0;
+
+        private EchoEngine(ScriptEngineFactory factory) {
+            this.factory = factory;
+        }
+
+        public Object eval(String script, ScriptContext context) {
+            if (!script.equals("null")) {
+                evaluations++;
+            }
+            if (script.startsWith("def ")) {
+                globalClosures.put(script.substring(4), script);
+            }
+            return script;
+        }
+
+        public Object eval(Reader reader, ScriptContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        public ScriptEngineFactory getFactory() {
+            return factory;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import com.boxysystems.scriptmonkey.intellij.AbstractScriptMonkeyTestCase;
+
+import javax.script.ScriptEngine;
+import java.io.File;
+import java.util.Map;
+
+public class ScriptEnginePool_UT extends AbstractScriptMonkeyTestCase {
+
+    private ScriptEnginePool enginePool;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        File services = new File(tmpFolder, "services");
+        writeFile(services, ModuleLoader_UT.EchoEngineFactory.class.getName());
+        enginePool = new ScriptEnginePool("test", new ModuleLoader_UT.ServicesClassLoader(services));
+    }
+
+    protected void tearDown() throws Exception {
+        enginePool.dispose();
+        super.tearDown();
+    }
+
+    public void testClosuresDefinedByAScriptDontOutliveIt() throws Exception {
+        File globals = new File(tmpFolder, "global");
+        assertTrue(globals.mkdir());
+        writeFile(new File(globals, "init.echo"), "def helper");
+        enginePool.setGlobalScriptsFolder(globals);
+
+        ScriptEngine engine = enginePool.acquire("echo");
+        engine.eval("def leftover");
+        Map<String, Object> globalClosures = ScriptEnginePool.getGlobalClosures(engine);
+        assertTrue(globalClosures.containsKey("leftover"));
+        enginePool.release(engine);
+
+        assertSame(engine, enginePool.acquire("echo"));
+        assertFalse(globalClosures.containsKey("leftover"));
+        assertTrue(globalClosures.containsKey("helper"));
+    }
+}
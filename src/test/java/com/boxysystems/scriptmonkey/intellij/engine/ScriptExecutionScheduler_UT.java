@@ -0,0 +1,91 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ScriptExecutionScheduler_UT extends TestCase {
+
+    private ScriptExecutionScheduler scheduler;
+    private List<String> executed;
+    private final List<Future<?>> submitted = new ArrayList<Future<?>>();
+    private CountDownLatch blocker;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        scheduler = new ScriptExecutionScheduler(1);
+        executed = Collections.synchronizedList(new ArrayList<String>());
+        blocker = new CountDownLatch(1);
+        scheduler.submit(new Runnable() {
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    // stop blocking
+                }
+            }
+        }, ScriptExecutionScheduler.Priority.LIFECYCLE, null);
+    }
+
+    protected void tearDown() throws Exception {
+        scheduler.shutdown();
+        super.tearDown();
+    }
+
+    public void testHigherPriorityRunsFirst() throws Exception {
+        submit("lifecycle", ScriptExecutionScheduler.Priority.LIFECYCLE, "project");
+        submit("editor", ScriptExecutionScheduler.Priority.EDITOR, "project");
+        Future<?> last = submit("interactive", ScriptExecutionScheduler.Priority.INTERACTIVE, "project");
+
+        blocker.countDown();
+        waitForAll();
+
+        assertEquals(Arrays.asList("interactive", "editor", "lifecycle"), executed);
+        assertTrue(last.isDone());
+    }
+
+    public void testInteractiveScriptsRunWhileEveryRunnerIsTaken() throws Exception {
+        submit("lifecycle", ScriptExecutionScheduler.Priority.LIFECYCLE, "project");
+        submit("interactive", ScriptExecutionScheduler.Priority.INTERACTIVE, "project").get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("interactive"), executed);
+
+        blocker.countDown();
+        waitForAll();
+        assertEquals(Arrays.asList("interactive", "lifecycle"), executed);
+    }
+
+    public void testOwnersTakeTurns() throws Exception {
+        submit("a1", ScriptExecutionScheduler.Priority.LIFECYCLE, "a");
+        submit("a2", ScriptExecutionScheduler.Priority.LIFECYCLE, "a");
+        submit("a3", ScriptExecutionScheduler.Priority.LIFECYCLE, "a");
+        submit("b1", ScriptExecutionScheduler.Priority.LIFECYCLE, "b");
+        submit("b2", ScriptExecutionScheduler.Priority.LIFECYCLE, "b");
+
+        blocker.countDown();
+        waitForAll();
+
+        assertEquals(Arrays.asList("a1", "b1", "a2", "b2", "a3"), executed);
+    }
+
+    private Future<?> submit(final String name, ScriptExecutionScheduler.Priority priority, Object owner) {
+        Future<?> future = scheduler.submit(new Runnable() {
+            public void run() {
+                executed.add(name);
+            }
+        }, priority, owner);
+        submitted.add(future);
+        return future;
+    }
+
+    private void waitForAll() throws Exception {
+        for (Future<?> future : submitted) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import junit.framework.TestCase;
+
+import javax.script.SimpleScriptContext;
+
+public class ScriptExecutor_UT extends TestCase {
+
+    private ScriptEnginePool enginePool;
+    private ScriptExecutionScheduler scheduler;
+    private ScriptWatchdog watchdog;
+    private ScriptExecutor executor;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        enginePool = new ScriptEnginePool("test", getClass().getClassLoader());
+        scheduler = new ScriptExecutionScheduler(1);
+        watchdog = new ScriptWatchdog();
+        executor = new ScriptExecutor(enginePool, scheduler, watchdog, new ScriptMetrics());
+    }
+
+    protected void tearDown() throws Exception {
+        watchdog.shutdown();
+        scheduler.shutdown();
+        enginePool.dispose();
+        super.tearDown();
+    }
+
+    public void testRunawayScriptIsStoppedAndItsThreadLeftAloneAfterwards() throws Exception {
+        watchdog.setGracePeriod(50);
+        executor.setBudget(new ScriptBudget(50, 0));
+        try {
+            evaluate(new ScriptExecutor.Evaluation<RuntimeException>() {
+                public Object evaluate(ScriptMetrics.Measurement measurement) {
+                    long count = 0;
+                    while (count >= 0) {
+                        count++;
+                    }
+                    return count;
+                }
+            });
+            fail("the script should have been stopped");
+        } catch (ScriptStoppedException e) {
+            // expected
+        }
+        assertEquals(0, watchdog.getRunningCount());
+
+        executor.setBudget(ScriptBudget.UNLIMITED);
+        Thread.sleep(200);
+        assertEquals("done", evaluate(new ScriptExecutor.Evaluation<RuntimeException>() {
+            public Object evaluate(ScriptMetrics.Measurement measurement) {
+                return "done";
+            }
+        }));
+    }
+
+    private Object evaluate(ScriptExecutor.Evaluation<RuntimeException> evaluation) {
+        return executor.evaluate(null, new SimpleScriptContext(), "test", "test", System.nanoTime(), evaluation);
+    }
+}
@@ -0,0 +1,85 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import junit.framework.TestCase;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+public class ScriptMetrics_UT extends TestCase {
+
+    public void testHistogramPercentilesAreBoundedByBucketsAndExtremes() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        assertEquals(63, histogram.getPercentile(0.5));
+        assertEquals(100, histogram.getPercentile(0.95));
+        assertEquals(1, histogram.getPercentile(0));
+
+        histogram.clear();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.5));
+        assertEquals(0, histogram.getMin());
+    }
+
+    public void testHistogramCountsZerosAndNegatives() {
+        Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(-5);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.99));
+    }
+
+    public void testMeasurementRecordsPerScriptPath() throws Exception {
+        ScriptMetrics metrics = new ScriptMetrics();
+        ScriptMetrics.Measurement measurement = metrics.start("a.js", System.nanoTime() - 5000000L);
+        measurement.addCompileTime(1000000L);
+        Writer output = measurement.countOutput(new StringWriter());
+        output.write("hello");
+        measurement.finish("world!", false);
+
+        metrics.start("b.js", System.nanoTime()).finish(null, true);
+
+        assertEquals(2, metrics.getPaths().size());
+        ScriptMetrics.ScriptStats stats = metrics.get("a.js");
+        assertEquals(1, stats.getRunCount());
+        assertEquals(0, stats.getFailureCount());
+        assertTrue(stats.get(ScriptMetrics.Metric.QUEUE_WAIT).getMax() >= 5000);
+        assertEquals(1000, stats.get("compile").getMax());
+        assertEquals(11, stats.get("output").getMax());
+        assertEquals(1, metrics.get("b.js").getFailureCount());
+        assertTrue(metrics.report().contains("a.js"));
+
+        metrics.reset();
+        assertNull(metrics.get("a.js"));
+    }
+
+    public void testPathsAreOrderedByLastRunNotByLookup() {
+        ScriptMetrics metrics = new ScriptMetrics();
+        metrics.start("a.js", System.nanoTime()).finish(null, false);
+        metrics.start("b.js", System.nanoTime()).finish(null, false);
+        metrics.start("c.js", System.nanoTime()).finish(null, false);
+        metrics.report();
+        metrics.get("a.js");
+        assertEquals(Arrays.asList("a.js", "b.js", "c.js"), metrics.getPaths());
+
+        metrics.start("a.js", System.nanoTime()).finish(null, false);
+        assertEquals(Arrays.asList("b.js", "c.js", "a.js"), metrics.getPaths());
+    }
+
+    public void testUnknownMetricIsRejected() {
+        try {
+            ScriptMetrics.Metric.forKey("latency");
+            fail("unknown metric should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(ScriptMetrics.Metric.CPU, ScriptMetrics.Metric.forKey("cpu"));
+    }
+}
@@ -0,0 +1,238 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ScriptReplServer_UT extends TestCase {
+
+    private static final String TOKEN = "secret";
+
+    private ScriptExecutionScheduler scheduler;
+    private ScriptReplServer server;
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final AtomicInteger printedLines = new AtomicInteger();
+    private final AtomicBoolean closedWhileRunning = new AtomicBoolean();
+    private final CountDownLatch sleeping = new CountDownLatch(1);
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        scheduler = new ScriptExecutionScheduler(4);
+        server = new ScriptReplServer(new ScriptReplServer.SessionFactory() {
+            public ScriptReplServer.Session open(final String language, String project, final Writer output) {
+                openSessions.incrementAndGet();
+                return new ScriptReplServer.Session() {
+                    private volatile Thread running;
+
+                    public Object evaluate(String command) throws Exception {
+                        running = Thread.currentThread();
+                        try {
+                            return evaluateCommand(command);
+                        } finally {
+                            running = null;
+                        }
+                    }
+
+                    private Object evaluateCommand(String command) throws Exception {
+                        if (command.startsWith("print ")) {
+                            output.write(command.substring(6) + "\n");
+                            return null;
+                        }
+                        if (command.startsWith("flood ")) {
+                            char[] line = new char[1023];
+                            Arrays.fill(line, 'x');
+                            for (int i = Integer.parseInt(command.substring(6)); i > 0; i--) {
+                                output.write(line);
+                                output.write('\n');
+                                printedLines.incrementAndGet();
+                            }
+                            return null;
+                        }
+                        if (command.startsWith("sleep ")) {
+                            sleeping.countDown();
+                            Thread.sleep(Long.parseLong(command.substring(6)));
+                            return null;
+                        }
+                        if (command.equals("fail")) {
+                            throw new Exception("boom");
+                        }
+                        return language + ":" + command;
+                    }
+
+                    public void stop() {
+                        Thread thread = running;
+                        if (thread != null) {
+                            thread.interrupt();
+                        }
+                    }
+
+                    public void close() {
+                        if (running != null) {
+                            closedWhileRunning.set(true);
+                        }
+                        openSessions.decrementAndGet();
+                    }
+                };
+            }
+        }, scheduler, TOKEN);
+        server.start(0);
+    }
+
+    protected void tearDown() throws Exception {
+        server.stop();
+        scheduler.shutdown();
+        super.tearDown();
+    }
+
+    public void testClientWithoutTokenIsTurnedAway() throws Exception {
+        Client client = new Client();
+        client.send("guess\n");
+        assertEquals("err 0 not authorized", client.receive());
+        assertNull(client.receive());
+        client.close();
+    }
+
+    public void testPipelinedRequestsAreAnsweredInOrder() throws Exception {
+        Client client = connect();
+        StringBuilder requests = new StringBuilder();
+        for (int i = 1; i <= 500; i++) {
+            requests.append(i).append('\n');
+        }
+        client.send(requests.toString());
+        for (int i = 1; i <= 500; i++) {
+            assertEquals("ok " + i + " js:" + i, client.receive());
+        }
+        client.close();
+    }
+
+    public void testOutputComesBeforeTheResultOfItsRequest() throws Exception {
+        Client client = connect();
+        client.send("print hello\nfail\n:lang groovy\nx\\ny\n");
+        assertEquals("out 1 hello\\n", client.receive());
+        assertEquals("ok 1 ", client.receive());
+        assertEquals("err 2 boom", client.receive());
+        assertEquals("ok 3 groovy", client.receive());
+        assertEquals("ok 4 groovy:x\\ny", client.receive());
+        client.close();
+    }
+
+    public void testClientsDontShareSessions() throws Exception {
+        Client first = connect();
+        Client second = connect();
+        first.send("a\n");
+        second.send("b\n");
+        assertEquals("ok 1 js:a", first.receive());
+        assertEquals("ok 1 js:b", second.receive());
+        assertEquals(2, openSessions.get());
+
+        first.send(":quit\n");
+        assertEquals("ok 2 bye", first.receive());
+        assertNull(first.receive());
+        waitFor(1);
+        assertEquals(1, server.getConnectionCount());
+        second.close();
+    }
+
+    public void testHalfClosedClientStillGetsItsAnswers() throws Exception {
+        Client client = connect();
+        client.send("sleep 200\na\n");
+        client.socket.shutdownOutput();
+        assertEquals("ok 1 ", client.receive());
+        assertEquals("ok 2 js:a", client.receive());
+        assertNull(client.receive());
+        waitFor(0);
+        client.close();
+    }
+
+    public void testScriptsWaitForTheClientToReadTheirOutput() throws Exception {
+        server.setOutputLimit(64 * 1024, 5000);
+        Client client = connect();
+        client.send("flood 20000\n");
+        Thread.sleep(500);
+        assertTrue(printedLines.get() < 20000);
+
+        for (int i = 0; i < 20000; i++) {
+            assertTrue(client.receive().startsWith("out 1 x"));
+        }
+        assertEquals("ok 1 ", client.receive());
+        client.close();
+    }
+
+    public void testClientThatDoesntReadIsDisconnected() throws Exception {
+        server.setOutputLimit(64 * 1024, 200);
+        Client client = connect();
+        client.send("flood 20000\n");
+        waitFor(1);
+        waitFor(0);
+        assertEquals(0, server.getConnectionCount());
+        assertTrue(printedLines.get() < 20000);
+        client.close();
+    }
+
+    public void testSessionsAreClosedOnceTheRequestTheyRunIsStopped() throws Exception {
+        Client client = connect();
+        client.send("sleep 5000\n");
+        assertTrue(sleeping.await(5, TimeUnit.SECONDS));
+        server.stop();
+        waitFor(0);
+        assertFalse(closedWhileRunning.get());
+        client.close();
+    }
+
+    public void testStoppingTheServerClosesTheSessions() throws Exception {
+        Client client = connect();
+        client.send("a\n");
+        assertEquals("ok 1 js:a", client.receive());
+        server.stop();
+        assertNull(client.receive());
+        waitFor(0);
+        client.close();
+    }
+
+    private void waitFor(int sessions) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (openSessions.get() != sessions && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(sessions, openSessions.get());
+    }
+
+    private Client connect() throws Exception {
+        Client client = new Client();
+        client.send(TOKEN + "\n");
+        assertEquals("ok 0 Script Monkey", client.receive());
+        return client;
+    }
+
+    private class Client {
+        private final Socket socket = new Socket("127.0.0.1", server.getPort());
+        private final Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+        private final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+
+        private Client() throws Exception {
+            socket.setSoTimeout(5000);
+        }
+
+        private void send(String text) throws Exception {
+            writer.write(text);
+            writer.flush();
+        }
+
+        private String receive() throws Exception {
+            return reader.readLine();
+        }
+
+        private void close() throws Exception {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import com.boxysystems.scriptmonkey.intellij.AbstractScriptMonkeyTestCase;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+public class ScriptRunner_UT extends AbstractScriptMonkeyTestCase {
+
+    private ScriptRunner runner;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        File services = new File(tmpFolder, "services");
+        writeFile(services, ModuleLoader_UT.EchoEngineFactory.class.getName());
+        runner = new ScriptRunner(2, new ModuleLoader_UT.ServicesClassLoader(services));
+    }
+
+    protected void tearDown() throws Exception {
+        runner.shutdown();
+        super.tearDown();
+    }
+
+    public void testEveryScriptRunsTheGivenNumberOfTimes() throws Exception {
+        File first = new File(tmpFolder, "first.echo");
+        File second = new File(tmpFolder, "second.echo");
+        writeFile(first, "first");
+        writeFile(second, "second");
+
+        ScriptRunner.Report report = runner.run(Arrays.asList(first, second), 3);
+
+        assertEquals(0, report.getFailureCount());
+        assertEquals(3, report.getStats(first.getPath()).getRunCount());
+        assertEquals(3, report.getStats(second.getPath()).getRunCount());
+        String json = toJson(report);
+        assertTrue(json, json.indexOf("\"threads\": 2") >= 0);
+        assertTrue(json, json.indexOf("\"runs\": 3, \"failures\": 0") >= 0);
+        assertTrue(json, json.indexOf("\"eval\": {\"unit\": \"us\"") >= 0);
+    }
+
+    public void testFailedRunsAreReportedWithTheirErrors() throws Exception {
+        File script = new File(tmpFolder, "script.unknown");
+        writeFile(script, "nothing");
+
+        ScriptRunner.Report report = runner.run(Arrays.asList(script), 2);
+
+        assertEquals(2, report.getFailureCount());
+        assertEquals(2, report.getErrors(script.getPath()).size());
+        assertTrue(report.getErrors(script.getPath()).get(0).indexOf("unknown") >= 0);
+        String json = toJson(report);
+        assertTrue(json, json.indexOf("\"runs\": 0, \"failures\": 2") >= 0);
+    }
+
+    private static String toJson(ScriptRunner.Report report) throws Exception {
+        StringWriter json = new StringWriter();
+        report.writeJson(json);
+        return json.toString();
+    }
+}
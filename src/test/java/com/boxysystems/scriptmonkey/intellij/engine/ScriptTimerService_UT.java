@@ -0,0 +1,126 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ScriptTimerService_UT extends TestCase {
+
+    private ScriptExecutionScheduler scheduler;
+    private ScriptTimerService timerService;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        scheduler = new ScriptExecutionScheduler(2);
+        timerService = new ScriptTimerService("test", this, scheduler, new ScriptEnginePool("test", getClass().getClassLoader()));
+    }
+
+    protected void tearDown() throws Exception {
+        timerService.shutdown();
+        scheduler.shutdown();
+        super.tearDown();
+    }
+
+    public void testOneShotTimerRunsOnceAndGoesAway() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        ScriptTimer timer = timerService.schedule("once", 20, new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertEquals(1, timerService.getTimers().size());
+        assertEquals(ScriptTimer.Kind.ONCE, timer.getKind());
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        waitUntilIdle(timer);
+        assertEquals(1, timer.getRunCount());
+        assertTrue(timerService.getTimers().isEmpty());
+    }
+
+    public void testFixedRateTimerRepeatsUntilCancelled() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(3);
+        final ScriptTimer timer = timerService.scheduleAtFixedRate("rate", 10, new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        timer.cancel();
+        waitUntilIdle(timer);
+        long runs = timer.getRunCount();
+        Thread.sleep(100);
+        assertEquals(runs, timer.getRunCount());
+        assertTrue(timer.isCancelled());
+        assertTrue(timerService.getTimers().isEmpty());
+    }
+
+    public void testSlowRunsAreSkippedNotQueued() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        ScriptTimer timer = timerService.scheduleAtFixedRate(5, new Runnable() {
+            public void run() {
+                running.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Thread.sleep(200);
+        assertEquals(1, running.get());
+        assertTrue(timer.getSkippedCount() > 0);
+        release.countDown();
+        timer.cancel();
+    }
+
+    public void testFailingTaskKeepsRunning() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(2);
+        ScriptTimer timer = timerService.scheduleWithFixedDelay("failing", 10, new Runnable() {
+            public void run() {
+                ran.countDown();
+                throw new IllegalStateException("expected");
+            }
+        });
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(timer.getFailureCount() >= 1);
+        timer.cancel();
+    }
+
+    public void testShutdownCancelsTimersAndRejectsNewOnes() throws Exception {
+        Runnable noop = new Runnable() {
+            public void run() {
+            }
+        };
+        ScriptTimer timer = timerService.scheduleWithFixedDelay(1000, noop);
+        timerService.shutdown();
+        assertTrue(timer.isCancelled());
+        assertTrue(timerService.getTimers().isEmpty());
+        try {
+            timerService.schedule(10, noop);
+            fail("scheduling on a shut down service should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testInvalidPeriodIsRejected() {
+        try {
+            timerService.scheduleAtFixedRate(0, new Runnable() {
+                public void run() {
+                }
+            });
+            fail("a zero period should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(timerService.getTimers().isEmpty());
+        }
+    }
+
+    private static void waitUntilIdle(ScriptTimer timer) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((timer.isRunning() || timer.getRunCount() == 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
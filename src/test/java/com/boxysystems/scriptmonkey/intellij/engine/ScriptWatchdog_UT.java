@@ -0,0 +1,105 @@
+package com.boxysystems.scriptmonkey.intellij.engine;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ScriptWatchdog_UT extends TestCase {
+
+    private ScriptWatchdog watchdog;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        watchdog = new ScriptWatchdog();
+    }
+
+    protected void tearDown() throws Exception {
+        watchdog.shutdown();
+        super.tearDown();
+    }
+
+    public void testScriptOverWallClockBudgetIsInterrupted() throws Exception {
+        ScriptWatchdog.Execution execution = watchdog.start("sleeper", new ScriptBudget(50, 0));
+        long start = System.currentTimeMillis();
+        try {
+            Thread.sleep(5000);
+            fail("sleep should have been interrupted");
+        } catch (InterruptedException e) {
+            // expected
+        } finally {
+            watchdog.finish(execution);
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertTrue(execution.isStopped());
+        assertFalse(execution.isKilled());
+        assertEquals(0, watchdog.getRunningCount());
+    }
+
+    public void testScriptOverCpuBudgetIsInterrupted() throws Exception {
+        ScriptWatchdog.Execution execution = watchdog.start("spinner", new ScriptBudget(0, 50));
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!Thread.currentThread().isInterrupted() && System.currentTimeMillis() < deadline) {
+                Math.sqrt(deadline);
+            }
+        } finally {
+            watchdog.finish(execution);
+            Thread.interrupted();
+        }
+        assertTrue(execution.isStopped());
+        assertTrue(execution.getStopReason().indexOf("CPU") >= 0);
+    }
+
+    public void testScriptIgnoringInterruptIsKilledAfterGracePeriod() throws Exception {
+        watchdog.setGracePeriod(50);
+        final AtomicReference<ScriptWatchdog.Execution> execution = new AtomicReference<ScriptWatchdog.Execution>();
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+        Thread runaway = new Thread(new Runnable() {
+            public void run() {
+                execution.set(watchdog.start("runaway", ScriptBudget.UNLIMITED));
+                try {
+                    long count = 0;
+                    while (true) {
+                        count++;
+                    }
+                } catch (ThreadDeath e) {
+                    thrown.set(e);
+                } finally {
+                    watchdog.finish(execution.get());
+                }
+            }
+        });
+        runaway.start();
+        while (execution.get() == null) {
+            Thread.sleep(10);
+        }
+
+        long start = System.currentTimeMillis();
+        execution.get().stop("test");
+        runaway.join(5000);
+
+        assertFalse(runaway.isAlive());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertTrue(execution.get().isKilled());
+        assertNotNull(thrown.get());
+    }
+
+    public void testFinishedScriptIsNotStopped() throws Exception {
+        ScriptWatchdog.Execution execution = watchdog.start("quick", new ScriptBudget(10, 0));
+        watchdog.finish(execution);
+        execution.stop("too late");
+        assertFalse(execution.isStopped());
+        assertFalse(Thread.interrupted());
+    }
+
+    public void testFinishedScriptIsNotKilled() throws Exception {
+        watchdog.setGracePeriod(0);
+        ScriptWatchdog.Execution execution = watchdog.start("finished", ScriptBudget.UNLIMITED);
+        execution.stop("test");
+        watchdog.finish(execution);
+        Thread.interrupted();
+        Thread.sleep(5 * ScriptWatchdog.CHECK_INTERVAL);
+        assertFalse(execution.isKilled());
+        assertEquals(0, watchdog.getRunningCount());
+    }
+}
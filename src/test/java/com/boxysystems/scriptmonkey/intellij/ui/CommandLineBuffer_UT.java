@@ -0,0 +1,74 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+import junit.framework.TestCase;
+
+public class CommandLineBuffer_UT extends TestCase {
+
+    private CommandShellDocument document;
+    private CommandLineBuffer commandLine;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        document = new CommandShellDocument();
+        document.insertString(0, "js> ", null);
+        document.setMark();
+        commandLine = document.getCommandLine();
+    }
+
+    public void testCommandIsCompleteAfterNewline() throws Exception {
+        type("print(1)");
+        assertFalse(commandLine.isComplete());
+
+        type("\n");
+        assertTrue(commandLine.isComplete());
+        assertEquals("print(1)", commandLine.getCommand());
+    }
+
+    public void testContinuedLinesAreJoined() throws Exception {
+        type("var a = 1;\\\n");
+        assertFalse(commandLine.isComplete());
+
+        type("var b = 2;\\\n");
+        assertFalse(commandLine.isComplete());
+
+        type("a + b\n");
+        assertTrue(commandLine.isComplete());
+        assertEquals("var a = 1;\nvar b = 2;\na + b", commandLine.getCommand());
+    }
+
+    public void testEditsAfterMarkAreMirrored() throws Exception {
+        type("prnit");
+        document.remove(document.getLength() - 3, 3);
+        type("int(2)\n");
+
+        assertEquals("print(2)", commandLine.getCommand());
+        assertEquals(document.getMarkedText(), commandLine.toString());
+    }
+
+    public void testSetMarkStartsNewCommand() throws Exception {
+        type("1\n");
+        document.insertString(0, "1\njs> ", null);
+        document.setMark();
+
+        assertEquals(0, commandLine.length());
+        assertFalse(commandLine.isComplete());
+    }
+
+    public void testPastedScriptIsAssembledInOnePass() throws Exception {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            script.append("var x").append(i).append(" = ").append(i).append(";\\\n");
+        }
+        script.append("x9999\n");
+        type(script.toString());
+
+        assertTrue(commandLine.isComplete());
+        String command = commandLine.getCommand();
+        assertTrue(command.startsWith("var x0 = 0;\nvar x1 = 1;\n"));
+        assertTrue(command.endsWith("var x9999 = 9999;\nx9999"));
+    }
+
+    private void type(String text) throws Exception {
+        document.insertString(document.getLength(), text, null);
+    }
+}
@@ -0,0 +1,63 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+import com.boxysystems.scriptmonkey.intellij.AbstractScriptMonkeyTestCase;
+import com.boxysystems.scriptmonkey.intellij.util.ScriptMonkeyFileUtil;
+
+import java.io.File;
+
+public class CommandShellDocument_UT extends AbstractScriptMonkeyTestCase {
+
+    private CommandShellDocument document;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        document = new CommandShellDocument();
+    }
+
+    public void testOldestLinesAreTrimmedInChunks() throws Exception {
+        document.setScrollbackLimits(0, 8);
+        for (int i = 0; i < 8; i++) {
+            document.insertString(0, "line" + i + "\n", null);
+            document.setMark();
+        }
+        assertEquals(6, document.getDefaultRootElement().getElementCount());
+
+        document.insertString(0, "js> ", null);
+
+        assertEquals("line3\nline4\nline5\nline6\nline7\njs> ", document.getText(0, document.getLength()));
+    }
+
+    public void testMarkAndPromptSurviveTrimming() throws Exception {
+        document.setScrollbackLimits(40, 0);
+        document.insertString(0, "0123456789\n0123456789\n0123456789\njs> ", null);
+        document.setMark();
+        document.insertString(0, "print(1)", null);
+
+        assertEquals("0123456789\njs> print(1)", document.getText(0, document.getLength()));
+        assertEquals("print(1)", document.getMarkedText());
+    }
+
+    public void testLongCommandIsNotTrimmed() throws Exception {
+        document.setScrollbackLimits(0, 4);
+        document.insertString(0, "output\njs> ", null);
+        document.setMark();
+        document.insertString(0, "a(\n1,\n2,\n3,\n4)", null);
+
+        assertEquals("js> a(\n1,\n2,\n3,\n4)", document.getText(0, document.getLength()));
+        assertEquals("a(\n1,\n2,\n3,\n4)", document.getMarkedText());
+        assertEquals("a(\n1,\n2,\n3,\n4)", document.getCommandLine().toString());
+    }
+
+    public void testTrimmedOutputIsSpilledToFile() throws Exception {
+        File history = new File(tmpFolder, "history.log");
+        document.setTrimmedHistoryFile(history);
+        document.setScrollbackLimits(0, 4);
+        for (int i = 0; i < 5; i++) {
+            document.insertString(0, "line" + i + "\n", null);
+            document.setMark();
+        }
+
+        assertEquals("line0\nline1\n", ScriptMonkeyFileUtil.loadFile(history));
+        assertEquals("line2\nline3\nline4\n", document.getText(0, document.getLength()));
+    }
+}
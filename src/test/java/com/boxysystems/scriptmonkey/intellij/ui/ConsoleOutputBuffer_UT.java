@@ -0,0 +1,101 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+import junit.framework.TestCase;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ConsoleOutputBuffer_UT extends TestCase {
+
+    private List<String> writes;
+    private ConsoleOutputBuffer buffer;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        writes = Collections.synchronizedList(new ArrayList<String>());
+        buffer = new ConsoleOutputBuffer(new ConsoleOutputBuffer.Output() {
+            public void write(String text) {
+                assertTrue(SwingUtilities.isEventDispatchThread());
+                writes.add(text);
+            }
+        });
+    }
+
+    public void testOutputIsCoalescedIntoOneWrite() throws Exception {
+        buffer.configure(200, 1000);
+        flushNow();
+        for (int i = 0; i < 100; i++) {
+            buffer.append(i + "\n");
+        }
+        waitForFlush();
+
+        assertEquals(1, writes.size());
+        assertTrue(writes.get(0).startsWith("0\n1\n2\n"));
+        assertTrue(writes.get(0).endsWith("99\n"));
+    }
+
+    public void testWriterBlocksAtBackpressureLimit() throws Exception {
+        buffer.configure(50, 10);
+        flushNow();
+        long start = System.currentTimeMillis();
+        buffer.append("0123456789");
+        buffer.append("0123456789");
+        long blocked = System.currentTimeMillis() - start;
+        waitForFlush();
+
+        assertTrue("writer should have waited for a flush, waited " + blocked + " ms", blocked >= 20);
+        assertEquals("01234567890123456789", join(writes));
+    }
+
+    public void testOutputOnEventDispatchThreadKeepsOrder() throws Exception {
+        buffer.configure(10000, 1000);
+        buffer.append("first ");
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                buffer.append("second");
+            }
+        });
+
+        assertEquals("first second", join(writes));
+    }
+
+    public void testDiscardDropsPendingOutput() throws Exception {
+        buffer.configure(10000, 1000);
+        flushNow();
+        buffer.append("dropped");
+        buffer.discard();
+
+        assertEquals(0, buffer.getPendingCount());
+        flushNow();
+        assertTrue(writes.isEmpty());
+    }
+
+    private void flushNow() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                buffer.flush();
+            }
+        });
+    }
+
+    private void waitForFlush() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (buffer.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+    }
+
+    private String join(List<String> pieces) {
+        StringBuilder joined = new StringBuilder();
+        for (String piece : pieces) {
+            joined.append(piece);
+        }
+        return joined.toString();
+    }
+}
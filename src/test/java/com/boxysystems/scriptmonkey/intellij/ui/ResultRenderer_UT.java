@@ -0,0 +1,150 @@
+package com.boxysystems.scriptmonkey.intellij.ui;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ResultRenderer_UT extends TestCase {
+
+    private final ResultRenderer renderer = new ResultRenderer(3, 10);
+
+    public void testCollectionsArePagedWithTheRestLeftForLater() {
+        Output output = new Output();
+        renderer.render(Arrays.asList("a", "b", "c", "d", "e"), output);
+        assertEquals("java.util.Arrays$ArrayList (5 elements)\n  [0] a\n  [1] b\n  [2] c\n", output.text());
+        assertEquals("2 more elements", output.remaining);
+
+        Output more = new Output();
+        output.rest.render(more);
+        assertEquals("  [3] d\n  [4] e\n", more.text());
+        assertNull(more.rest);
+    }
+
+    public void testLazyIteratorsAreOnlyReadAsFarAsThePageGoes() {
+        final int[] read = new int[1];
+        Iterator<Integer> endless = new Iterator<Integer>() {
+            public boolean hasNext() {
+                return true;
+            }
+
+            public Integer next() {
+                return read[0]++;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        Output output = new Output();
+        renderer.render(endless, output);
+        assertEquals(3, read[0]);
+        assertEquals("more elements", output.remaining);
+
+        output.rest.render(new Output());
+        assertEquals(6, read[0]);
+    }
+
+    public void testFirstPageReadsNothingUntilRendered() {
+        final int[] read = new int[1];
+        Iterable<Integer> lazy = new Iterable<Integer>() {
+            public Iterator<Integer> iterator() {
+                read[0]++;
+                return Arrays.asList(1, 2).iterator();
+            }
+        };
+        ResultRenderer.Page page = renderer.firstPage(lazy);
+        assertEquals(0, read[0]);
+
+        Output output = new Output();
+        page.render(output);
+        assertEquals(1, read[0]);
+        assertTrue(output.text().endsWith("  [0] 1\n  [1] 2\n"));
+    }
+
+    public void testArraysAndMaps() {
+        Output array = new Output();
+        renderer.render(new int[]{1, 2}, array);
+        assertEquals("int[] (2 elements)\n  [0] 1\n  [1] 2\n", array.text());
+
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("x", new int[]{3});
+        map.put("y", null);
+        Output entries = new Output();
+        renderer.render(map, entries);
+        assertEquals("java.util.LinkedHashMap (2 elements)\n  x=[3]\n  y=null\n", entries.text());
+        assertNull(entries.rest);
+    }
+
+    public void testLongTextIsWrittenInChunks() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ResultRenderer.CHUNK_SIZE * 2 + 10; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        Output output = new Output();
+        new ResultRenderer(3, text.length()).render(text.toString(), output);
+        assertEquals(text + "\n", output.text());
+        assertEquals(4, output.chunks.size());
+        for (String chunk : output.chunks) {
+            assertTrue(chunk.length() <= ResultRenderer.CHUNK_SIZE);
+        }
+    }
+
+    public void testTextBeyondTheCapIsLeftForLater() {
+        Output output = new Output();
+        renderer.render("0123456789abcdef\n", output);
+        assertEquals("0123456789\n", output.text());
+        assertEquals("7 more characters", output.remaining);
+
+        Output more = new Output();
+        output.rest.render(more);
+        assertEquals("abcdef\n", more.text());
+        assertNull(more.rest);
+    }
+
+    public void testPagesAreRenderedOnlyOnce() {
+        Output output = new Output();
+        renderer.render(Arrays.asList(1, 2, 3, 4), output);
+        output.rest.render(new Output());
+        Output again = new Output();
+        output.rest.render(again);
+        assertEquals("", again.text());
+    }
+
+    public void testBigNestedElementsAreOnlyDescribed() {
+        List<Integer> nested = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            nested.add(i);
+        }
+        assertEquals("java.util.ArrayList (1000 elements)", ResultRenderer.format(nested));
+        assertEquals("long[1000]", ResultRenderer.format(new long[1000]));
+        assertEquals("a b", ResultRenderer.format("a\nb"));
+    }
+
+    private static class Output implements ResultRenderer.Output {
+        private final List<String> chunks = new ArrayList<String>();
+        private String remaining;
+        private ResultRenderer.Page rest;
+
+        public void print(String text) {
+            chunks.add(text);
+        }
+
+        public void more(String remaining, ResultRenderer.Page rest) {
+            this.remaining = remaining;
+            this.rest = rest;
+        }
+
+        private String text() {
+            StringBuilder text = new StringBuilder();
+            for (String chunk : chunks) {
+                text.append(chunk);
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.boxysystems.scriptmonkey.intellij.util;
+
+import com.boxysystems.scriptmonkey.intellij.AbstractScriptMonkeyTestCase;
+
+public class ConsoleLogFile_UT extends AbstractScriptMonkeyTestCase {
+
+    private ConsoleLogFile logFile;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        logFile = ConsoleLogFile.create(tmpFolder, "test");
+    }
+
+    protected void tearDown() throws Exception {
+        logFile.close();
+        super.tearDown();
+    }
+
+    public void testLinesArePagedInFromTheFile() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            logFile.append("line " + i + "\n");
+        }
+        logFile.append("partial");
+
+        assertEquals(1001, logFile.getLineCount());
+        assertEquals("line 0", logFile.getLine(0));
+        assertEquals("line 63", logFile.getLine(63));
+        assertEquals("line 64", logFile.getLine(64));
+        assertEquals("line 999", logFile.getLine(999));
+        assertEquals("partial", logFile.getLine(1000));
+    }
+
+    public void testLineSpanningRegionsAndAppends() throws Exception {
+        StringBuilder big = new StringBuilder();
+        while (big.length() < ConsoleLogFile.REGION_SIZE - 3) {
+            big.append('x');
+        }
+        logFile.append(big.toString());
+        logFile.append("\u00e9t\u00e9\nnext");
+
+        assertEquals(2, logFile.getLineCount());
+        assertEquals(big + "\u00e9t\u00e9", logFile.getLine(0));
+        assertEquals("next", logFile.getLine(1));
+    }
+
+    public void testClearStartsOver() throws Exception {
+        logFile.append("one\ntwo\n");
+        logFile.clear();
+        logFile.append("three\n");
+
+        assertEquals(1, logFile.getLineCount());
+        assertEquals("three", logFile.getLine(0));
+    }
+}
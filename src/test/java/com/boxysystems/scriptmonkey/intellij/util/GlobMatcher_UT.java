@@ -0,0 +1,46 @@
+package com.boxysystems.scriptmonkey.intellij.util;
+
+import junit.framework.TestCase;
+
+public class GlobMatcher_UT extends TestCase {
+
+  public void testBlankGlobMatchesEveryPath() {
+    assertTrue(new GlobMatcher(null).matches("src/Foo.java"));
+    assertTrue(new GlobMatcher(" ").matches("Foo"));
+    assertFalse(new GlobMatcher(null).matches(null));
+  }
+
+  public void testGlobWithoutSlashMatchesFileName() {
+    GlobMatcher matcher = new GlobMatcher("*.{js,groovy}");
+    assertTrue(matcher.matches("a.js"));
+    assertTrue(matcher.matches("src/deep/b.groovy"));
+    assertTrue(matcher.matches("src\\win\\c.js"));
+    assertFalse(matcher.matches("src/a.java"));
+    assertFalse(matcher.matches("a.js/readme"));
+  }
+
+  public void testGlobWithSlashMatchesWholePath() {
+    GlobMatcher matcher = new GlobMatcher("src/*.js");
+    assertTrue(matcher.matches("src/a.js"));
+    assertTrue(matcher.matches("/src/a.js"));
+    assertFalse(matcher.matches("lib/src/a.js"));
+    assertFalse(matcher.matches("src/sub/a.js"));
+  }
+
+  public void testDoubleStarCrossesSegments() {
+    GlobMatcher matcher = new GlobMatcher("src/**/*.java");
+    assertTrue(matcher.matches("src/Foo.java"));
+    assertTrue(matcher.matches("src/a/b/Foo.java"));
+    assertFalse(matcher.matches("test/a/Foo.java"));
+
+    assertTrue(new GlobMatcher("**/build.xml").matches("a/b/build.xml"));
+    assertTrue(new GlobMatcher("**/build.xml").matches("build.xml"));
+  }
+
+  public void testSpecialCharactersAreLiteral() {
+    GlobMatcher matcher = new GlobMatcher("Test?.(1).js");
+    assertTrue(matcher.matches("Test1.(1).js"));
+    assertFalse(matcher.matches("Test12.(1).js"));
+    assertFalse(matcher.matches("Test1x(1)xjs"));
+  }
+}
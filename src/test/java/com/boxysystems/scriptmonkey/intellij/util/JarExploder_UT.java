@@ -2,7 +2,12 @@ package com.boxysystems.scriptmonkey.intellij.util;
 
 import com.boxysystems.scriptmonkey.intellij.AbstractScriptMonkeyTestCase;
 
+import com.intellij.openapi.util.io.FileUtil;
+
 import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Created by IntelliJ IDEA.
@@ -26,4 +31,33 @@ public class JarExploder_UT extends AbstractScriptMonkeyTestCase {
         assertEquals(2, tmpFolder.listFiles().length);
     }
 
+    public void testParallelExtractionKeepsContentAndTimestamps() throws Exception {
+        File jarFile = new File(tmpFolder, "many.jar");
+        long time = 1200000000000L;
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            for (int i = 0; i < 100; i++) {
+                ZipEntry entry = new ZipEntry("dir" + (i % 5) + "/file" + i + ".txt");
+                entry.setTime(time);
+                out.putNextEntry(entry);
+                for (int j = 0; j <= i * 100; j++) {
+                    out.write(("line " + j + "\n").getBytes("UTF-8"));
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        File destDir = new File(tmpFolder, "exploded");
+
+        JarExploder.explodeJar(destDir, jarFile, 4);
+
+        assertEquals(5, destDir.listFiles().length);
+        File lastFile = new File(destDir, "dir4/file99.txt");
+        String content = FileUtil.loadFile(lastFile);
+        assertTrue(content.startsWith("line 0\n"));
+        assertTrue(content.endsWith("line 9900\n"));
+        assertEquals(time / 2000, lastFile.lastModified() / 2000);
+    }
+
 }